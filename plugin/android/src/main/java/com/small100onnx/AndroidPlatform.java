@@ -0,0 +1,27 @@
+package com.small100onnx;
+
+import android.os.Build;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Android Platform - routes core engine logs to logcat and background work
+ * to Android thread priorities; the device key names the SoC
+ */
+public class AndroidPlatform extends Platform {
+    @Override
+    public void log(int priority, String tag, String message, Throwable error) {
+        Log.println(priority, tag, error != null ? message + '\n' + Log.getStackTraceString(error) : message);
+    }
+
+    @Override
+    public String deviceKey() {
+        String soc = Build.VERSION.SDK_INT >= Build.VERSION_CODES.S ? Build.SOC_MODEL : Build.BOARD;
+        return Build.HARDWARE + "/" + soc + "/" + Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public void setBackgroundPriority() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+    }
+}
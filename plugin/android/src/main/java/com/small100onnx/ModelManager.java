@@ -2,26 +2,57 @@ package com.small100onnx;
 
 import android.content.Context;
 import android.os.Environment;
+import org.json.JSONObject;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ModelManager {
     private static final String HUGGINGFACE_BASE = "https://huggingface.co/lyphanthuc/small100-onnx/resolve/main";
     private static final String MODEL_DIR = "Small100Models";
     private static final String VERSION_FILE = "version.txt";
     
+    private static final String STATS_FILE = "download_stats.json";
+    // Directory suffix for re-assembling the live version beside itself
+    private static final String REPAIR_SUFFIX = ".repair";
+    
+    private static final int MAX_PARALLEL_FILES = 3;
+    private static final long DEFAULT_PROGRESS_INTERVAL_MS = 250;
+    
     private Context context;
     private ExecutorService executorService;
+    private final ModelDownloader downloader = new ModelDownloader();
+    private final ModelStore store;
+    // Versions downloadModels is still filling; guarded by itself
+    private final Set<String> installing = new HashSet<>();
+    
+    private long memoryBudgetBytes;
+    private long progressIntervalMs = DEFAULT_PROGRESS_INTERVAL_MS;
     
-    private static final String[] MODEL_FILES = {
+    // Variant-independent files; encoder/decoder files come from the variant manifest
+    private static final String[] BASE_FILES = {
         "added_tokens.json",
-        "decoder_int8.onnx",
-        "encoder_int8.onnx",
         "sentencepiece.bpe.model",
         "special_tokens_map.json",
         "tokenizer_config.json",
@@ -31,49 +62,131 @@ public class ModelManager {
     public ModelManager(Context context) {
         this.context = context;
         this.executorService = Executors.newSingleThreadExecutor();
+        this.store = new ModelStore(new File(context.getFilesDir(), MODEL_DIR));
+    }
+    
+    /**
+     * Skip downloading variants declared larger than this (0 = no limit)
+     * The int8 default is always downloaded.
+     */
+    public void setMemoryBudget(long bytes) {
+        this.memoryBudgetBytes = bytes;
     }
     
+    /**
+     * Minimum time between progress callbacks (file completions always report)
+     */
+    public void setProgressInterval(long ms) {
+        this.progressIntervalMs = Math.max(0, ms);
+    }
+    
+    /**
+     * Directory of the live model version (root if none is installed yet)
+     */
     public File getModelsDirectory() {
-        File dir = new File(context.getFilesDir(), MODEL_DIR);
+        File current = store.currentDirectory();
+        return current != null ? current : getRootDirectory();
+    }
+    
+    /**
+     * Root holding all versions
+     */
+    public File getRootDirectory() {
+        File dir = store.getRoot();
         if (!dir.exists()) {
             dir.mkdirs();
         }
         return dir;
     }
     
-    public boolean isModelsReady() {
-        File modelDir = getModelsDirectory();
-        for (String file : MODEL_FILES) {
-            if (!new File(modelDir, file).exists()) {
-                return false;
-            }
+    public String getCurrentVersion() {
+        String live = store.currentVersion();
+        return live != null && live.endsWith(REPAIR_SUFFIX)
+            ? live.substring(0, live.length() - REPAIR_SUFFIX.length()) : live;
+    }
+    
+    /**
+     * Delete versions other than the live one and those being downloaded
+     * Call once no Translator reads from an older version.
+     */
+    public void pruneOldVersions() {
+        synchronized (installing) {
+            store.pruneExcept(installing);
         }
-        return true;
+    }
+    
+    /**
+     * Cheap check: required files of the live version match the local
+     * manifest by size and mtime (hashes were verified at download time)
+     */
+    public boolean isModelsReady() {
+        File modelDir = store.currentDirectory();
+        if (modelDir == null) return false;
+        ModelVariant variant = ModelVariant.resolve(modelDir, VariantBenchmark.deviceKey());
+        List<String> required = new ArrayList<>(Arrays.asList(BASE_FILES));
+        required.addAll(variant.files());
+        return store.isIntact(required);
+    }
+    
+    /**
+     * Re-hash the live version in the background
+     * Corrupt files are deleted, so isModelsReady() turns false and the
+     * next initialize() downloads them again.
+     */
+    public void verifyModels(VerifyCallback callback) {
+        executorService.execute(() -> {
+            Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+            List<String> corrupt = store.deepVerify();
+            Thread.currentThread().setPriority(Thread.NORM_PRIORITY);
+            if (callback != null) callback.onVerified(corrupt);
+        });
     }
     
     public void downloadModels(DownloadCallback callback) {
         executorService.execute(() -> {
+            String version = null;
+            String target = null;
             try {
                 // Fetch version
-                String version = fetchVersion();
+                version = fetchVersion();
                 String versionDir = String.format("%s/%s", HUGGINGFACE_BASE, version);
                 
-                File modelDir = getModelsDirectory();
-                int totalFiles = MODEL_FILES.length;
-                int downloadedFiles = 0;
+                // Already live: never rewrite files a Translator may be reading
+                String live = store.currentVersion();
+                if (version.equals(getCurrentVersion())) {
+                    if (isModelsReady()) {
+                        if (callback != null) callback.onSuccess(version);
+                        return;
+                    }
+                    // Files missing after verifyModels: re-assemble the version in the other directory
+                    target = live.equals(version) ? version + REPAIR_SUFFIX : version;
+                } else {
+                    target = version;
+                }
                 
-                for (String file : MODEL_FILES) {
-                    String url = String.format("%s/%s", versionDir, file);
-                    File targetFile = new File(modelDir, file);
-                    
-                    downloadFile(url, targetFile);
-                    downloadedFiles++;
-                    
-                    if (callback != null) {
-                        callback.onProgress(downloadedFiles, totalFiles);
+                // Assemble the new version beside the live one, out of reach of pruneOldVersions
+                getRootDirectory();
+                File modelDir = store.versionDirectory(target);
+                synchronized (installing) {
+                    installing.add(target);
+                    modelDir.mkdirs();
+                }
+                Map<String, ModelStore.FileEntry> expected = fetchManifest(versionDir);
+                
+                List<String> files = new ArrayList<>(Arrays.asList(BASE_FILES));
+                for (ModelVariant variant : fetchVariants(versionDir, modelDir)) {
+                    boolean isDefault = variant.name.equals(ModelVariant.DEFAULT.name);
+                    if (!isDefault && memoryBudgetBytes > 0 && variant.residentBytes > memoryBudgetBytes) {
+                        continue;
                     }
+                    files.addAll(variant.files());
                 }
                 
+                Map<String, ModelStore.FileEntry> manifest =
+                    downloadAll(versionDir, modelDir, files, expected, callback);
+                store.writeManifest(target, manifest);
+                store.switchTo(target);
+                
                 if (callback != null) {
                     callback.onSuccess(version);
                 }
@@ -81,6 +194,12 @@ public class ModelManager {
                 if (callback != null) {
                     callback.onError(e);
                 }
+            } finally {
+                if (target != null) {
+                    synchronized (installing) {
+                        installing.remove(target);
+                    }
+                }
             }
         });
     }
@@ -110,39 +229,228 @@ public class ModelManager {
         }
     }
     
-    private void downloadFile(String fileUrl, File targetFile) throws Exception {
-        HttpURLConnection connection = (HttpURLConnection) new URL(fileUrl).openConnection();
-        
+    /**
+     * Download the optional variant manifest; without one only int8 is offered
+     */
+    private List<ModelVariant> fetchVariants(String versionDir, File modelDir) throws Exception {
+        File manifest = new File(modelDir, ModelVariant.MANIFEST_FILE);
+        String json = fetchOptionalText(String.format("%s/%s", versionDir, ModelVariant.MANIFEST_FILE));
+        if (json == null) {
+            manifest.delete();
+            return Collections.singletonList(ModelVariant.DEFAULT);
+        }
+        writeText(manifest, json);
+        return ModelVariant.loadManifest(modelDir);
+    }
+    
+    /**
+     * Download the optional hash/size manifest; without one nothing can be reused
+     */
+    private Map<String, ModelStore.FileEntry> fetchManifest(String versionDir) throws Exception {
+        String json = fetchOptionalText(String.format("%s/%s", versionDir, ModelStore.MANIFEST_FILE));
+        return json != null ? ModelStore.parseManifest(json) : Collections.emptyMap();
+    }
+    
+    /**
+     * GET a small text file; null if the server has none (404)
+     */
+    private String fetchOptionalText(String url) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
         try {
-            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
-                throw new Exception("Failed to download: " + fileUrl);
+            int code = connection.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_FOUND) return null;
+            if (code != HttpURLConnection.HTTP_OK) {
+                throw new Exception("Failed to fetch " + url + ": " + code);
             }
             
             InputStream inputStream = connection.getInputStream();
-            FileOutputStream outputStream = new FileOutputStream(targetFile);
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
             byte[] buffer = new byte[8192];
             int bytesRead;
-            
             while ((bytesRead = inputStream.read(buffer)) != -1) {
-                outputStream.write(buffer, 0, bytesRead);
+                result.write(buffer, 0, bytesRead);
             }
-            
-            outputStream.close();
-            inputStream.close();
+            return new String(result.toByteArray(), StandardCharsets.UTF_8);
         } finally {
             connection.disconnect();
         }
     }
     
+    /**
+     * Download files concurrently; byte-level progress is pushed through the
+     * callback at most once per progress interval
+     * @return local manifest entries (hash computed while downloading, size, mtime)
+     */
+    private Map<String, ModelStore.FileEntry> downloadAll(String versionDir, File modelDir, List<String> files,
+                                                          Map<String, ModelStore.FileEntry> expected,
+                                                          DownloadCallback callback) throws Exception {
+        Map<String, ModelStore.FileEntry> recorded = new ConcurrentHashMap<>();
+        Map<String, JSONObject> timings = new ConcurrentHashMap<>();
+        DownloadProgress progress = new DownloadProgress(files.size(), progressIntervalMs,
+            callback != null ? callback::onProgress : null);
+        for (String file : files) {
+            ModelStore.FileEntry entry = expected.get(file);
+            if (entry != null) progress.expect(file, entry.size);
+        }
+        
+        long startTime = System.nanoTime();
+        ExecutorService filePool = Executors.newFixedThreadPool(MAX_PARALLEL_FILES);
+        CompletionService<String> completion = new ExecutorCompletionService<>(filePool);
+        try {
+            for (String file : files) {
+                completion.submit(() -> {
+                    long fileStart = System.nanoTime();
+                    File target = new File(modelDir, file);
+                    ModelStore.FileEntry entry = expected.get(file);
+                    String sha = entry != null ? entry.sha256 : null;
+                    String source = null;
+                    
+                    // Complete from an interrupted update of this version: the only path that re-reads
+                    if (target.exists() && (entry == null || entry.size == target.length())) {
+                        String actual = ModelDownloader.sha256(target);
+                        if (sha == null || sha.equalsIgnoreCase(actual)) {
+                            sha = actual;
+                            source = "present";
+                        } else {
+                            target.delete();
+                        }
+                    }
+                    // Unchanged since an installed version (verified then): link instead of download
+                    if (source == null && entry != null && store.reuse(file, entry, target)) {
+                        source = "reused";
+                    }
+                    
+                    AtomicLong transferred = new AtomicLong();
+                    if (source == null) {
+                        ModelDownloader.ProgressListener fileProgress = progress.forFile(file);
+                        ModelDownloader.ProgressListener counting = new ModelDownloader.ProgressListener() {
+                            @Override
+                            public void onStart(long totalBytes, long resumedBytes) {
+                                fileProgress.onStart(totalBytes, resumedBytes);
+                            }
+                            
+                            @Override
+                            public void onBytes(int count) {
+                                transferred.addAndGet(count);
+                                fileProgress.onBytes(count);
+                            }
+                        };
+                        // Hashed while streaming; throws on mismatch with the server manifest
+                        String[] encoding = new String[1];
+                        sha = downloadFile(versionDir, file, entry, target, counting, encoding);
+                        source = encoding[0] != null ? encoding[0] : "download";
+                    } else {
+                        progress.skipped(file, target.length());
+                    }
+                    
+                    recorded.put(file, ModelStore.FileEntry.of(target, sha));
+                    long ms = (System.nanoTime() - fileStart) / 1_000_000;
+                    JSONObject timing = new JSONObject();
+                    timing.put("source", source);
+                    timing.put("bytes", target.length());
+                    timing.put("transferredBytes", transferred.get());
+                    timing.put("ms", ms);
+                    timing.put("bytesPerSecond", ms > 0 ? transferred.get() * 1000 / ms : 0);
+                    timings.put(file, timing);
+                    progress.fileDone(file);
+                    return file;
+                });
+            }
+            
+            for (int i = 0; i < files.size(); i++) {
+                try {
+                    completion.take().get();
+                } catch (ExecutionException e) {
+                    // Finished files and .part data of the others are kept for the next attempt
+                    Throwable cause = e.getCause();
+                    throw cause instanceof Exception ? (Exception) cause : e;
+                }
+            }
+        } finally {
+            filePool.shutdownNow();
+        }
+        
+        Map<String, ModelStore.FileEntry> manifest = new LinkedHashMap<>();
+        JSONObject fileTimings = new JSONObject();
+        for (String file : files) {
+            manifest.put(file, recorded.get(file));
+            fileTimings.put(file, timings.get(file));
+        }
+        DownloadProgress.Snapshot last = progress.snapshot(null);
+        JSONObject stats = new JSONObject();
+        stats.put("totalMs", (System.nanoTime() - startTime) / 1_000_000);
+        stats.put("bytes", last.bytesDone);
+        stats.put("averageBytesPerSecond", last.averageBytesPerSecond);
+        stats.put("files", fileTimings);
+        writeText(new File(modelDir, STATS_FILE), stats.toString());
+        return manifest;
+    }
+    
+    /**
+     * Fetch the first supported compressed copy listed in the manifest,
+     * falling back to the plain file when none is published
+     * @param usedEncoding receives the encoding fetched, null for the plain file
+     * @return SHA-256 of the (decompressed) file
+     */
+    private String downloadFile(String versionDir, String file, ModelStore.FileEntry entry, File target,
+                                ModelDownloader.ProgressListener listener, String[] usedEncoding) throws Exception {
+        String sha = entry != null ? entry.sha256 : null;
+        if (entry != null) {
+            for (ModelStore.Compressed compressed : entry.compressed) {
+                if (!ModelDownloader.supportsEncoding(compressed.encoding)) continue;
+                try {
+                    String result = downloader.downloadCompressed(String.format("%s/%s", versionDir, compressed.file),
+                        compressed.encoding, compressed.size, target, sha, listener);
+                    usedEncoding[0] = compressed.encoding;
+                    return result;
+                } catch (FileNotFoundException e) {
+                    // Listed but not uploaded: try the next encoding
+                }
+            }
+        }
+        return downloader.download(String.format("%s/%s", versionDir, file), target, sha, listener);
+    }
+    
+    /**
+     * Per-file timing of the download that produced the live version, or null
+     */
+    public JSONObject getDownloadStats() {
+        File dir = store.currentDirectory();
+        File file = dir != null ? new File(dir, STATS_FILE) : null;
+        if (file == null || !file.exists()) return null;
+        try (InputStream in = new FileInputStream(file)) {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) != -1) {
+                result.write(buffer, 0, bytesRead);
+            }
+            return new JSONObject(new String(result.toByteArray(), StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+    
+    private static void writeText(File file, String text) throws Exception {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+    
     public interface DownloadCallback {
-        void onProgress(int downloaded, int total);
+        void onProgress(DownloadProgress.Snapshot progress);
         void onSuccess(String version);
         void onError(Exception error);
     }
     
+    public interface VerifyCallback {
+        void onVerified(List<String> corruptFiles);
+    }
+    
     public void shutdown() {
         if (executorService != null) {
             executorService.shutdown();
         }
+        downloader.shutdown();
     }
 }
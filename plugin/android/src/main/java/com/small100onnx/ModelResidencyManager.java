@@ -0,0 +1,357 @@
+package com.small100onnx;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.os.Debug;
+import android.util.Log;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Model Residency Manager - registry of loaded Translators
+ *
+ * Each loaded Translator is a reference-counted TranslatorHandle. Adopting
+ * a new one (model upgrade) never waits: new requests go to it at once,
+ * requests in flight finish on the previous one, which is closed when
+ * drained. Sessions are released on memory pressure or idle timeout and
+ * reloaded transparently on the next translate call.
+ *
+ * Android: register with Context.registerComponentCallbacks to receive
+ * onTrimMemory/onLowMemory.
+ */
+public class ModelResidencyManager implements ComponentCallbacks2 {
+    private static final String TAG = "ModelResidency";
+
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = 5 * 60 * 1000;
+
+    private final long idleTimeoutMs;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicInteger reloadCount = new AtomicInteger();
+
+    private volatile TranslatorHandle current;
+    // Retired handles still serving in-flight requests; guarded by this
+    private final Set<TranslatorHandle> draining = new LinkedHashSet<>();
+    // Version directory of the adopted translator, used for full reloads
+    private volatile File modelsDir;
+    // Applied again to translators reloaded after releaseAll
+    private volatile TranslatorConfig config;
+    private volatile boolean initialized;
+    private volatile Runnable drainListener;
+    private ScheduledFuture<?> idleRelease;
+    // Reload in progress, shared by every acquire() that finds no translator; guarded by this
+    private CompletableFuture<Void> reloading;
+    // Bumped by releaseAll so a reload started before it is not published; guarded by this
+    private long releaseGeneration;
+
+    public ModelResidencyManager(long idleTimeoutMs) {
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    public ModelResidencyManager() {
+        this(DEFAULT_IDLE_TIMEOUT_MS);
+    }
+
+    /**
+     * Called after a retired Translator closed and none is left draining
+     * (e.g. to delete model versions that are no longer read)
+     */
+    public void setDrainListener(Runnable listener) {
+        this.drainListener = listener;
+    }
+
+    /**
+     * Config from initialize(), applied to every translator this manager reloads
+     */
+    public void setConfig(TranslatorConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Make a loaded translator current; the previous one closes once drained
+     */
+    public void adopt(Translator loaded) {
+        synchronized (this) {
+            if (current != null && current.getTranslator() == loaded) return;
+            retireLocked();
+            current = newHandle(loaded);
+            modelsDir = loaded.getModelsDir();
+            initialized = true;
+        }
+        scheduleIdleRelease();
+    }
+
+    /**
+     * Drop a translator that failed after adopt, if it is still current;
+     * translate fails until a translator is adopted again
+     */
+    public void discard(Translator failed) {
+        synchronized (this) {
+            if (current == null || current.getTranslator() != failed) return;
+            initialized = false;
+            retireLocked();
+        }
+        Log.d(TAG, "Failed translator discarded");
+    }
+
+    /**
+     * Translate on the current translator, reloading released models first if needed
+     */
+    public String translate(String text, String targetLanguage) throws Exception {
+        TranslatorHandle handle = acquire();
+        try {
+            return handle.translate(text, targetLanguage);
+        } finally {
+            handle.release();
+            scheduleIdleRelease();
+        }
+    }
+
+    /**
+     * Translate into several targets in one batched pass on the current translator
+     */
+    public List<String> translateToMany(String text, List<String> targetLanguages) throws Exception {
+        TranslatorHandle handle = acquire();
+        try {
+            return handle.translateToMany(text, targetLanguages);
+        } finally {
+            handle.release();
+            scheduleIdleRelease();
+        }
+    }
+
+    /**
+     * Current translator if resident (no reload), else null
+     * Not retained: it may be closed by a later upgrade or release.
+     */
+    public Translator getLoadedTranslator() {
+        TranslatorHandle handle = current;
+        return handle != null && handle.isResident() ? handle.getTranslator() : null;
+    }
+
+    /**
+     * True once a translator was adopted; it may currently be released
+     */
+    public boolean isInitialized() {
+        return initialized;
+    }
+
+    /**
+     * Retired translators still finishing requests
+     */
+    public synchronized int getDrainingCount() {
+        return draining.size();
+    }
+
+    /**
+     * Close sessions and ORT arenas; tokenizer and language map stay loaded
+     */
+    public void releaseSessions() {
+        TranslatorHandle handle = current;
+        if (handle == null || !handle.retain()) return;
+        try {
+            handle.releaseSessions();
+        } finally {
+            handle.release();
+        }
+    }
+
+    /**
+     * Drop the whole translator including tokenizer structures
+     * It is closed as soon as in-flight requests finish.
+     */
+    public synchronized void releaseAll() {
+        releaseGeneration++;
+        if (current == null) return;
+        retireLocked();
+        Log.d(TAG, "Translator released");
+    }
+
+    /**
+     * Approximate resident bytes per component, plus process native/Java heap
+     */
+    public Map<String, Long> getResidentBytes() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        TranslatorHandle handle = current;
+        if (handle != null && handle.retain()) {
+            try {
+                result.putAll(handle.getResidentBytes());
+            } finally {
+                handle.release();
+            }
+        }
+        Runtime runtime = Runtime.getRuntime();
+        result.put("nativeHeap", Debug.getNativeHeapAllocatedSize());
+        result.put("javaHeap", runtime.totalMemory() - runtime.freeMemory());
+        return result;
+    }
+
+    public int getReloadCount() {
+        return reloadCount.get();
+    }
+
+    /**
+     * Release everything; translate fails until a translator is adopted again
+     */
+    public void reset() {
+        initialized = false;
+        releaseAll();
+    }
+
+    /**
+     * Release everything and stop the idle timer
+     */
+    public void close() {
+        reset();
+        scheduler.shutdownNow();
+    }
+
+    // ComponentCallbacks2
+
+    @Override
+    public void onTrimMemory(int level) {
+        // Called on the main thread; release may wait for an in-flight translation
+        if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            Log.d(TAG, "onTrimMemory(" + level + "): releasing translator");
+            runOnScheduler(this::releaseAll);
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            Log.d(TAG, "onTrimMemory(" + level + "): releasing sessions");
+            runOnScheduler(this::releaseSessions);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        runOnScheduler(this::releaseAll);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    // Private helpers
+
+    /**
+     * Reference to the current handle, recreating the translator after releaseAll
+     * One caller loads; the others wait for it outside the monitor.
+     */
+    private TranslatorHandle acquire() throws Exception {
+        while (true) {
+            TranslatorHandle handle = current;
+            if (handle != null && handle.retain()) return handle;
+
+            CompletableFuture<Void> reload;
+            boolean loader = false;
+            File reloadDir;
+            TranslatorConfig reloadConfig;
+            long generation;
+            synchronized (this) {
+                if (!initialized) {
+                    throw new IllegalStateException("Translator not initialized");
+                }
+                // Another thread may have adopted or reloaded meanwhile
+                if (current != null) continue;
+                if (reloading == null) {
+                    reloading = new CompletableFuture<>();
+                    loader = true;
+                }
+                reload = reloading;
+                reloadDir = modelsDir;
+                reloadConfig = config;
+                generation = releaseGeneration;
+            }
+
+            if (loader) reload(reload, reloadDir, reloadConfig, generation);
+            try {
+                reload.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof Exception ? (Exception) cause : e;
+            }
+        }
+    }
+
+    /**
+     * Load outside the monitor, then publish unless adopted, reset or released meanwhile
+     */
+    private void reload(CompletableFuture<Void> slot, File dir, TranslatorConfig reloadConfig,
+                        long generation) {
+        long start = System.currentTimeMillis();
+        Translator reloaded = null;
+        try {
+            reloaded = Translator.create(dir);
+            if (reloadConfig != null) reloadConfig.applyTo(reloaded);
+        } catch (Throwable e) {
+            // Errors too: waiters block on the slot until it completes
+            if (reloaded != null) reloaded.close();
+            synchronized (this) {
+                reloading = null;
+            }
+            slot.completeExceptionally(e);
+            return;
+        }
+
+        boolean published;
+        synchronized (this) {
+            reloading = null;
+            published = initialized && current == null && generation == releaseGeneration;
+            if (published) {
+                current = newHandle(reloaded);
+                reloadCount.incrementAndGet();
+            }
+        }
+        if (published) {
+            Log.d(TAG, "Reloaded in " + (System.currentTimeMillis() - start) + "ms");
+        } else {
+            reloaded.close();
+            Log.d(TAG, "Reload superseded, discarded");
+        }
+        slot.complete(null);
+    }
+
+    private TranslatorHandle newHandle(Translator translator) {
+        return new TranslatorHandle(translator, reloadCount, this::onHandleClosed);
+    }
+
+    private void retireLocked() {
+        TranslatorHandle handle = current;
+        if (handle == null) return;
+        current = null;
+        draining.add(handle);
+        handle.retire();
+    }
+
+    private void onHandleClosed(TranslatorHandle handle) {
+        boolean drained;
+        synchronized (this) {
+            drained = draining.remove(handle) && draining.isEmpty();
+        }
+        Runnable listener = drainListener;
+        if (drained && listener != null) listener.run();
+    }
+
+    private synchronized void scheduleIdleRelease() {
+        if (idleTimeoutMs <= 0 || scheduler.isShutdown()) return;
+        if (idleRelease != null) idleRelease.cancel(false);
+        idleRelease = scheduler.schedule(() -> {
+            Log.d(TAG, "Idle for " + idleTimeoutMs + "ms, releasing sessions");
+            releaseSessions();
+        }, idleTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void runOnScheduler(Runnable task) {
+        if (!scheduler.isShutdown()) scheduler.execute(task);
+    }
+}
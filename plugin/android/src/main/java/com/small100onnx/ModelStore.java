@@ -0,0 +1,363 @@
+package com.small100onnx;
+
+import android.system.Os;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Model Store - versioned on-disk layout
+ *
+ *   Small100Models/
+ *     current                  pointer file holding the live version name
+ *     versions/<version>/      model files + manifest.json
+ *
+ * A new version is assembled in its own directory (unchanged files are
+ * hard-linked from older versions) and made live by atomically replacing
+ * the pointer, so files a Translator is reading are never overwritten.
+ */
+public class ModelStore {
+    public static final String MANIFEST_FILE = "manifest.json";
+    private static final String POINTER_FILE = "current";
+    private static final String VERSIONS_DIR = "versions";
+    private static final String LEGACY_VERSION = "legacy";
+    private static final String LEGACY_MARKER = "vocab.json";
+
+    /**
+     * Expected hash and size of one file (sha256 may be null if unknown)
+     * Local manifests also record mtime for the cheap readiness check;
+     * server manifests may list compressed copies (hash/size are of the
+     * decompressed file).
+     */
+    public static class FileEntry {
+        public final String sha256;
+        public final long size;
+        public final long modifiedAt;
+        public final List<Compressed> compressed;
+
+        public FileEntry(String sha256, long size, long modifiedAt, List<Compressed> compressed) {
+            this.sha256 = sha256;
+            this.size = size;
+            this.modifiedAt = modifiedAt;
+            this.compressed = compressed;
+        }
+
+        public FileEntry(String sha256, long size, long modifiedAt) {
+            this(sha256, size, modifiedAt, Collections.<Compressed>emptyList());
+        }
+
+        public FileEntry(String sha256, long size) {
+            this(sha256, size, 0);
+        }
+
+        /**
+         * Entry describing a file as it is on disk now
+         */
+        public static FileEntry of(File file, String sha256) {
+            return new FileEntry(sha256, file.length(), file.lastModified());
+        }
+
+        /**
+         * Stat-only check: same size and, if recorded, same mtime
+         */
+        public boolean matchesStat(File file) {
+            return file.exists() && file.length() == size && (modifiedAt == 0 || file.lastModified() == modifiedAt);
+        }
+
+        boolean sameContent(FileEntry other) {
+            return sha256 != null && sha256.equalsIgnoreCase(other.sha256) && size == other.size;
+        }
+    }
+
+    /**
+     * Compressed copy of a file on the server, e.g. "vocab.json.gz" with encoding "gzip"
+     */
+    public static class Compressed {
+        public final String encoding;
+        public final String file;
+        // Compressed size, -1 if unknown
+        public final long size;
+
+        public Compressed(String encoding, String file, long size) {
+            this.encoding = encoding;
+            this.file = file;
+            this.size = size;
+        }
+    }
+
+    private final File root;
+
+    public ModelStore(File root) {
+        this.root = root;
+    }
+
+    public File getRoot() {
+        return root;
+    }
+
+    /**
+     * Live version name, or null if no version was installed
+     */
+    public synchronized String currentVersion() {
+        migrateLegacyLayout();
+        File pointer = new File(root, POINTER_FILE);
+        if (!pointer.exists()) return null;
+        try {
+            String version = readFile(pointer).trim();
+            return version.isEmpty() ? null : version;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Live version directory, or null if no version was installed
+     */
+    public File currentDirectory() {
+        String version = currentVersion();
+        return version != null ? versionDirectory(version) : null;
+    }
+
+    public File versionDirectory(String version) {
+        return new File(new File(root, VERSIONS_DIR), version);
+    }
+
+    /**
+     * Make a fully assembled version live (atomic rename of the pointer)
+     */
+    public synchronized void switchTo(String version) throws IOException {
+        File tmp = new File(root, POINTER_FILE + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            out.write(version.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+        if (!tmp.renameTo(new File(root, POINTER_FILE))) {
+            throw new IOException("Failed to switch to version " + version);
+        }
+    }
+
+    /**
+     * Read manifest.json of a version (empty if absent)
+     */
+    public Map<String, FileEntry> readManifest(String version) {
+        return readManifest(new File(versionDirectory(version), MANIFEST_FILE));
+    }
+
+    public static Map<String, FileEntry> parseManifest(String json) throws Exception {
+        Map<String, FileEntry> result = new LinkedHashMap<>();
+        JSONObject files = new JSONObject(json).getJSONObject("files");
+        Iterator<String> keys = files.keys();
+        while (keys.hasNext()) {
+            String name = keys.next();
+            JSONObject entry = files.getJSONObject(name);
+            String sha = entry.optString("sha256", "");
+            // Listed in order of preference
+            List<Compressed> compressed = new ArrayList<>();
+            JSONArray variants = entry.optJSONArray("compressed");
+            for (int i = 0; variants != null && i < variants.length(); i++) {
+                JSONObject c = variants.getJSONObject(i);
+                compressed.add(new Compressed(c.getString("encoding"), c.getString("file"), c.optLong("size", -1)));
+            }
+            result.put(name, new FileEntry(sha.isEmpty() ? null : sha, entry.optLong("size", -1),
+                entry.optLong("modifiedAt", 0), compressed));
+        }
+        return result;
+    }
+
+    public void writeManifest(String version, Map<String, FileEntry> entries) throws Exception {
+        JSONObject files = new JSONObject();
+        for (Map.Entry<String, FileEntry> e : entries.entrySet()) {
+            JSONObject entry = new JSONObject();
+            if (e.getValue().sha256 != null) entry.put("sha256", e.getValue().sha256);
+            entry.put("size", e.getValue().size);
+            if (e.getValue().modifiedAt != 0) entry.put("modifiedAt", e.getValue().modifiedAt);
+            files.put(e.getKey(), entry);
+        }
+        JSONObject obj = new JSONObject();
+        obj.put("version", version);
+        obj.put("files", files);
+
+        File dir = versionDirectory(version);
+        File tmp = new File(dir, MANIFEST_FILE + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            out.write(obj.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        if (!tmp.renameTo(new File(dir, MANIFEST_FILE))) {
+            throw new IOException("Failed to write manifest for " + version);
+        }
+    }
+
+    /**
+     * Cheap readiness check of the live version: manifest size/mtime per file
+     * Versions without a manifest (migrated legacy layout) only check existence.
+     */
+    public boolean isIntact(Iterable<String> names) {
+        String version = currentVersion();
+        if (version == null) return false;
+        File dir = versionDirectory(version);
+        Map<String, FileEntry> manifest = readManifest(version);
+        for (String name : names) {
+            File file = new File(dir, name);
+            if (manifest.isEmpty()) {
+                if (!file.exists()) return false;
+                continue;
+            }
+            FileEntry entry = manifest.get(name);
+            if (entry == null || !entry.matchesStat(file)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Re-hash every file of the live version against its manifest
+     * Corrupt files are deleted so the next readiness check fails.
+     * @return names of corrupt or missing files
+     */
+    public List<String> deepVerify() {
+        List<String> corrupt = new ArrayList<>();
+        String version = currentVersion();
+        if (version == null) return corrupt;
+        File dir = versionDirectory(version);
+        for (Map.Entry<String, FileEntry> e : readManifest(version).entrySet()) {
+            File file = new File(dir, e.getKey());
+            try {
+                if (!file.exists() || file.length() != e.getValue().size
+                        || (e.getValue().sha256 != null
+                            && !e.getValue().sha256.equalsIgnoreCase(ModelDownloader.sha256(file)))) {
+                    corrupt.add(e.getKey());
+                    file.delete();
+                }
+            } catch (IOException ex) {
+                corrupt.add(e.getKey());
+            }
+        }
+        return corrupt;
+    }
+
+    /**
+     * Place an identical file from another installed version at target
+     * Hard-links when possible, copies otherwise.
+     * @return true if a matching file was found and placed
+     */
+    public boolean reuse(String name, FileEntry expected, File target) {
+        if (expected.sha256 == null) return false;
+        File[] versions = new File(root, VERSIONS_DIR).listFiles();
+        if (versions == null) return false;
+
+        for (File dir : versions) {
+            if (dir.equals(target.getParentFile())) continue;
+            FileEntry existing = readManifest(new File(dir, MANIFEST_FILE)).get(name);
+            File source = new File(dir, name);
+            if (existing == null || !existing.sameContent(expected) || source.length() != expected.size) {
+                continue;
+            }
+            try {
+                target.delete();
+                Os.link(source.getAbsolutePath(), target.getAbsolutePath());
+                return true;
+            } catch (Exception linkFailed) {
+                try {
+                    copy(source, target);
+                    return true;
+                } catch (IOException copyFailed) {
+                    target.delete();
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Delete installed versions not in keep (never the live one)
+     */
+    public synchronized void pruneExcept(Set<String> keep) {
+        String current = currentVersion();
+        File[] versions = new File(root, VERSIONS_DIR).listFiles();
+        if (versions == null) return;
+        for (File dir : versions) {
+            if (dir.getName().equals(current) || keep.contains(dir.getName())) continue;
+            deleteRecursive(dir);
+        }
+    }
+
+    // Private helpers
+
+    /**
+     * Move files of the pre-versioning flat layout into versions/legacy
+     */
+    private void migrateLegacyLayout() {
+        if (!new File(root, LEGACY_MARKER).exists() || new File(root, POINTER_FILE).exists()) return;
+        File target = versionDirectory(LEGACY_VERSION);
+        target.mkdirs();
+        File[] files = root.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (file.isFile()) file.renameTo(new File(target, file.getName()));
+        }
+        try {
+            switchTo(LEGACY_VERSION);
+        } catch (IOException ignored) {
+            // Stays unversioned; isModelsReady reports not ready and models are re-downloaded
+        }
+    }
+
+    private static Map<String, FileEntry> readManifest(File file) {
+        if (!file.exists()) return new LinkedHashMap<>();
+        try {
+            return parseManifest(readFile(file));
+        } catch (Exception e) {
+            return new LinkedHashMap<>();
+        }
+    }
+
+    private static void copy(File source, File target) throws IOException {
+        File tmp = new File(target.getPath() + ModelDownloader.PART_SUFFIX);
+        try (InputStream in = new FileInputStream(source);
+             OutputStream out = new FileOutputStream(tmp)) {
+            byte[] buffer = new byte[64 * 1024];
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) != -1) {
+                out.write(buffer, 0, bytesRead);
+            }
+        }
+        if (!tmp.renameTo(target)) throw new IOException("Failed to copy " + source);
+    }
+
+    private static String readFile(File file) throws IOException {
+        try (FileInputStream fis = new FileInputStream(file)) {
+            byte[] data = new byte[(int) file.length()];
+            int read = 0;
+            while (read < data.length) {
+                int n = fis.read(data, read, data.length - read);
+                if (n < 0) break;
+                read += n;
+            }
+            return new String(data, 0, read, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void deleteRecursive(File file) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) deleteRecursive(child);
+            }
+        }
+        file.delete();
+    }
+}
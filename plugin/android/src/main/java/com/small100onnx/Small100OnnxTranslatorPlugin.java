@@ -4,17 +4,22 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.util.Log;
 
+import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.Plugin;
 import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
 
+import org.json.JSONObject;
+
 import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 /**
  * Capacitor Plugin for SMALL100 ONNX Translation
@@ -25,17 +30,27 @@ public class Small100OnnxTranslatorPlugin extends Plugin {
     private static final String PREFS_NAME = "Small100OnnxPrefs";
     private static final String KEY_VERSION = "model_version";
     private static final String KEY_DOWNLOAD_TIME = "download_time";
+    private static final String WARM_UP_BACKGROUND = "background";
+    private static final String WARM_UP_BLOCKING = "blocking";
+    private static final String PROFILE_DIR = "ort_profiles";
+    private static final int PROFILE_TOP_NODES = 20;
 
     private ModelManager modelManager;
-    private Translator translator;
+    private ModelResidencyManager residency;
 
     @Override
     public void load() {
+        Platform.install(new AndroidPlatform());
         modelManager = new ModelManager(getContext());
+        residency = new ModelResidencyManager();
+        // Older model versions can go once no retired translator reads them
+        residency.setDrainListener(modelManager::pruneOldVersions);
+        getContext().getApplicationContext().registerComponentCallbacks(residency);
     }
 
     @PluginMethod
     public void initialize(PluginCall call) {
+        modelManager.setMemoryBudget(memoryBudgetBytes(call));
         if (modelManager.isModelsReady()) {
             initTranslator(call);
         } else {
@@ -46,18 +61,28 @@ public class Small100OnnxTranslatorPlugin extends Plugin {
     @PluginMethod
     public void isReady(PluginCall call) {
         JSObject result = new JSObject();
-        result.put("ready", modelManager.isModelsReady() && translator != null);
+        result.put("ready", modelManager.isModelsReady() && residency.isInitialized());
         call.resolve(result);
     }
 
     @PluginMethod
     public void downloadModels(PluginCall call) {
+        Integer progressIntervalMs = call.getInt("progressIntervalMs");
+        if (progressIntervalMs != null) {
+            modelManager.setProgressInterval(progressIntervalMs);
+        }
         modelManager.downloadModels(new ModelManager.DownloadCallback() {
             @Override
-            public void onProgress(int downloaded, int total) {
+            public void onProgress(DownloadProgress.Snapshot progress) {
                 JSObject data = new JSObject();
-                data.put("downloaded", downloaded);
-                data.put("total", total);
+                data.put("downloaded", progress.filesDone);
+                data.put("total", progress.filesTotal);
+                data.put("bytesDownloaded", progress.bytesDone);
+                data.put("bytesTotal", progress.bytesTotal);
+                data.put("bytesPerSecond", progress.bytesPerSecond);
+                data.put("averageBytesPerSecond", progress.averageBytesPerSecond);
+                data.put("etaSeconds", progress.etaSeconds);
+                if (progress.file != null) data.put("file", progress.file);
                 notifyListeners("onDownloadProgress", data);
             }
 
@@ -85,7 +110,7 @@ public class Small100OnnxTranslatorPlugin extends Plugin {
             return;
         }
 
-        if (translator == null || !translator.isReady()) {
+        if (!residency.isInitialized()) {
             call.reject("Translator not initialized. Call initialize() first.");
             return;
         }
@@ -94,7 +119,7 @@ public class Small100OnnxTranslatorPlugin extends Plugin {
         new Thread(() -> {
             try {
                 String srcLang = sourceLanguage.equals("auto") ? "en" : sourceLanguage;
-                String result = translator.translate(text, targetLanguage);
+                String result = residency.translate(text, targetLanguage);
 
                 JSObject response = new JSObject();
                 response.put("translatedText", result);
@@ -109,6 +134,52 @@ public class Small100OnnxTranslatorPlugin extends Plugin {
         }).start();
     }
 
+    @PluginMethod
+    public void translateToMany(PluginCall call) {
+        String text = call.getString("text");
+        String sourceLanguage = call.getString("sourceLanguage", "auto");
+        JSArray targets = call.getArray("targetLanguages");
+
+        if (text == null || text.isEmpty()) {
+            call.reject("Text is required");
+            return;
+        }
+        if (targets == null || targets.length() == 0) {
+            call.reject("targetLanguages is required");
+            return;
+        }
+
+        if (!residency.isInitialized()) {
+            call.reject("Translator not initialized. Call initialize() first.");
+            return;
+        }
+
+        // Run in background thread
+        new Thread(() -> {
+            try {
+                String srcLang = sourceLanguage.equals("auto") ? "en" : sourceLanguage;
+                List<String> targetLanguages = targets.toList();
+                List<String> results = residency.translateToMany(text, targetLanguages);
+
+                JSArray translations = new JSArray();
+                for (int i = 0; i < results.size(); i++) {
+                    JSObject translation = new JSObject();
+                    translation.put("translatedText", results.get(i));
+                    translation.put("sourceLanguage", srcLang);
+                    translation.put("targetLanguage", targetLanguages.get(i));
+                    translations.put(translation);
+                }
+                JSObject response = new JSObject();
+                response.put("translations", translations);
+
+                getActivity().runOnUiThread(() -> call.resolve(response));
+            } catch (Exception e) {
+                Log.e(TAG, "Translation error", e);
+                getActivity().runOnUiThread(() -> call.reject("Translation failed: " + e.getMessage()));
+            }
+        }).start();
+    }
+
     @PluginMethod
     public void getModelInfo(PluginCall call) {
         call.resolve(buildModelInfo());
@@ -117,12 +188,9 @@ public class Small100OnnxTranslatorPlugin extends Plugin {
     @PluginMethod
     public void clearModels(PluginCall call) {
         try {
-            if (translator != null) {
-                translator.close();
-                translator = null;
-            }
-            
-            File modelDir = modelManager.getModelsDirectory();
+            residency.reset();
+
+            File modelDir = modelManager.getRootDirectory();
             if (modelDir.exists()) {
                 deleteRecursive(modelDir);
             }
@@ -137,12 +205,22 @@ public class Small100OnnxTranslatorPlugin extends Plugin {
     public void debugInfo(PluginCall call) {
         JSObject result = new JSObject();
         try {
+            Translator translator = residency.getLoadedTranslator();
             if (translator != null) {
                 TranslationEngine engine = translator.getEngine();
                 result.put("encoderInputs", Arrays.toString(engine.getEncoderInputNames()));
                 result.put("encoderOutputs", Arrays.toString(engine.getEncoderOutputNames()));
                 result.put("decoderInputs", Arrays.toString(engine.getDecoderInputNames()));
                 result.put("decoderOutputs", Arrays.toString(engine.getDecoderOutputNames()));
+                result.put("profiling", translator.isProfiling());
+                Translator.Profile profile = translator.getProfile();
+                if (profile != null) {
+                    result.put("profile", buildProfile(profile));
+                }
+            }
+            JSONObject downloadStats = modelManager.getDownloadStats();
+            if (downloadStats != null) {
+                result.put("downloadStats", downloadStats);
             }
         } catch (Exception e) {
             result.put("error", e.getMessage());
@@ -150,19 +228,220 @@ public class Small100OnnxTranslatorPlugin extends Plugin {
         call.resolve(result);
     }
 
+    @PluginMethod
+    public void getMemoryUsage(PluginCall call) {
+        JSObject components = new JSObject();
+        for (Map.Entry<String, Long> entry : residency.getResidentBytes().entrySet()) {
+            components.put(entry.getKey(), entry.getValue());
+        }
+        JSObject result = new JSObject();
+        result.put("resident", residency.getLoadedTranslator() != null);
+        result.put("reloads", residency.getReloadCount());
+        result.put("bytes", components);
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void releaseMemory(PluginCall call) {
+        // Models reload on the next translate call
+        if (call.getBoolean("all", false)) {
+            residency.releaseAll();
+        } else {
+            residency.releaseSessions();
+        }
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void getMetrics(PluginCall call) {
+        call.resolve(buildMetrics(Metrics.shared()));
+    }
+
+    @PluginMethod
+    public void resetMetrics(PluginCall call) {
+        Metrics.shared().reset();
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void verifyModels(PluginCall call) {
+        // Full re-hash; corrupt files are deleted and re-downloaded by the next initialize()
+        modelManager.verifyModels(corruptFiles -> {
+            JSObject result = new JSObject();
+            result.put("valid", corruptFiles.isEmpty());
+            result.put("corruptFiles", new JSArray(corruptFiles));
+            getActivity().runOnUiThread(() -> call.resolve(result));
+        });
+    }
+
+    @PluginMethod
+    public void startProfiling(PluginCall call) {
+        int translations = call.getInt("translations", 1);
+        Translator translator = residency.getLoadedTranslator();
+        if (translator == null) {
+            call.reject("Translator not loaded. Call initialize() first.");
+            return;
+        }
+
+        // Reopening sessions with profiling on takes about as long as loading them
+        new Thread(() -> {
+            try {
+                translator.startProfiling(translations, new File(getContext().getCacheDir(), PROFILE_DIR));
+                getActivity().runOnUiThread(() -> call.resolve());
+            } catch (Exception e) {
+                Log.e(TAG, "Profiling not started", e);
+                getActivity().runOnUiThread(() -> call.reject("Profiling not started: " + e.getMessage()));
+            }
+        }).start();
+    }
+
     // Private methods
 
     private void initTranslator(PluginCall call) {
         new Thread(() -> {
-            try {
-                translator = Translator.create(modelManager.getModelsDirectory());
+            // First launch: benchmark downloaded variants and persist the fastest for this SoC
+            File modelsDir = modelManager.getModelsDirectory();
+            ModelVariant variant = VariantBenchmark.selectOrBenchmark(modelsDir, memoryBudgetBytes(call));
+            createTranslator(call, modelsDir, variant);
+        }).start();
+    }
+
+    private void createTranslator(PluginCall call, File modelsDir, ModelVariant variant) {
+        Translator.createAsync(modelsDir, variant, new Translator.InitCallback() {
+            // Adopted before its decoder loaded; retired again if loading fails
+            private volatile Translator early;
+
+            @Override
+            public void onStageComplete(String stage, long elapsedMs) {
+                JSObject data = new JSObject();
+                data.put("stage", stage);
+                data.put("elapsedMs", elapsedMs);
+                notifyListeners("onInitProgress", data);
+            }
+
+            @Override
+            public void onEncoderReady(Translator created) {
+                // Beam, translation memory and batching options from initialize(),
+                // kept for translators reloaded after a memory trim
+                TranslatorConfig config = TranslatorConfig.fromJson(call.getData());
+                config.applyTo(created);
+                residency.setConfig(config);
+                // First load: accept requests now, decoding waits for the decoder session.
+                // Upgrade: the current translator keeps serving until this one is fully loaded.
+                if (!residency.isInitialized()) {
+                    residency.adopt(created);
+                    early = created;
+                }
+            }
+
+            @Override
+            public void onReady(Translator created) {
+                String warmUp = call.getString("warmUp", "none");
+                if (WARM_UP_BLOCKING.equals(warmUp)) {
+                    // Resolve after warm-up (or as soon as a translate cancels it)
+                    try {
+                        created.warmUp().get();
+                    } catch (Exception e) {
+                        Log.w(TAG, "Warm-up failed", e);
+                    }
+                } else if (WARM_UP_BACKGROUND.equals(warmUp)) {
+                    created.warmUp();
+                }
+
+                // Requests in flight finish on the previous translator, new ones use this
+                residency.adopt(created);
+                if (residency.getDrainingCount() == 0) {
+                    modelManager.pruneOldVersions();
+                }
+
                 JSObject result = buildModelInfo();
+                JSObject timings = new JSObject();
+                for (Map.Entry<String, Long> entry : created.getInitTimings().entrySet()) {
+                    timings.put(entry.getKey(), entry.getValue());
+                }
+                result.put("initTimings", timings);
+                result.put("variant", created.getVariant().name);
                 getActivity().runOnUiThread(() -> call.resolve(result));
-            } catch (Exception e) {
+            }
+
+            @Override
+            public void onError(Exception e) {
                 Log.e(TAG, "Init error", e);
+                // Its sessions are closed: don't keep serving (or reporting ready) from it
+                Translator failed = early;
+                if (failed != null) residency.discard(failed);
                 getActivity().runOnUiThread(() -> call.reject("Init failed: " + e.getMessage()));
             }
-        }).start();
+        });
+    }
+
+    private long memoryBudgetBytes(PluginCall call) {
+        return call.getInt("memoryBudgetMb", 0) * 1024L * 1024L;
+    }
+
+    private JSObject buildMetrics(Metrics metrics) {
+        JSObject stages = new JSObject();
+        for (Metrics.Stage stage : Metrics.Stage.values()) {
+            Metrics.Histogram histogram = metrics.histogram(stage);
+            JSObject entry = new JSObject();
+            entry.put("count", histogram.count());
+            entry.put("meanMs", histogram.meanMs());
+            entry.put("p50Ms", histogram.percentileMs(0.5));
+            entry.put("p90Ms", histogram.percentileMs(0.9));
+            entry.put("p99Ms", histogram.percentileMs(0.99));
+            entry.put("maxMs", histogram.maxMs());
+            stages.put(stage.key, entry);
+        }
+        JSObject counters = new JSObject();
+        for (Map.Entry<String, Long> entry : metrics.counters().entrySet()) {
+            counters.put(entry.getKey(), entry.getValue());
+        }
+        long beamSteps = metrics.count(Metrics.Counter.BEAM_STEPS);
+        JSObject result = new JSObject();
+        result.put("stages", stages);
+        result.put("counters", counters);
+        result.put("averageBeamWidth",
+            beamSteps > 0 ? (double) metrics.count(Metrics.Counter.BEAMS_EXPANDED) / beamSteps : 0);
+        return result;
+    }
+
+    private JSObject buildProfile(Translator.Profile profile) {
+        JSObject result = buildMetrics(profile.stages);
+        result.put("translations", profile.translations);
+        result.put("encoder", buildSessionProfile(profile.encoder));
+        result.put("decoder", buildSessionProfile(profile.decoder));
+        return result;
+    }
+
+    private JSObject buildSessionProfile(OrtProfile profile) {
+        JSArray operators = new JSArray();
+        for (OrtProfile.Entry entry : profile.getOperators()) {
+            JSObject op = buildProfileEntry(entry);
+            op.put("share", profile.getKernelMs() > 0 ? entry.totalMs() / profile.getKernelMs() : 0);
+            operators.put(op);
+        }
+        JSArray nodes = new JSArray();
+        for (OrtProfile.Entry entry : profile.getTopNodes(PROFILE_TOP_NODES)) {
+            JSObject node = buildProfileEntry(entry);
+            node.put("name", entry.name);
+            nodes.put(node);
+        }
+        JSObject result = new JSObject();
+        result.put("runs", profile.getRuns());
+        result.put("runMs", profile.getRunMs());
+        result.put("kernelMs", profile.getKernelMs());
+        result.put("operators", operators);
+        result.put("nodes", nodes);
+        return result;
+    }
+
+    private JSObject buildProfileEntry(OrtProfile.Entry entry) {
+        JSObject result = new JSObject();
+        result.put("op", entry.opType);
+        result.put("count", entry.count);
+        result.put("totalMs", entry.totalMs());
+        result.put("maxMs", entry.maxMs());
+        return result;
     }
 
     private JSObject buildModelInfo() {
@@ -204,7 +483,10 @@ public class Small100OnnxTranslatorPlugin extends Plugin {
     @Override
     protected void handleOnDestroy() {
         if (modelManager != null) modelManager.shutdown();
-        if (translator != null) translator.close();
+        if (residency != null) {
+            getContext().getApplicationContext().unregisterComponentCallbacks(residency);
+            residency.close();
+        }
         super.handleOnDestroy();
     }
 }
@@ -0,0 +1,170 @@
+package com.small100onnx;
+
+import android.util.Log;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Translator Handle - reference-counted owner of one loaded Translator
+ *
+ * The registry (ModelResidencyManager) holds one reference while the handle
+ * is current and each request holds one while it runs. Retiring the handle
+ * drops the registry's reference; the Translator is closed by whichever
+ * release brings the count to zero, so in-flight requests always finish
+ * on the instance they started on.
+ */
+public class TranslatorHandle {
+    private static final String TAG = "TranslatorHandle";
+
+    private final Translator translator;
+    private final AtomicInteger refs = new AtomicInteger(1);
+    private final AtomicInteger reloadCounter;
+    private final CloseListener onClosed;
+    private volatile boolean retired;
+
+    // Read lock: translations in flight; write lock: session release/reload
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private boolean sessionsReleased;
+
+    interface CloseListener {
+        void onClosed(TranslatorHandle handle);
+    }
+
+    TranslatorHandle(Translator translator, AtomicInteger reloadCounter, CloseListener onClosed) {
+        this.translator = translator;
+        this.reloadCounter = reloadCounter;
+        this.onClosed = onClosed;
+    }
+
+    /**
+     * Take a reference for one request
+     * @return false if the handle was retired or already closed
+     */
+    boolean retain() {
+        while (true) {
+            int current = refs.get();
+            if (current == 0 || retired) return false;
+            if (refs.compareAndSet(current, current + 1)) return true;
+        }
+    }
+
+    /**
+     * Drop a reference; the last one closes the Translator
+     */
+    void release() {
+        if (refs.decrementAndGet() == 0) {
+            translator.close();
+            Log.d(TAG, "Translator closed (" + translator.getModelsDir().getName() + ")");
+            if (onClosed != null) onClosed.onClosed(this);
+        }
+    }
+
+    /**
+     * Stop handing out references and drop the registry's one
+     */
+    void retire() {
+        if (retired) return;
+        retired = true;
+        release();
+    }
+
+    /**
+     * Translate, reloading released sessions first if needed
+     * Caller must hold a reference.
+     */
+    public String translate(String text, String targetLanguage) throws Exception {
+        acquireSessions();
+        try {
+            return translator.translate(text, targetLanguage);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Translate into several targets in one batched pass, reloading released sessions first if needed
+     * Caller must hold a reference.
+     */
+    public List<String> translateToMany(String text, List<String> targetLanguages) throws Exception {
+        acquireSessions();
+        try {
+            return translator.translateToMany(text, targetLanguages);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Close sessions and ORT arenas once in-flight translations finish
+     * Tokenizer and language map stay loaded.
+     */
+    void releaseSessions() {
+        lock.writeLock().lock();
+        try {
+            if (sessionsReleased) return;
+            translator.releaseSessions();
+            sessionsReleased = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    boolean isResident() {
+        lock.readLock().lock();
+        try {
+            return !sessionsReleased;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    Map<String, Long> getResidentBytes() {
+        lock.readLock().lock();
+        try {
+            return translator.getResidentBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Translator getTranslator() {
+        return translator;
+    }
+
+    public File getModelsDir() {
+        return translator.getModelsDir();
+    }
+
+    // Private helpers
+
+    /**
+     * Take the read lock with sessions loaded; the caller unlocks it
+     */
+    private void acquireSessions() throws Exception {
+        while (true) {
+            lock.readLock().lock();
+            if (!sessionsReleased) return;
+
+            // Released: reload under write lock, then retry with read lock
+            lock.readLock().unlock();
+            lock.writeLock().lock();
+            try {
+                if (sessionsReleased) reloadLocked();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void reloadLocked() throws Exception {
+        long start = System.currentTimeMillis();
+        translator.reloadSessions();
+        sessionsReleased = false;
+        reloadCounter.incrementAndGet();
+        Log.d(TAG, "Reloaded in " + (System.currentTimeMillis() - start) + "ms");
+    }
+}
@@ -0,0 +1,88 @@
+package com.small100onnx.benchmark;
+
+import com.small100onnx.BeamSearchDecoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BeamSearchDecoder driven by fixed logits over the real 128k vocabulary
+ * The model cost is excluded: each step only copies a precomputed array,
+ * as TranslationEngine.runDecoderStep returns a fresh copy too.
+ * Every fourth step has a close runner-up, so an adaptive beam has to
+ * widen again; the mean beams expanded per step is printed per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BeamSearchBenchmark {
+    private static final int VOCAB_SIZE = 128_004;
+    private static final int EOS = 2;
+    // Generated length before EOS wins
+    private static final int OUTPUT_LENGTH = 24;
+    // Adaptive mode: keep hypotheses within this log-prob of the best, prune far below
+    private static final float NARROW_GAP = 2f;
+    private static final float PRUNE_MARGIN = 5f;
+
+    @Param({"1", "5"})
+    public int numBeams;
+
+    @Param({"false", "true"})
+    public boolean shortlisted;
+
+    @Param({"fixed", "adaptive"})
+    public String beam;
+
+    private float[] baseLogits;
+    private BitSet shortlist;
+    private BeamSearchDecoder decoder;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        baseLogits = new float[VOCAB_SIZE];
+        for (int i = 0; i < VOCAB_SIZE; i++) baseLogits[i] = (float) random.nextGaussian() * 2f;
+
+        // A target-language sized shortlist holding every token the callback favours
+        shortlist = new BitSet(VOCAB_SIZE);
+        shortlist.set(EOS);
+        shortlist.set(1000, 1000 + 8_000);
+        decoder = new BeamSearchDecoder(EOS, numBeams, 1.0f, 1.2f, 3);
+        if ("adaptive".equals(beam)) {
+            decoder.setAdaptiveBeam(1, NARROW_GAP);
+            decoder.setPruneMargin(PRUNE_MARGIN);
+        }
+    }
+
+    @TearDown
+    public void reportBeamWidth() {
+        System.out.printf("%nbeam=%s numBeams=%d shortlisted=%b: average beam width %.2f%n",
+            beam, numBeams, shortlisted, decoder.getAverageBeamWidth());
+    }
+
+    @Benchmark
+    public int[] decode() throws Exception {
+        return decoder.decode(new int[]{EOS}, 256, this::logits, shortlisted ? shortlist : null);
+    }
+
+    // Peaked at a token derived from the prefix, EOS once long enough
+    private float[] logits(int[] ids) {
+        float[] logits = Arrays.copyOf(baseLogits, baseLogits.length);
+        int favoured = ids.length >= OUTPUT_LENGTH ? EOS : 1000 + (ids[ids.length - 1] * 31 + ids.length) % 8_000;
+        logits[favoured] = 30f;
+        if (ids.length % 4 == 0) logits[1000 + (favoured + 1) % 8_000] = 29.5f;
+        return logits;
+    }
+}
@@ -0,0 +1,57 @@
+package com.small100onnx.benchmark;
+
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shared inputs: the real vocabulary and a multilingual sentence corpus
+ */
+final class BenchmarkData {
+    private BenchmarkData() {
+    }
+
+    /**
+     * vocab.json given by -Dsmall100.vocab (set by build.gradle)
+     */
+    static Map<String, Integer> loadVocab() throws IOException {
+        String path = System.getProperty("small100.vocab");
+        if (path == null || !new File(path).exists()) {
+            throw new IllegalStateException("Vocabulary not found, set -Dsmall100.vocab=<vocab.json>");
+        }
+        JSONObject json = new JSONObject(new String(Files.readAllBytes(new File(path).toPath()), StandardCharsets.UTF_8));
+        Map<String, Integer> vocab = new HashMap<>();
+        Iterator<String> keys = json.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            vocab.put(key, json.getInt(key));
+        }
+        return vocab;
+    }
+
+    /**
+     * Mixed-length sentences in 14 languages and several scripts
+     */
+    static List<String> loadSentences() throws IOException {
+        List<String> sentences = new ArrayList<>();
+        try (InputStream in = BenchmarkData.class.getResourceAsStream("/sentences.txt");
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) sentences.add(line.trim());
+            }
+        }
+        return sentences;
+    }
+}
@@ -0,0 +1,86 @@
+package com.small100onnx.benchmark;
+
+import com.small100onnx.BeamSearchDecoder;
+import com.small100onnx.TranslationEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One sentence through encoder, beam search and decoder steps on tiny
+ * generated models with a full-size vocabulary
+ * topK 0 copies the 128k logits of every step into Java; topK > 0 runs the
+ * same decoder with a TopKTail appended and decodes from its top-k outputs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DecodeBenchmark {
+    private static final int VOCAB_SIZE = 128_004;
+    private static final int HIDDEN_SIZE = 32;
+    private static final int EOS = 2;
+    private static final int SOURCE_LENGTH = 24;
+
+    @Param({"0", "64"})
+    public int topK;
+
+    @Param({"1", "5"})
+    public int numBeams;
+
+    private File modelsDir;
+    private TranslationEngine engine;
+    private BeamSearchDecoder decoder;
+    private long[] inputIds;
+    private long[] attentionMask;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        modelsDir = Files.createTempDirectory("small100-tiny").toFile();
+        TinyModels.write(modelsDir, VOCAB_SIZE, HIDDEN_SIZE, EOS);
+        if (topK > 0) TopKTail.append(new File(modelsDir, "decoder_int8.onnx"), topK);
+        engine = new TranslationEngine();
+        engine.loadModels(modelsDir);
+        decoder = new BeamSearchDecoder(EOS, numBeams, 1.0f, 1.2f, 3);
+
+        inputIds = new long[SOURCE_LENGTH];
+        for (int i = 0; i < SOURCE_LENGTH; i++) inputIds[i] = 1000 + i;
+        inputIds[SOURCE_LENGTH - 1] = EOS;
+        attentionMask = new long[SOURCE_LENGTH];
+        Arrays.fill(attentionMask, 1L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.printf("%ntopK=%d numBeams=%d: %d top-k steps, %d full-logit fallbacks%n",
+            topK, numBeams, decoder.getTopKSteps(), decoder.getTopKFallbacks());
+        engine.close();
+        for (File file : modelsDir.listFiles()) file.delete();
+        modelsDir.delete();
+    }
+
+    @Benchmark
+    public int[] decode() throws Exception {
+        engine.runEncoder(inputIds, attentionMask);
+        try {
+            int[] start = {EOS};
+            return topK > 0
+                ? decoder.decodeTopK(start, 256, engine::runDecoderStepTopK, null)
+                : decoder.decode(start, 256, engine::runDecoderStep);
+        } finally {
+            engine.clearCache();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.small100onnx.benchmark;
+
+import com.small100onnx.ModelVariant;
+import com.small100onnx.TranslationEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TranslationEngine against tiny generated models with the real IO names
+ * Measures the Java-side tensor plumbing (flattening, copies, tensor
+ * creation) around ORT more than model math; run with -prof gc.
+ * crossKv compares decoders that project encoder states to cross-attention
+ * K/V on every step with ones fed precomputed K/V (see TinyModels.CrossKv).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EngineBenchmark {
+    private static final int VOCAB_SIZE = 128_004;
+    private static final int HIDDEN_SIZE = 32;
+
+    @Param({"16", "64"})
+    public int sourceLength;
+
+    @Param({"1", "24"})
+    public int prefixLength;
+
+    @Param({"NONE", "PER_STEP", "ENCODER", "INIT_GRAPH"})
+    public TinyModels.CrossKv crossKv;
+
+    private File modelsDir;
+    private TranslationEngine engine;
+    private long[] inputIds;
+    private long[] attentionMask;
+    private int[] decoderIds;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        modelsDir = Files.createTempDirectory("small100-tiny").toFile();
+        TinyModels.write(modelsDir, VOCAB_SIZE, HIDDEN_SIZE, -1, crossKv);
+        ModelVariant variant = crossKv == TinyModels.CrossKv.INIT_GRAPH
+            ? new ModelVariant("int8", "encoder_int8.onnx", "decoder_int8.onnx", TinyModels.CROSS_KV_INIT_FILE, 0)
+            : ModelVariant.DEFAULT;
+        engine = new TranslationEngine();
+        engine.loadModels(modelsDir, variant);
+
+        inputIds = new long[sourceLength];
+        for (int i = 0; i < sourceLength; i++) inputIds[i] = 1000 + i;
+        inputIds[sourceLength - 1] = 2;
+        attentionMask = new long[sourceLength];
+        Arrays.fill(attentionMask, 1L);
+        decoderIds = new int[prefixLength];
+        for (int i = 0; i < prefixLength; i++) decoderIds[i] = i == 0 ? 2 : 2000 + i;
+        engine.runEncoder(inputIds, attentionMask);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.close();
+        for (File file : modelsDir.listFiles()) file.delete();
+        modelsDir.delete();
+    }
+
+    @Benchmark
+    public float[][][] encoder() throws Exception {
+        return engine.runEncoder(inputIds, attentionMask);
+    }
+
+    @Benchmark
+    public float[] decoderStep() throws Exception {
+        return engine.runDecoderStep(decoderIds);
+    }
+}
@@ -0,0 +1,120 @@
+package com.small100onnx.benchmark;
+
+import com.small100onnx.BeamSearchDecoder;
+import com.small100onnx.ModelVariant;
+import com.small100onnx.TranslationEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One source sentence into several target languages on tiny generated
+ * models with a full-size vocabulary
+ * sequential encodes and beam-searches each target on its own (what N
+ * Translator.translate calls cost); batched runs one encoder pass over all
+ * target rows and decodes them together with decodeBatch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FanOutBenchmark {
+    private static final int VOCAB_SIZE = 128_004;
+    private static final int HIDDEN_SIZE = 32;
+    private static final int EOS = 2;
+    private static final int SOURCE_LENGTH = 24;
+    // Stand-ins for __xx__ language tokens
+    private static final int FIRST_LANGUAGE_TOKEN = 127_990;
+
+    @Param({"5", "10"})
+    public int targets;
+
+    @Param({"sequential", "batched"})
+    public String mode;
+
+    @Param({"NONE", "ENCODER"})
+    public TinyModels.CrossKv crossKv;
+
+    private File modelsDir;
+    private TranslationEngine engine;
+    private BeamSearchDecoder decoder;
+    private long[][] inputIds;
+    private long[][] attentionMask;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        modelsDir = Files.createTempDirectory("small100-tiny").toFile();
+        TinyModels.write(modelsDir, VOCAB_SIZE, HIDDEN_SIZE, EOS, crossKv);
+        engine = new TranslationEngine();
+        engine.loadModels(modelsDir, ModelVariant.DEFAULT);
+        decoder = new BeamSearchDecoder(EOS);
+        inputIds = sourceRows(targets);
+        attentionMask = new long[targets][SOURCE_LENGTH];
+        for (long[] row : attentionMask) Arrays.fill(row, 1L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.close();
+        for (File file : modelsDir.listFiles()) file.delete();
+        modelsDir.delete();
+    }
+
+    @Benchmark
+    public int[][] translate() throws Exception {
+        return mode.equals("batched")
+            ? batched(engine, decoder, inputIds, attentionMask)
+            : sequential(engine, decoder, inputIds, attentionMask);
+    }
+
+    /**
+     * The same sentence behind a different leading language token per row
+     */
+    static long[][] sourceRows(int targets) {
+        long[][] rows = new long[targets][SOURCE_LENGTH];
+        for (int t = 0; t < targets; t++) {
+            rows[t][0] = FIRST_LANGUAGE_TOKEN + t;
+            for (int i = 1; i < SOURCE_LENGTH - 1; i++) rows[t][i] = 1000 + i;
+            rows[t][SOURCE_LENGTH - 1] = EOS;
+        }
+        return rows;
+    }
+
+    static int[][] sequential(TranslationEngine engine, BeamSearchDecoder decoder, long[][] inputIds,
+                              long[][] attentionMask) throws Exception {
+        int[][] outputs = new int[inputIds.length][];
+        for (int t = 0; t < inputIds.length; t++) {
+            engine.runEncoder(inputIds[t], attentionMask[t]);
+            try {
+                outputs[t] = decoder.decode(new int[]{EOS}, 256, engine::runDecoderStep);
+            } finally {
+                engine.clearCache();
+            }
+        }
+        return outputs;
+    }
+
+    static int[][] batched(TranslationEngine engine, BeamSearchDecoder decoder, long[][] inputIds,
+                           long[][] attentionMask) throws Exception {
+        engine.runEncoderBatch(inputIds, attentionMask);
+        try {
+            int[][] starts = new int[inputIds.length][];
+            for (int t = 0; t < starts.length; t++) starts[t] = new int[]{EOS};
+            return decoder.decodeBatch(starts, 256, engine::runDecoderStepBatch, null);
+        } finally {
+            engine.clearCache();
+        }
+    }
+}
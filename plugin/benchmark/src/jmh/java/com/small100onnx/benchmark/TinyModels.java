@@ -0,0 +1,321 @@
+package com.small100onnx.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Tiny stand-in encoder/decoder with the same IO names as the real export
+ *
+ *   encoder: input_ids, attention_mask -> last_hidden_state = Gather(embed, input_ids)
+ *   decoder: input_ids, encoder_hidden_states, encoder_attention_mask
+ *            -> logits = (Gather(embed, input_ids) + ReduceMean(encoder_hidden_states)) x W
+ *
+ * With an EOS id the decoder also adds slope * (tgt_len - src_len) + offset,
+ * src_len being the unpadded source length, to the EOS logit, so beam search
+ * stops near the source length and a stand-in translation costs about as many
+ * steps as a real one.
+ *
+ * CrossKv selects how the decoder gets its cross-attention keys/values
+ * (K = hidden x Wk, V = hidden x Wv; context = mean(K) + mean(V)):
+ * projected from encoder_hidden_states on every step, or precomputed once
+ * as past_key_values.0.encoder.key/value by the encoder or an init graph.
+ *
+ * Written as raw ONNX protobuf so no Python/onnx tooling is needed.
+ * Weights are seeded, so every run benchmarks the same model.
+ */
+public final class TinyModels {
+    private static final int OPSET = 13;
+    static final int FLOAT = 1;
+    static final int INT64 = 7;
+    private static final int ATTR_INT = 2;
+    private static final int ATTR_INTS = 7;
+    private static final float EOS_SLOPE = 4f;
+    private static final float EOS_OFFSET = 8f;
+
+    public static final String CROSS_KV_INIT_FILE = "cross_kv_init.onnx";
+    private static final String CROSS_KEY = "past_key_values.0.encoder.key";
+    private static final String CROSS_VALUE = "past_key_values.0.encoder.value";
+    private static final String PRESENT_KEY = "present.0.encoder.key";
+    private static final String PRESENT_VALUE = "present.0.encoder.value";
+
+    public enum CrossKv {
+        // Decoder reads encoder_hidden_states directly (no projections)
+        NONE,
+        // Decoder projects encoder_hidden_states to K/V on every step
+        PER_STEP,
+        // Encoder also outputs present.0.encoder.key/value
+        ENCODER,
+        // cross_kv_init.onnx computes present.0.encoder.key/value from encoder_hidden_states
+        INIT_GRAPH
+    }
+
+    private TinyModels() {
+    }
+
+    /**
+     * Write encoder_int8.onnx and decoder_int8.onnx (names of ModelVariant.DEFAULT)
+     */
+    public static void write(File dir, int vocabSize, int hiddenSize) throws IOException {
+        write(dir, vocabSize, hiddenSize, -1);
+    }
+
+    /**
+     * Write the models; eosTokenId >= 0 makes decoder output lengths follow the source
+     */
+    public static void write(File dir, int vocabSize, int hiddenSize, int eosTokenId) throws IOException {
+        write(dir, vocabSize, hiddenSize, eosTokenId, CrossKv.NONE);
+    }
+
+    /**
+     * Write the models with the given cross-attention K/V wiring
+     * INIT_GRAPH also writes CROSS_KV_INIT_FILE (load with a ModelVariant naming it).
+     */
+    public static void write(File dir, int vocabSize, int hiddenSize, int eosTokenId, CrossKv crossKv)
+            throws IOException {
+        dir.mkdirs();
+        Random random = new Random(42);
+        Proto encoder = encoder(vocabSize, hiddenSize, random);
+        // Drawn for every mode so decoder weights do not depend on the wiring
+        float[] wk = weights(random, hiddenSize * hiddenSize);
+        float[] wv = weights(random, hiddenSize * hiddenSize);
+        if (crossKv == CrossKv.ENCODER) addPresentOutputs(encoder, hiddenSize, wk, wv);
+        writeFile(new File(dir, "encoder_int8.onnx"), model(encoder));
+        writeFile(new File(dir, "decoder_int8.onnx"), decoder(vocabSize, hiddenSize, eosTokenId, crossKv, wk, wv, random));
+        if (crossKv == CrossKv.INIT_GRAPH) {
+            writeFile(new File(dir, CROSS_KV_INIT_FILE), crossKvInit(hiddenSize, wk, wv));
+        }
+    }
+
+    private static Proto encoder(int vocab, int hidden, Random random) {
+        return new Proto()
+            .message(1, node("Gather", new String[]{"embed", "input_ids"}, "last_hidden_state",
+                intAttr("axis", 0)))
+            .string(2, "tiny_encoder")
+            .message(5, floatTensor("embed", random, vocab, hidden))
+            .message(11, valueInfo("input_ids", INT64, "batch", "src_len"))
+            .message(11, valueInfo("attention_mask", INT64, "batch", "src_len"))
+            .message(12, valueInfo("last_hidden_state", FLOAT, "batch", "src_len", hidden));
+    }
+
+    private static void addPresentOutputs(Proto encoder, int hidden, float[] wk, float[] wv) {
+        projections(encoder, "last_hidden_state", PRESENT_KEY, PRESENT_VALUE, hidden, wk, wv);
+        encoder.message(12, valueInfo(PRESENT_KEY, FLOAT, "batch", "src_len", hidden))
+            .message(12, valueInfo(PRESENT_VALUE, FLOAT, "batch", "src_len", hidden));
+    }
+
+    private static byte[] crossKvInit(int hidden, float[] wk, float[] wv) throws IOException {
+        Proto graph = new Proto().string(2, "tiny_cross_kv_init");
+        projections(graph, "encoder_hidden_states", PRESENT_KEY, PRESENT_VALUE, hidden, wk, wv);
+        graph.message(11, valueInfo("encoder_hidden_states", FLOAT, "batch", "src_len", hidden))
+            .message(12, valueInfo(PRESENT_KEY, FLOAT, "batch", "src_len", hidden))
+            .message(12, valueInfo(PRESENT_VALUE, FLOAT, "batch", "src_len", hidden));
+        return model(graph);
+    }
+
+    private static void projections(Proto graph, String source, String key, String value, int hidden,
+                                    float[] wk, float[] wv) {
+        graph.message(1, node("MatMul", new String[]{source, "w_k"}, key))
+            .message(1, node("MatMul", new String[]{source, "w_v"}, value))
+            .message(5, floatTensor("w_k", wk, hidden, hidden))
+            .message(5, floatTensor("w_v", wv, hidden, hidden));
+    }
+
+    private static byte[] decoder(int vocab, int hidden, int eos, CrossKv crossKv, float[] wk, float[] wv,
+                                  Random random) throws IOException {
+        Proto graph = new Proto()
+            .message(1, node("Gather", new String[]{"embed", "input_ids"}, "tokens", intAttr("axis", 0)));
+        if (crossKv == CrossKv.NONE) {
+            graph.message(1, node("ReduceMean", new String[]{"encoder_hidden_states"}, "context",
+                intsAttr("axes", 1), intAttr("keepdims", 1)));
+        } else {
+            String key = CROSS_KEY;
+            String value = CROSS_VALUE;
+            if (crossKv == CrossKv.PER_STEP) {
+                key = "key";
+                value = "value";
+                projections(graph, "encoder_hidden_states", key, value, hidden, wk, wv);
+            }
+            graph.message(1, node("ReduceMean", new String[]{key}, "context_k",
+                    intsAttr("axes", 1), intAttr("keepdims", 1)))
+                .message(1, node("ReduceMean", new String[]{value}, "context_v",
+                    intsAttr("axes", 1), intAttr("keepdims", 1)))
+                .message(1, node("Add", new String[]{"context_k", "context_v"}, "context"));
+        }
+        graph.message(1, node("Add", new String[]{"tokens", "context"}, "mixed"));
+        if (eos < 0) {
+            graph.message(1, node("MatMul", new String[]{"mixed", "proj"}, "logits"));
+        } else {
+            // eos_bias = onehot(eos) * (slope * (tgt_len - src_len) + offset), with
+            // src_len per row from the mask so right-padded batch rows stop on time
+            graph.message(1, node("MatMul", new String[]{"mixed", "proj"}, "raw_logits"))
+                .message(1, node("Shape", new String[]{"input_ids"}, "tgt_shape"))
+                .message(1, node("Gather", new String[]{"tgt_shape", "one"}, "tgt_len_i", intAttr("axis", 0)))
+                .message(1, node("Cast", new String[]{"tgt_len_i"}, "tgt_len", intAttr("to", FLOAT)))
+                .message(1, node("Cast", new String[]{"encoder_attention_mask"}, "mask_f", intAttr("to", FLOAT)))
+                .message(1, node("ReduceSum", new String[]{"mask_f", "src_axes"}, "src_len_2d",
+                    intAttr("keepdims", 1)))
+                .message(1, node("Reshape", new String[]{"src_len_2d", "bias_shape"}, "src_len"))
+                .message(1, node("Sub", new String[]{"tgt_len", "src_len"}, "excess"))
+                .message(1, node("Mul", new String[]{"excess", "eos_slope"}, "scaled"))
+                .message(1, node("Add", new String[]{"scaled", "eos_offset"}, "bias"))
+                .message(1, node("Mul", new String[]{"eos_onehot", "bias"}, "eos_bias"))
+                .message(1, node("Add", new String[]{"raw_logits", "eos_bias"}, "logits"))
+                .message(5, int64Scalar("one", 1))
+                .message(5, int64Vector("src_axes", 1))
+                .message(5, int64Vector("bias_shape", -1, 1, 1))
+                .message(5, floatScalar("eos_slope", EOS_SLOPE))
+                .message(5, floatScalar("eos_offset", EOS_OFFSET))
+                .message(5, oneHot("eos_onehot", vocab, eos));
+        }
+        graph.string(2, "tiny_decoder")
+            .message(5, floatTensor("embed", random, vocab, hidden))
+            .message(5, floatTensor("proj", random, hidden, vocab))
+            .message(11, valueInfo("input_ids", INT64, "batch", "tgt_len"));
+        if (crossKv == CrossKv.NONE || crossKv == CrossKv.PER_STEP) {
+            graph.message(11, valueInfo("encoder_hidden_states", FLOAT, "batch", "src_len", hidden));
+        } else {
+            graph.message(11, valueInfo(CROSS_KEY, FLOAT, "batch", "src_len", hidden))
+                .message(11, valueInfo(CROSS_VALUE, FLOAT, "batch", "src_len", hidden));
+        }
+        graph.message(11, valueInfo("encoder_attention_mask", INT64, "batch", "src_len"))
+            .message(12, valueInfo("logits", FLOAT, "batch", "tgt_len", vocab));
+        return model(graph);
+    }
+
+    private static byte[] model(Proto graph) throws IOException {
+        return new Proto()
+            .varint(1, 8)
+            .string(2, "small100-benchmark")
+            .message(7, graph)
+            .message(8, new Proto().string(1, "").varint(2, OPSET))
+            .bytes();
+    }
+
+    static Proto node(String op, String[] inputs, String output, Proto... attributes) {
+        return node(op, inputs, new String[]{output}, attributes);
+    }
+
+    static Proto node(String op, String[] inputs, String[] outputs, Proto... attributes) {
+        Proto node = new Proto();
+        for (String input : inputs) node.string(1, input);
+        for (String output : outputs) node.string(2, output);
+        node.string(3, op + "_" + outputs[0]).string(4, op);
+        for (Proto attribute : attributes) node.message(5, attribute);
+        return node;
+    }
+
+    static Proto intAttr(String name, long value) {
+        return new Proto().string(1, name).varint(3, value).varint(20, ATTR_INT);
+    }
+
+    private static Proto intsAttr(String name, long... values) {
+        Proto attribute = new Proto().string(1, name);
+        for (long value : values) attribute.varint(8, value);
+        return attribute.varint(20, ATTR_INTS);
+    }
+
+    private static Proto floatTensor(String name, Random random, int rows, int cols) {
+        return floatTensor(name, weights(random, rows * cols), rows, cols);
+    }
+
+    private static Proto floatTensor(String name, float[] values, int rows, int cols) {
+        ByteBuffer data = ByteBuffer.allocate(rows * cols * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (float value : values) data.putFloat(value);
+        return new Proto().varint(1, rows).varint(1, cols).varint(2, FLOAT).string(8, name).raw(9, data.array());
+    }
+
+    private static float[] weights(Random random, int count) {
+        float[] values = new float[count];
+        for (int i = 0; i < count; i++) values[i] = (float) random.nextGaussian() * 0.5f;
+        return values;
+    }
+
+    private static Proto oneHot(String name, int size, int index) {
+        ByteBuffer data = ByteBuffer.allocate(size * 4).order(ByteOrder.LITTLE_ENDIAN);
+        data.putFloat(index * 4, 1f);
+        return new Proto().varint(1, size).varint(2, FLOAT).string(8, name).raw(9, data.array());
+    }
+
+    private static Proto floatScalar(String name, float value) {
+        ByteBuffer data = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putFloat(value);
+        return new Proto().varint(2, FLOAT).string(8, name).raw(9, data.array());
+    }
+
+    private static Proto int64Scalar(String name, long value) {
+        ByteBuffer data = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(value);
+        return new Proto().varint(2, INT64).string(8, name).raw(9, data.array());
+    }
+
+    static Proto int64Vector(String name, long... values) {
+        ByteBuffer data = ByteBuffer.allocate(values.length * 8).order(ByteOrder.LITTLE_ENDIAN);
+        for (long value : values) data.putLong(value);
+        return new Proto().varint(1, values.length).varint(2, INT64).string(8, name).raw(9, data.array());
+    }
+
+    /**
+     * Tensor value info; dims are Integer (fixed) or String (symbolic)
+     */
+    static Proto valueInfo(String name, int elemType, Object... dims) {
+        Proto shape = new Proto();
+        for (Object dim : dims) {
+            shape.message(1, dim instanceof Integer
+                ? new Proto().varint(1, (Integer) dim)
+                : new Proto().string(2, (String) dim));
+        }
+        Proto tensorType = new Proto().varint(1, elemType).message(2, shape);
+        return new Proto().string(1, name).message(2, new Proto().message(1, tensorType));
+    }
+
+    private static void writeFile(File file, byte[] data) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+    }
+
+    /**
+     * Minimal protobuf writer (varint and length-delimited fields only)
+     */
+    static final class Proto {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        Proto varint(int field, long value) {
+            writeVarint((long) field << 3);
+            writeVarint(value);
+            return this;
+        }
+
+        Proto string(int field, String value) {
+            return raw(field, value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        Proto message(int field, Proto value) {
+            return raw(field, value.bytes());
+        }
+
+        Proto raw(int field, byte[] value) {
+            writeVarint(((long) field << 3) | 2);
+            writeVarint(value.length);
+            out.write(value, 0, value.length);
+            return this;
+        }
+
+        byte[] bytes() {
+            return out.toByteArray();
+        }
+
+        private void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.small100onnx.benchmark;
+
+import com.small100onnx.SimpleBPETokenizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SimpleBPETokenizer over the multilingual corpus (one op = whole corpus)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TokenizerBenchmark {
+    private SimpleBPETokenizer tokenizer;
+    private List<String> sentences;
+    private int[][] encoded;
+
+    @Setup
+    public void setUp() throws Exception {
+        tokenizer = new SimpleBPETokenizer(BenchmarkData.loadVocab());
+        sentences = BenchmarkData.loadSentences();
+        encoded = new int[sentences.size()][];
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = tokenizer.encode(sentences.get(i));
+        }
+    }
+
+    @Benchmark
+    public void encode(Blackhole bh) {
+        for (String sentence : sentences) {
+            bh.consume(tokenizer.encode(sentence));
+        }
+    }
+
+    @Benchmark
+    public void decode(Blackhole bh) {
+        for (int[] ids : encoded) {
+            bh.consume(tokenizer.decode(ids, true));
+        }
+    }
+}
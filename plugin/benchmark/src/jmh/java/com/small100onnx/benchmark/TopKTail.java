@@ -0,0 +1,119 @@
+package com.small100onnx.benchmark;
+
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+
+import com.small100onnx.TranslationEngine;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+
+/**
+ * Export helper: append a log-softmax + TopK tail to a decoder model
+ *
+ *   logits [batch, tgt_len, vocab]
+ *     -> Slice(last position) -> LogSoftmax -> TopK(k) -> topk_log_probs, topk_indices
+ *     -> GatherElements(last logits, topk_indices)      -> topk_logits
+ *
+ * TranslationEngine recognises the three outputs and hands only k entries
+ * per step to BeamSearchDecoder.decodeTopK; logits stays an output for the
+ * steps that need it.
+ *
+ * The tail is written as a second ModelProto.graph field after the
+ * original bytes. Protobuf merges repeated message fields, so the nodes,
+ * initializers and outputs are appended to the existing graph without
+ * parsing or rewriting a model of several hundred MB. Needs opset 11+.
+ *
+ *   gradle topKTail --args="/path/to/decoder_int8.onnx 64"
+ *   gradle topKTail --args="decoder_int8.onnx 64 decoder_int8_topk.onnx"
+ */
+public final class TopKTail {
+    public static final int DEFAULT_K = 64;
+    private static final String PREFIX = "topk_tail_";
+
+    private TopKTail() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 3) {
+            System.err.println("Usage: TopKTail <decoder.onnx> [k=" + DEFAULT_K + "] [out.onnx (default: in place)]");
+            System.exit(2);
+        }
+        File in = new File(args[0]);
+        int k = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_K;
+        File out = args.length > 2 ? new File(args[2]) : in;
+        append(in, out, k);
+        System.out.println("Wrote " + out + " with top-" + k + " outputs");
+    }
+
+    /**
+     * Append the tail to model in place
+     */
+    public static void append(File model, int k) throws IOException, OrtException {
+        append(model, model, k);
+    }
+
+    /**
+     * Write in plus the tail to out (may be the same file), checked by loading it with ORT
+     */
+    public static void append(File in, File out, int k) throws IOException, OrtException {
+        if (k < 1) throw new IllegalArgumentException("k must be positive");
+        Set<String> outputs = outputNames(in);
+        if (!outputs.contains("logits")) {
+            throw new IllegalArgumentException(in + " has no logits output");
+        }
+        if (outputs.contains(TranslationEngine.TOPK_INDICES)) {
+            throw new IllegalArgumentException(in + " already has top-k outputs");
+        }
+
+        if (!in.equals(out)) Files.copy(in.toPath(), out.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        try (OutputStream stream = new FileOutputStream(out, true)) {
+            stream.write(tail(k));
+        }
+
+        if (!outputNames(out).contains(TranslationEngine.TOPK_INDICES)) {
+            throw new IllegalStateException(out + " did not pick up the top-k tail");
+        }
+    }
+
+    // Private helpers
+
+    /**
+     * ModelProto fragment: field 7 (graph) holding only the tail
+     */
+    private static byte[] tail(int k) {
+        String last = PREFIX + "last_logits";
+        String logProbs = PREFIX + "log_probs";
+        TinyModels.Proto graph = new TinyModels.Proto()
+            .message(1, TinyModels.node("Slice",
+                new String[]{"logits", PREFIX + "starts", PREFIX + "ends", PREFIX + "axes"}, last))
+            .message(1, TinyModels.node("LogSoftmax", new String[]{last}, logProbs,
+                TinyModels.intAttr("axis", -1)))
+            .message(1, TinyModels.node("TopK", new String[]{logProbs, PREFIX + "k"},
+                new String[]{TranslationEngine.TOPK_LOG_PROBS, TranslationEngine.TOPK_INDICES},
+                TinyModels.intAttr("axis", -1)))
+            .message(1, TinyModels.node("GatherElements", new String[]{last, TranslationEngine.TOPK_INDICES},
+                TranslationEngine.TOPK_LOGITS, TinyModels.intAttr("axis", -1)))
+            .message(5, TinyModels.int64Vector(PREFIX + "starts", -1))
+            .message(5, TinyModels.int64Vector(PREFIX + "ends", Long.MAX_VALUE))
+            .message(5, TinyModels.int64Vector(PREFIX + "axes", 1))
+            .message(5, TinyModels.int64Vector(PREFIX + "k", k))
+            .message(12, TinyModels.valueInfo(TranslationEngine.TOPK_LOG_PROBS, TinyModels.FLOAT, "batch", 1, k))
+            .message(12, TinyModels.valueInfo(TranslationEngine.TOPK_LOGITS, TinyModels.FLOAT, "batch", 1, k))
+            .message(12, TinyModels.valueInfo(TranslationEngine.TOPK_INDICES, TinyModels.INT64, "batch", 1, k));
+        return new TinyModels.Proto().message(7, graph).bytes();
+    }
+
+    private static Set<String> outputNames(File model) throws OrtException {
+        OrtEnvironment env = OrtEnvironment.getEnvironment();
+        try (OrtSession session = env.createSession(model.getAbsolutePath(), new OrtSession.SessionOptions())) {
+            return session.getOutputNames();
+        }
+    }
+}
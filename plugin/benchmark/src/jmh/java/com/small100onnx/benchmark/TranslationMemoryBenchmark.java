@@ -0,0 +1,84 @@
+package com.small100onnx.benchmark;
+
+import com.small100onnx.TranslationMemory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TranslationMemory.find on a memory of templated sentences (what a hit
+ * costs instead of a full translation)
+ * exact repeats a stored source, swap changes its number and city, fuzzy
+ * its leading name, miss one lowercase word.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TranslationMemoryBenchmark {
+    private static final int QUERIES = 64;
+
+    @Param({"1000", "20000"})
+    public int entries;
+
+    @Param({"exact", "swap", "fuzzy", "miss"})
+    public String query;
+
+    private TranslationMemory memory;
+    private String[] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        memory = new TranslationMemory();
+        memory.setMaxEntries(entries);
+        for (int i = 0; i < entries; i++) {
+            memory.add(source("Anna", 25, i, "Berlin"), "fr", translation("Anna", 25, i, "Berlin"));
+        }
+        queries = new String[QUERIES];
+        for (int q = 0; q < QUERIES; q++) {
+            int i = q * (entries / QUERIES);
+            switch (query) {
+                case "exact": queries[q] = source("Anna", 25, i, "Berlin"); break;
+                case "swap": queries[q] = source("Anna", 35, i, "Paris"); break;
+                case "fuzzy": queries[q] = source("Peter", 25, i, "Berlin"); break;
+                default: queries[q] = source("Anna", 25, i, "Berlin").replace(" rooms ", " suites "); break;
+            }
+        }
+        if (memory.find(queries[0], "fr") == null ^ query.equals("miss")) {
+            throw new IllegalStateException("Unexpected result for " + query);
+        }
+    }
+
+    @Benchmark
+    public TranslationMemory.Match find() {
+        next = (next + 1) % QUERIES;
+        return memory.find(queries[next], "fr");
+    }
+
+    private static String source(String name, int rooms, int i, String city) {
+        return name + " booked " + rooms + " rooms near the " + word(i) + " station for the trip to " + city + ".";
+    }
+
+    private static String translation(String name, int rooms, int i, String city) {
+        return name + " a réservé " + rooms + " chambres près de la gare " + word(i) + " pour le voyage à " + city + ".";
+    }
+
+    // Distinct lowercase word per entry, so every entry has its own template
+    private static String word(int i) {
+        StringBuilder word = new StringBuilder();
+        do {
+            word.append((char) ('a' + i % 26));
+            i /= 26;
+        } while (i > 0);
+        return word.toString();
+    }
+}
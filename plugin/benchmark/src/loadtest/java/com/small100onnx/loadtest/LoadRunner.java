@@ -0,0 +1,171 @@
+package com.small100onnx.loadtest;
+
+import com.small100onnx.Metrics;
+import com.small100onnx.Translator;
+
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replays requests through one Translator at a given concurrency
+ *
+ * Closed loop (rate <= 0): each worker sends its next request as soon as
+ * the previous one returns. Open loop: requests arrive as a Poisson process
+ * at the given rate whether or not earlier ones finished, and latency is
+ * measured from the scheduled arrival, so queueing behind a saturated
+ * translator shows up in the percentiles instead of being hidden.
+ */
+final class LoadRunner {
+    private static final long ARRIVAL_SEED = 7;
+
+    /**
+     * One corpus entry
+     */
+    static final class Request {
+        final String text;
+        final String targetLanguage;
+
+        Request(String text, String targetLanguage) {
+            this.text = text;
+            this.targetLanguage = targetLanguage;
+        }
+    }
+
+    private final Translator translator;
+    private final List<Request> corpus;
+    private final Metrics metrics = Metrics.shared();
+
+    LoadRunner(Translator translator, List<Request> corpus) {
+        this.translator = translator;
+        this.corpus = corpus;
+    }
+
+    /**
+     * Run count requests (cycling through the corpus) and return the level's results
+     */
+    JSONObject run(int concurrency, double rate, int count) throws Exception {
+        long[] latencies = new long[count];
+        AtomicInteger errors = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+
+        metrics.reset();
+        ProcessStats stats = ProcessStats.start();
+        long start = System.nanoTime();
+        if (rate <= 0) {
+            AtomicInteger next = new AtomicInteger();
+            for (int w = 0; w < concurrency; w++) {
+                workers.execute(() -> {
+                    int i;
+                    while ((i = next.getAndIncrement()) < count) {
+                        latencies[i] = send(i, System.nanoTime(), errors);
+                    }
+                });
+            }
+        } else {
+            Random random = new Random(ARRIVAL_SEED);
+            long arrival = start;
+            for (int i = 0; i < count; i++) {
+                arrival += (long) (-Math.log(1 - random.nextDouble()) / rate * 1e9);
+                long delay = arrival - System.nanoTime();
+                if (delay > 0) TimeUnit.NANOSECONDS.sleep(delay);
+                final int index = i;
+                final long scheduled = arrival;
+                workers.execute(() -> latencies[index] = send(index, scheduled, errors));
+            }
+        }
+        workers.shutdown();
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        stats.stop();
+
+        return report(concurrency, rate, count, latencies, errors.get(), seconds, stats);
+    }
+
+    // Private helpers
+
+    /**
+     * Translate one request; latency in ns from the given arrival, or -1 on error
+     */
+    private long send(int index, long arrival, AtomicInteger errors) {
+        Request request = corpus.get(index % corpus.size());
+        try {
+            translator.translate(request.text, request.targetLanguage);
+            return System.nanoTime() - arrival;
+        } catch (Exception e) {
+            errors.incrementAndGet();
+            System.err.println("Request " + index + " failed: " + e);
+            return -1;
+        }
+    }
+
+    private JSONObject report(int concurrency, double rate, int count, long[] latencies, int errors,
+                              double seconds, ProcessStats stats) {
+        long[] ok = Arrays.stream(latencies).filter(l -> l >= 0).sorted().toArray();
+        long tokens = metrics.count(Metrics.Counter.TOKENS_GENERATED);
+        long beamSteps = metrics.count(Metrics.Counter.BEAM_STEPS);
+
+        JSONObject latency = new JSONObject();
+        latency.put("p50Ms", percentileMs(ok, 0.50));
+        latency.put("p95Ms", percentileMs(ok, 0.95));
+        latency.put("p99Ms", percentileMs(ok, 0.99));
+        latency.put("maxMs", ok.length > 0 ? ok[ok.length - 1] / 1e6 : 0);
+        latency.put("meanMs", ok.length > 0 ? Arrays.stream(ok).average().getAsDouble() / 1e6 : 0);
+
+        // Where the time went, from the same histograms getMetrics() exposes
+        JSONObject stages = new JSONObject();
+        for (Metrics.Stage stage : Metrics.Stage.values()) {
+            Metrics.Histogram histogram = metrics.histogram(stage);
+            if (histogram.count() == 0) continue;
+            JSONObject entry = new JSONObject();
+            entry.put("count", histogram.count());
+            entry.put("meanMs", histogram.meanMs());
+            entry.put("p99Ms", histogram.percentileMs(0.99));
+            stages.put(stage.key, entry);
+        }
+
+        JSONObject memory = new JSONObject();
+        memory.put("heapUsedBytes", stats.heapBytes);
+        memory.put("peakHeapBytes", stats.getPeakHeapBytes());
+        memory.put("rssBytes", stats.rssBytes);
+        memory.put("peakRssBytes", stats.getPeakRssBytes());
+
+        JSONObject gc = new JSONObject();
+        gc.put("timeMs", stats.gcTimeMs);
+        gc.put("count", stats.gcCount);
+        gc.put("timeFraction", seconds > 0 ? stats.gcTimeMs / 1000.0 / seconds : 0);
+
+        JSONObject result = new JSONObject();
+        result.put("concurrency", concurrency);
+        result.put("arrivalRate", rate);
+        result.put("requests", count);
+        result.put("errors", errors);
+        result.put("durationSeconds", seconds);
+        result.put("translationsPerSecond", ok.length / seconds);
+        result.put("tokensPerSecond", tokens / seconds);
+        result.put("tokensGenerated", tokens);
+        result.put("averageBeamWidth",
+            beamSteps > 0 ? (double) metrics.count(Metrics.Counter.BEAMS_EXPANDED) / beamSteps : 0);
+        result.put("topKFallbacks", metrics.count(Metrics.Counter.TOPK_FALLBACKS));
+        result.put("latency", latency);
+        result.put("stages", stages);
+        result.put("memory", memory);
+        result.put("gc", gc);
+        return result;
+    }
+
+    /**
+     * Nearest-rank percentile of sorted nanosecond samples, in ms
+     */
+    static double percentileMs(long[] sorted, double quantile) {
+        if (sorted.length == 0) return 0;
+        int rank = (int) Math.ceil(quantile * sorted.length);
+        return sorted[Math.max(rank, 1) - 1] / 1e6;
+    }
+}
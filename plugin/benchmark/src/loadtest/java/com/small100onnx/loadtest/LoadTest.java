@@ -0,0 +1,197 @@
+package com.small100onnx.loadtest;
+
+import com.small100onnx.Translator;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * End-to-end load test: replays a corpus through Translator at one or more
+ * concurrency levels and writes latency percentiles, throughput, memory and
+ * GC time per level to a JSON file (one level per point of the throughput
+ * curve).
+ *
+ *   gradle loadTest --args="--concurrency 1,2,4 --requests 40"
+ *   gradle loadTest --args="--models /path/to/models --rate 0.5 --out results.json"
+ *
+ * Without --models, stand-in models are generated from the real vocabulary.
+ */
+public final class LoadTest {
+    private static final String USAGE = String.join("\n",
+        "Options:",
+        "  --models DIR        real model directory (default: generated stand-in models)",
+        "  --vocab FILE        vocabulary for stand-in models (default: -Dsmall100.vocab)",
+        "  --topk N            stand-in decoder with a top-N output tail (default: 0, full logits)",
+        "  --corpus FILE       one sentence per line, optionally 'lang<TAB>sentence'",
+        "                      (default: bundled 14-language corpus)",
+        "  --targets LIST      target languages for lines without one (default: en,fr,de,es,vi,ja,zh)",
+        "  --concurrency LIST  concurrency levels, e.g. 1,2,4,8 (default: 1,2,4)",
+        "  --rate N            open-loop arrivals per second; 0 = closed loop (default: 0)",
+        "  --requests N        requests per level (default: 50)",
+        "  --warmup N          untimed requests before the first level (default: 5)",
+        "  --narrow-gap N      adaptive beam: keep hypotheses within N log-prob of the best (default: 0, off)",
+        "  --prune-margin N    prune hypotheses N normalised log-prob below the best (default: 0, off)",
+        "  --memory N          translation memory with near-match threshold N; repeats skip",
+        "                      inference (default: 0, off)",
+        "  --out FILE          results file (default: build/loadtest/results.json)");
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        if (options == null) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        String[] targets = options.getOrDefault("targets", "en,fr,de,es,vi,ja,zh").split(",");
+        List<LoadRunner.Request> corpus = loadCorpus(options.get("corpus"), targets);
+        int[] levels = parseInts(options.getOrDefault("concurrency", "1,2,4"));
+        double rate = Double.parseDouble(options.getOrDefault("rate", "0"));
+        int requests = Integer.parseInt(options.getOrDefault("requests", "50"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        float narrowGap = Float.parseFloat(options.getOrDefault("narrow-gap", "0"));
+        float pruneMargin = Float.parseFloat(options.getOrDefault("prune-margin", "0"));
+        float memoryThreshold = Float.parseFloat(options.getOrDefault("memory", "0"));
+        File out = new File(options.getOrDefault("out", "build/loadtest/results.json"));
+
+        boolean standIn = !options.containsKey("models");
+        int topK = Integer.parseInt(options.getOrDefault("topk", "0"));
+        File modelsDir = standIn ? generateStandIn(options.get("vocab"), topK) : new File(options.get("models"));
+
+        long loadStart = System.nanoTime();
+        Translator translator = Translator.create(modelsDir);
+        double loadMs = (System.nanoTime() - loadStart) / 1e6;
+        translator.getDecoder().setAdaptiveBeam(1, narrowGap);
+        translator.getDecoder().setPruneMargin(pruneMargin);
+        // Off by default: replayed sentences would be served from memory
+        translator.getMemory().setEnabled(memoryThreshold > 0);
+        if (memoryThreshold > 0) translator.getMemory().setThreshold(memoryThreshold);
+        System.out.printf("Loaded %s models in %.0fms, %d sentences%n",
+            standIn ? "stand-in" : modelsDir.getPath(), loadMs, corpus.size());
+
+        JSONArray results = new JSONArray();
+        try {
+            LoadRunner runner = new LoadRunner(translator, corpus);
+            if (warmup > 0) runner.run(1, 0, warmup);
+
+            System.out.println("concurrency  trans/s  tokens/s   p50 ms   p95 ms   p99 ms  beams  errors  gc ms  rss MB");
+            for (int concurrency : levels) {
+                JSONObject level = runner.run(concurrency, rate, requests);
+                results.put(level);
+                printRow(level);
+            }
+        } finally {
+            translator.close();
+        }
+
+        JSONObject config = new JSONObject();
+        config.put("models", standIn ? "stand-in" : modelsDir.getAbsolutePath());
+        config.put("topK", topK);
+        config.put("corpusSize", corpus.size());
+        config.put("arrivalRate", rate);
+        config.put("mode", rate > 0 ? "open" : "closed");
+        config.put("requestsPerLevel", requests);
+        config.put("warmupRequests", warmup);
+        config.put("narrowGap", narrowGap);
+        config.put("pruneMargin", pruneMargin);
+        config.put("memoryThreshold", memoryThreshold);
+        config.put("modelLoadMs", loadMs);
+        config.put("processors", Runtime.getRuntime().availableProcessors());
+        config.put("maxHeapBytes", Runtime.getRuntime().maxMemory());
+        config.put("javaVersion", System.getProperty("java.version"));
+
+        JSONObject report = new JSONObject();
+        report.put("timestamp", Instant.now().toString());
+        report.put("config", config);
+        report.put("levels", results);
+
+        File parent = out.getAbsoluteFile().getParentFile();
+        if (parent != null) parent.mkdirs();
+        Files.write(out.toPath(), report.toString(2).getBytes(StandardCharsets.UTF_8));
+        System.out.println("Results: " + out.getPath());
+    }
+
+    // Private helpers
+
+    /**
+     * --key value pairs; null on a malformed command line or --help
+     */
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || args[i].equals("--help") || i + 1 >= args.length) return null;
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+
+    private static int[] parseInts(String list) {
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) values[i] = Integer.parseInt(parts[i].trim());
+        return values;
+    }
+
+    private static File generateStandIn(String vocabPath, int topK) throws Exception {
+        if (vocabPath == null) vocabPath = System.getProperty("small100.vocab");
+        if (vocabPath == null || !new File(vocabPath).exists()) {
+            throw new IllegalStateException("Vocabulary not found, pass --vocab or -Dsmall100.vocab");
+        }
+        File dir = Files.createTempDirectory("small100-loadtest").toFile();
+        StandInModels.write(dir, new File(vocabPath), topK);
+        return dir;
+    }
+
+    /**
+     * Sentences with target languages; lines without one cycle through targets
+     */
+    private static List<LoadRunner.Request> loadCorpus(String path, String[] targets) throws IOException {
+        List<LoadRunner.Request> corpus = new ArrayList<>();
+        try (InputStream in = path != null ? new FileInputStream(path) : LoadTest.class.getResourceAsStream("/sentences.txt");
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) continue;
+                int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    corpus.add(new LoadRunner.Request(line.substring(tab + 1).trim(), line.substring(0, tab).trim()));
+                } else {
+                    corpus.add(new LoadRunner.Request(line.trim(), targets[corpus.size() % targets.length].trim()));
+                }
+            }
+        }
+        if (corpus.isEmpty()) throw new IllegalArgumentException("Corpus is empty");
+        return corpus;
+    }
+
+    private static void printRow(JSONObject level) {
+        JSONObject latency = level.getJSONObject("latency");
+        System.out.printf("%11d %8.2f %9.1f %8.0f %8.0f %8.0f %6.2f %7d %6d %7.0f%n",
+            level.getInt("concurrency"),
+            level.getDouble("translationsPerSecond"),
+            level.getDouble("tokensPerSecond"),
+            latency.getDouble("p50Ms"),
+            latency.getDouble("p95Ms"),
+            latency.getDouble("p99Ms"),
+            level.getDouble("averageBeamWidth"),
+            level.getInt("errors"),
+            level.getJSONObject("gc").getLong("timeMs"),
+            level.getJSONObject("memory").getLong("peakRssBytes") / 1e6);
+    }
+}
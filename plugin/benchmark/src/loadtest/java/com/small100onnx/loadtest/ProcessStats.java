@@ -0,0 +1,114 @@
+package com.small100onnx.loadtest;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Heap, RSS and GC readings for one load level
+ *
+ * Peaks are sampled on a daemon thread; GC time and count are deltas
+ * over all collectors between start() and stop().
+ */
+final class ProcessStats {
+    private static final long SAMPLE_INTERVAL_MS = 50;
+
+    private final long gcTimeStart;
+    private final long gcCountStart;
+    private volatile boolean running = true;
+    private volatile long peakHeapBytes;
+    private volatile long peakRssBytes;
+    private final Thread sampler;
+
+    long gcTimeMs;
+    long gcCount;
+    long heapBytes;
+    long rssBytes;
+
+    private ProcessStats() {
+        gcTimeStart = gcTime();
+        gcCountStart = gcCount();
+        sampler = new Thread(() -> {
+            while (running) {
+                sample();
+                try {
+                    Thread.sleep(SAMPLE_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "LoadTest-Sampler");
+        sampler.setDaemon(true);
+    }
+
+    static ProcessStats start() {
+        ProcessStats stats = new ProcessStats();
+        stats.sampler.start();
+        return stats;
+    }
+
+    void stop() throws InterruptedException {
+        running = false;
+        sampler.join();
+        sample();
+        gcTimeMs = gcTime() - gcTimeStart;
+        gcCount = gcCount() - gcCountStart;
+        heapBytes = usedHeap();
+        rssBytes = rss();
+    }
+
+    long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    long getPeakRssBytes() {
+        return peakRssBytes;
+    }
+
+    // Private helpers
+
+    private void sample() {
+        peakHeapBytes = Math.max(peakHeapBytes, usedHeap());
+        peakRssBytes = Math.max(peakRssBytes, rss());
+    }
+
+    private static long usedHeap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Resident set size from /proc (Linux), 0 elsewhere
+     * Includes ORT's native arenas, which the heap figure does not.
+     */
+    private static long rss() {
+        try (BufferedReader reader = new BufferedReader(new FileReader("/proc/self/status"))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Not Linux
+        }
+        return 0;
+    }
+
+    private static long gcTime() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(gc.getCollectionTime(), 0);
+        }
+        return total;
+    }
+
+    private static long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(gc.getCollectionCount(), 0);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,67 @@
+package com.small100onnx.loadtest;
+
+import com.small100onnx.benchmark.TinyModels;
+import com.small100onnx.benchmark.TopKTail;
+
+import ai.onnxruntime.OrtException;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+
+/**
+ * Model directory Translator can load without the real export
+ *
+ * The real vocabulary drives tokenization; TinyModels supplies encoder and
+ * decoder with the real IO names and a full-size vocabulary, and stops
+ * decoding near the source length. Latency is dominated by the Java side
+ * (tokenizer, beam search, tensor plumbing), not model math.
+ */
+final class StandInModels {
+    private static final int HIDDEN_SIZE = 32;
+    private static final String EOS_TOKEN = "</s>";
+
+    // M2M100/SMALL-100 language codes, appended after the vocabulary as in the real export
+    private static final String[] LANGUAGES = {
+        "af", "am", "ar", "ast", "az", "ba", "be", "bg", "bn", "br", "bs", "ca", "ceb", "cs", "cy",
+        "da", "de", "el", "en", "es", "et", "fa", "ff", "fi", "fr", "fy", "ga", "gd", "gl", "gu",
+        "ha", "he", "hi", "hr", "ht", "hu", "hy", "id", "ig", "ilo", "is", "it", "ja", "jv", "ka",
+        "kk", "km", "kn", "ko", "lb", "lg", "ln", "lo", "lt", "lv", "mg", "mk", "ml", "mn", "mr",
+        "ms", "my", "ne", "nl", "no", "ns", "oc", "or", "pa", "pl", "ps", "pt", "ro", "ru", "sd",
+        "si", "sk", "sl", "so", "sq", "sr", "ss", "su", "sv", "sw", "ta", "th", "tl", "tn", "tr",
+        "uk", "ur", "uz", "vi", "wo", "xh", "yi", "yo", "zh", "zu"
+    };
+
+    private StandInModels() {
+    }
+
+    /**
+     * Write vocab.json, added_tokens.json and the tiny models into dir
+     * topK > 0 appends a TopKTail to the decoder.
+     */
+    static void write(File dir, File vocabFile, int topK) throws IOException, OrtException {
+        dir.mkdirs();
+        JSONObject vocab = new JSONObject(new String(Files.readAllBytes(vocabFile.toPath()), StandardCharsets.UTF_8));
+        int vocabSize = 0;
+        Iterator<String> keys = vocab.keys();
+        while (keys.hasNext()) vocabSize = Math.max(vocabSize, vocab.getInt(keys.next()) + 1);
+        if (!vocab.has(EOS_TOKEN)) {
+            throw new IllegalArgumentException("Vocabulary has no " + EOS_TOKEN + " token: " + vocabFile);
+        }
+
+        JSONObject languages = new JSONObject();
+        for (int i = 0; i < LANGUAGES.length; i++) {
+            languages.put("__" + LANGUAGES[i] + "__", vocabSize + i);
+        }
+
+        Files.copy(vocabFile.toPath(), new File(dir, "vocab.json").toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.write(new File(dir, "added_tokens.json").toPath(), languages.toString().getBytes(StandardCharsets.UTF_8));
+        TinyModels.write(dir, vocabSize + LANGUAGES.length, HIDDEN_SIZE, vocab.getInt(EOS_TOKEN));
+        if (topK > 0) TopKTail.append(new File(dir, "decoder_int8.onnx"), topK);
+    }
+}
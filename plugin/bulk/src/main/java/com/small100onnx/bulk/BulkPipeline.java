@@ -0,0 +1,305 @@
+package com.small100onnx.bulk;
+
+import com.small100onnx.TranslatorPool;
+import com.small100onnx.bulk.RowFormat.Row;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Bulk Pipeline - streams input lines through
+ *
+ *   reader -> tokenizer threads -> length buckets -> translateBatch (one thread
+ *   per pool replica) -> ordered writer
+ *
+ * At most `window` rows are between reading and writing (a semaphore the
+ * reader takes and the writer returns), so memory stays flat whatever the
+ * corpus size. Rows are bucketed by token count and a bucket runs once it
+ * holds a full batch, which keeps padding low. The bucket holding the oldest
+ * row runs early when that row falls half a window behind the newest one or
+ * when no new rows arrive while a replica is idle (tokenizers behind, end of
+ * input), so the writer - which emits rows strictly in input order - never
+ * waits for long. Batches go to the pool's least-loaded replica.
+ */
+final class BulkPipeline {
+    interface CheckpointListener {
+        /**
+         * Output flushed with rows [0, rows) written
+         */
+        void onCheckpoint(long rows) throws IOException;
+    }
+
+    // Sentinel closing the tokenizer and batch queues
+    private static final Row END = new Row(-1, null);
+
+    private final TranslatorPool pool;
+    private final ExecutorService inference;
+    // Batches submitted and not yet translated
+    private final AtomicInteger running = new AtomicInteger();
+    private final RowFormat format;
+    private final int batchSize;
+    private final int bucketWidth;
+    private final int tokenizerThreads;
+    private final int maxLag;
+    private final Set<String> languages;
+    private final Semaphore window;
+    private final BlockingQueue<Row> parseQueue;
+    private final BlockingQueue<Row> batchQueue;
+    private final BlockingQueue<Row> writeQueue = new LinkedBlockingQueue<>();
+    private final AtomicLong tokenizersDone = new AtomicLong();
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+    final AtomicLong rowsWritten = new AtomicLong();
+    final AtomicLong rowsFailed = new AtomicLong();
+    final AtomicLong sourceTokens = new AtomicLong();
+    final AtomicLong batches = new AtomicLong();
+    final AtomicLong batchedRows = new AtomicLong();
+
+    BulkPipeline(TranslatorPool pool, RowFormat format, int batchSize, int bucketWidth, int window,
+                 int tokenizerThreads) {
+        this.pool = pool;
+        this.inference = Executors.newFixedThreadPool(pool.size(), task -> {
+            Thread thread = new Thread(task, "small100-bulk-inference");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.format = format;
+        this.batchSize = Math.max(1, batchSize);
+        this.bucketWidth = Math.max(1, bucketWidth);
+        this.tokenizerThreads = Math.max(1, tokenizerThreads);
+        this.languages = new HashSet<>(Arrays.asList(pool.getSupportedLanguages()));
+        this.window = new Semaphore(Math.max(this.batchSize, window));
+        this.maxLag = Math.max(this.batchSize, window) / 2;
+        this.parseQueue = new ArrayBlockingQueue<>(Math.max(this.batchSize, window));
+        this.batchQueue = new ArrayBlockingQueue<>(Math.max(this.batchSize, window));
+    }
+
+    /**
+     * Translate every line of in to out, in order
+     * @param firstRow Index of in's first line in the whole input (resume)
+     * @param checkpointRows Rows between checkpoints
+     */
+    void run(BufferedReader in, long firstRow, Writer out, int checkpointRows, CheckpointListener listener)
+            throws Exception {
+        List<Thread> threads = new ArrayList<>();
+        threads.add(start("small100-bulk-reader", () -> read(in, firstRow)));
+        for (int t = 0; t < tokenizerThreads; t++) {
+            threads.add(start("small100-bulk-tokenizer-" + t, this::tokenize));
+        }
+        threads.add(start("small100-bulk-batcher", this::infer));
+
+        try {
+            write(out, firstRow, checkpointRows, listener);
+        } finally {
+            for (Thread thread : threads) thread.interrupt();
+            for (Thread thread : threads) thread.join();
+            inference.shutdownNow();
+        }
+        Exception error = failure.get();
+        if (error != null) throw error;
+    }
+
+    double averageBatchSize() {
+        long count = batches.get();
+        return count > 0 ? (double) batchedRows.get() / count : 0;
+    }
+
+    // Stages
+
+    private void read(BufferedReader in, long firstRow) throws Exception {
+        try {
+            long index = firstRow;
+            String line;
+            while ((line = in.readLine()) != null) {
+                window.acquire();
+                parseQueue.put(new Row(index++, line));
+            }
+        } finally {
+            for (int t = 0; t < tokenizerThreads; t++) parseQueue.put(END);
+        }
+    }
+
+    private void tokenize() throws Exception {
+        try {
+            Row row;
+            while ((row = parseQueue.take()) != END) {
+                if (row.line.trim().isEmpty()) {
+                    row.translation = "";
+                } else {
+                    format.parse(row);
+                    if (!row.isSettled() && !languages.contains(row.targetLanguage)) {
+                        // Caught here, it would fail the whole batch and cost a row-by-row retry
+                        row.error = "Unknown target language: " + row.targetLanguage;
+                    }
+                    if (!row.isSettled()) row.tokens = pool.tokenize(row.text);
+                }
+                batchQueue.put(row);
+            }
+        } finally {
+            if (tokenizersDone.incrementAndGet() == tokenizerThreads) batchQueue.put(END);
+        }
+    }
+
+    private void infer() throws Exception {
+        Map<Integer, List<Row>> buckets = new HashMap<>();
+        // Bucketed row index -> bucket; the first entry is the row the writer waits on
+        TreeMap<Long, Integer> pending = new TreeMap<>();
+        try {
+            while (true) {
+                Row row = batchQueue.poll(pending.isEmpty() ? 1000 : 20, TimeUnit.MILLISECONDS);
+                if (row == END) break;
+                if (row == null) {
+                    // Starved with a replica idle: run the bucket the writer is waiting on
+                    if (!pending.isEmpty() && running.get() < pool.size()) {
+                        submit(buckets, pending, pending.firstEntry().getValue());
+                    }
+                    continue;
+                }
+                if (row.isSettled()) {
+                    if (row.error != null) fail(row);
+                    writeQueue.put(row);
+                    continue;
+                }
+                int key = row.tokens.length / bucketWidth;
+                List<Row> bucket = buckets.computeIfAbsent(key, k -> new ArrayList<>());
+                bucket.add(row);
+                pending.put(row.index, key);
+                if (bucket.size() >= batchSize) submit(buckets, pending, key);
+                // Rows of rare lengths would otherwise hold back the output (and checkpoints) for a whole window
+                while (!pending.isEmpty() && row.index - pending.firstKey() > maxLag) {
+                    submit(buckets, pending, pending.firstEntry().getValue());
+                }
+            }
+            while (!pending.isEmpty()) submit(buckets, pending, pending.firstEntry().getValue());
+            inference.shutdown();
+            inference.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } finally {
+            writeQueue.put(END);
+        }
+    }
+
+    private void write(Writer out, long firstRow, int checkpointRows, CheckpointListener listener) throws Exception {
+        // Finished rows waiting for an earlier one; bounded by the window
+        TreeMap<Long, Row> done = new TreeMap<>();
+        long next = firstRow;
+        long sinceCheckpoint = 0;
+        Row row;
+        while ((row = writeQueue.take()) != END) {
+            done.put(row.index, row);
+            for (Row ready = done.remove(next); ready != null; ready = done.remove(next)) {
+                out.write(ready.line.trim().isEmpty() ? ready.line : format.format(ready));
+                out.write('\n');
+                window.release();
+                rowsWritten.incrementAndGet();
+                next++;
+                if (++sinceCheckpoint >= checkpointRows) {
+                    out.flush();
+                    listener.onCheckpoint(next);
+                    sinceCheckpoint = 0;
+                }
+            }
+        }
+        out.flush();
+        // A failed stage leaves a gap; only what precedes it is checkpointed
+        if (failure.get() == null && done.isEmpty()) listener.onCheckpoint(next);
+    }
+
+    // Private helpers
+
+    private interface Stage {
+        void run() throws Exception;
+    }
+
+    private Thread start(String name, Stage stage) {
+        Thread thread = new Thread(() -> {
+            try {
+                stage.run();
+            } catch (InterruptedException e) {
+                // Stopped by run() after a failure elsewhere
+            } catch (Exception e) {
+                failure.compareAndSet(null, e);
+                // Unblock the writer
+                writeQueue.add(END);
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private void fail(Row row) {
+        rowsFailed.incrementAndGet();
+        System.err.println("Row " + (row.index + 1) + ": " + row.error);
+    }
+
+    /**
+     * Hand a bucket to the inference threads
+     */
+    private void submit(Map<Integer, List<Row>> buckets, TreeMap<Long, Integer> pending, int key) {
+        List<Row> bucket = buckets.remove(key);
+        for (Row row : bucket) pending.remove(row.index);
+        running.incrementAndGet();
+        inference.execute(() -> {
+            try {
+                translate(bucket);
+            } finally {
+                running.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * One translateBatch call; if it fails, rows are retried alone so one
+     * bad row (e.g. an unknown target language) doesn't fail its batch
+     */
+    private void translate(List<Row> bucket) {
+        List<String> texts = new ArrayList<>(bucket.size());
+        List<int[]> tokens = new ArrayList<>(bucket.size());
+        List<String> targets = new ArrayList<>(bucket.size());
+        for (Row row : bucket) {
+            texts.add(row.text);
+            tokens.add(row.tokens);
+            targets.add(row.targetLanguage);
+        }
+        try {
+            List<String> results = pool.translateBatch(texts, tokens, targets);
+            for (int i = 0; i < bucket.size(); i++) bucket.get(i).translation = results.get(i);
+        } catch (Exception batchError) {
+            for (Row row : bucket) {
+                try {
+                    row.translation = pool.translate(row.text, row.targetLanguage);
+                } catch (Exception e) {
+                    row.error = String.valueOf(e.getMessage());
+                    fail(row);
+                }
+            }
+        }
+        batches.incrementAndGet();
+        batchedRows.addAndGet(bucket.size());
+        for (Row row : bucket) {
+            sourceTokens.addAndGet(row.tokens.length);
+            // Token arrays are the bulk of a row; drop them before the row waits to be written
+            row.tokens = null;
+            writeQueue.add(row);
+        }
+    }
+}
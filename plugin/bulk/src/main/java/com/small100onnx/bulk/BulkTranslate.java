@@ -0,0 +1,212 @@
+package com.small100onnx.bulk;
+
+import com.small100onnx.Metrics;
+import com.small100onnx.TranslatorConfig;
+import com.small100onnx.TranslatorPool;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk translation of JSONL/TSV files, one output line per input line in
+ * input order (see BulkPipeline for how rows flow, RowFormat for the formats)
+ *
+ * Progress is checkpointed to OUTPUT.checkpoint; rerunning the same command
+ * after an interruption resumes from the last checkpoint, and the file is
+ * deleted once the input is done.
+ *
+ *   gradle run --args="--models /srv/models/small100 --input in.jsonl --output out.jsonl --target de"
+ */
+public final class BulkTranslate {
+    private static final String USAGE = String.join("\n",
+        "Options:",
+        "  --models DIR             model directory (required)",
+        "  --input FILE             input .jsonl or .tsv (required)",
+        "  --output FILE            output file (required)",
+        "  --format jsonl|tsv       input format (default: from the input extension)",
+        "  --target LANG            target language for rows without one",
+        "  --text-field NAME        jsonl text field (default: text)",
+        "  --target-field NAME      jsonl target language field (default: targetLanguage)",
+        "  --text-column N          tsv text column, 0-based (default: last)",
+        "  --batch N                rows per batched inference call (default: 16)",
+        "  --replicas N|auto        model replicas translating in parallel (default: auto)",
+        "  --threads N              intra-op threads per replica (default: cores / replicas)",
+        "  --bucket-width N         token-count range per length bucket (default: 8)",
+        "  --window N               rows in flight between reading and writing (default: 4096)",
+        "  --tokenizer-threads N    (default: available cores, at most 4)",
+        "  --checkpoint-rows N      rows between checkpoints (default: 1000)",
+        "  --progress-seconds N     progress line interval, 0 for none (default: 10)",
+        "  --config FILE            TranslatorConfig properties (beam, memory, batch rows)");
+
+    private BulkTranslate() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        if (options == null || !options.containsKey("models") || !options.containsKey("input")
+                || !options.containsKey("output")) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        File input = new File(options.get("input"));
+        File output = new File(options.get("output"));
+        String formatName = options.getOrDefault("format", input.getName().endsWith(".tsv") ? "tsv" : "jsonl");
+        RowFormat format = RowFormat.forName(formatName, options.get("target"),
+            options.getOrDefault("text-field", "text"),
+            options.getOrDefault("target-field", "targetLanguage"),
+            Integer.parseInt(options.getOrDefault("text-column", "-1")));
+        int batch = Integer.parseInt(options.getOrDefault("batch", "16"));
+        int tokenizerThreads = Integer.parseInt(options.getOrDefault("tokenizer-threads",
+            String.valueOf(Math.min(4, Runtime.getRuntime().availableProcessors()))));
+
+        Checkpoint checkpoint = Checkpoint.load(new File(output.getPath() + ".checkpoint"), input);
+        if (checkpoint.rows > 0) {
+            System.err.printf("Resuming at row %,d%n", checkpoint.rows);
+        }
+        // Drop output written after the last checkpoint (or a previous run's output)
+        try (RandomAccessFile file = new RandomAccessFile(output, "rw")) {
+            if (file.length() < checkpoint.outputBytes) {
+                throw new IOException(output + " is shorter than its checkpoint; delete "
+                    + checkpoint.file + " to start over");
+            }
+            file.setLength(checkpoint.outputBytes);
+        }
+
+        long loadStart = System.nanoTime();
+        TranslatorPool pool = loadPool(new File(options.get("models")), options.getOrDefault("replicas", "auto"),
+            options.get("threads"));
+        pool.apply(loadConfig(options.get("config")));
+        System.err.printf("Loaded %s replicas x intra-op threads of %s in %.0fms%n",
+            pool.getSplit(), options.get("models"), (System.nanoTime() - loadStart) / 1e6);
+
+        BulkPipeline pipeline = new BulkPipeline(pool, format, batch,
+            Integer.parseInt(options.getOrDefault("bucket-width", "8")),
+            Integer.parseInt(options.getOrDefault("window", "4096")),
+            tokenizerThreads);
+        Progress progress = new Progress(pipeline, checkpoint.rows);
+        int progressSeconds = Integer.parseInt(options.getOrDefault("progress-seconds", "10"));
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "small100-bulk-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (progressSeconds > 0) {
+            ticker.scheduleAtFixedRate(progress::print, progressSeconds, progressSeconds, TimeUnit.SECONDS);
+        }
+
+        try (BufferedReader in = new BufferedReader(
+                 new InputStreamReader(new FileInputStream(input), StandardCharsets.UTF_8), 1 << 16);
+             FileOutputStream fileOut = new FileOutputStream(output, true);
+             Writer out = new BufferedWriter(new OutputStreamWriter(fileOut, StandardCharsets.UTF_8), 1 << 16)) {
+            for (long skipped = 0; skipped < checkpoint.rows; skipped++) {
+                if (in.readLine() == null) {
+                    throw new IOException(input + " has fewer rows than its checkpoint; delete "
+                        + checkpoint.file + " to start over");
+                }
+            }
+            pipeline.run(in, checkpoint.rows, out, Integer.parseInt(options.getOrDefault("checkpoint-rows", "1000")),
+                rows -> {
+                    // On disk before the checkpoint says so
+                    fileOut.getChannel().force(false);
+                    checkpoint.save(input, rows, fileOut.getChannel().position());
+                });
+        } finally {
+            ticker.shutdownNow();
+            pool.close();
+        }
+        checkpoint.delete();
+        progress.printSummary();
+    }
+
+    /**
+     * Throughput since the last line and overall
+     */
+    private static final class Progress {
+        private final BulkPipeline pipeline;
+        private final long firstRow;
+        private final long start = System.nanoTime();
+        private long lastTime = start;
+        private long lastRows;
+        private long lastTokens;
+
+        Progress(BulkPipeline pipeline, long firstRow) {
+            this.pipeline = pipeline;
+            this.firstRow = firstRow;
+        }
+
+        synchronized void print() {
+            long now = System.nanoTime();
+            long rows = pipeline.rowsWritten.get();
+            long tokens = pipeline.sourceTokens.get();
+            double seconds = (now - lastTime) / 1e9;
+            System.err.printf("%,d rows  %.1f rows/s  %.0f source tokens/s  batch %.1f  memory hits %,d  failed %,d%n",
+                firstRow + rows, (rows - lastRows) / seconds, (tokens - lastTokens) / seconds,
+                pipeline.averageBatchSize(), Metrics.shared().count(Metrics.Counter.MEMORY_HITS),
+                pipeline.rowsFailed.get());
+            lastTime = now;
+            lastRows = rows;
+            lastTokens = tokens;
+        }
+
+        void printSummary() {
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long rows = pipeline.rowsWritten.get();
+            System.err.printf("Done: %,d rows in %.1fs (%.1f rows/s, %.0f source tokens/s), batch %.1f, "
+                    + "memory hits %,d, failed %,d%n",
+                rows, seconds, rows / seconds, pipeline.sourceTokens.get() / seconds, pipeline.averageBatchSize(),
+                Metrics.shared().count(Metrics.Counter.MEMORY_HITS), pipeline.rowsFailed.get());
+        }
+    }
+
+    // Private helpers
+
+    /**
+     * The split measured for this host unless replicas or threads are given
+     */
+    private static TranslatorPool loadPool(File modelsDir, String replicas, String threads) throws Exception {
+        int replicaCount = replicas.equals("auto") ? 0 : Integer.parseInt(replicas);
+        int threadCount = threads != null ? Integer.parseInt(threads) : 0;
+        if (replicaCount == 0 && threadCount == 0) return TranslatorPool.create(modelsDir);
+        return TranslatorPool.create(modelsDir,
+            TranslatorPool.Split.forCores(replicaCount, threadCount, Runtime.getRuntime().availableProcessors()));
+    }
+
+    private static TranslatorConfig loadConfig(String path) throws IOException {
+        Properties props = new Properties();
+        if (path != null) {
+            try (InputStream in = new FileInputStream(path)) {
+                props.load(in);
+            }
+        }
+        return TranslatorConfig.fromProperties(props);
+    }
+
+    /**
+     * --key value pairs; null on a malformed command line or --help
+     */
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || args[i].equals("--help") || i + 1 >= args.length) return null;
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+}
@@ -0,0 +1,67 @@
+package com.small100onnx.bulk;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Checkpoint - input rows done and output bytes written up to them
+ * Saved (write + atomic rename) only after the output is flushed, so on
+ * resume the output is cut back to outputBytes and the first rows input
+ * lines are skipped; anything written after the last save is redone.
+ */
+final class Checkpoint {
+    final File file;
+    long rows;
+    long outputBytes;
+
+    private Checkpoint(File file) {
+        this.file = file;
+    }
+
+    /**
+     * The saved checkpoint, or a fresh one at row 0
+     * @param input Checked against the saved input path, so a checkpoint
+     *              is never applied to another file
+     */
+    static Checkpoint load(File file, File input) throws IOException {
+        Checkpoint checkpoint = new Checkpoint(file);
+        if (!file.exists()) return checkpoint;
+
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            props.load(in);
+        }
+        String savedInput = props.getProperty("input");
+        if (!input.getAbsolutePath().equals(savedInput)) {
+            throw new IOException("Checkpoint " + file + " is for " + savedInput + "; delete it to start over");
+        }
+        checkpoint.rows = Long.parseLong(props.getProperty("rows", "0"));
+        checkpoint.outputBytes = Long.parseLong(props.getProperty("outputBytes", "0"));
+        return checkpoint;
+    }
+
+    void save(File input, long rows, long outputBytes) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("input", input.getAbsolutePath());
+        props.setProperty("rows", String.valueOf(rows));
+        props.setProperty("outputBytes", String.valueOf(outputBytes));
+        File tmp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            props.store(out, "small100 bulk translation");
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.rows = rows;
+        this.outputBytes = outputBytes;
+    }
+
+    void delete() {
+        if (!file.delete() && file.exists()) System.err.println("Could not delete " + file);
+    }
+}
@@ -0,0 +1,134 @@
+package com.small100onnx.bulk;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Row Format - how one input line carries its text and target language and
+ * how the translated line is written
+ *
+ *   jsonl: {"text": ..., "targetLanguage": ...} -> same object + "translatedText"
+ *          (or "error"); the target falls back to --target
+ *   tsv:   columns... -> columns... + translation; the text is the last
+ *          column (or --text-column), the target is --target
+ */
+abstract class RowFormat {
+    static final class Row {
+        final long index;
+        final String line;
+        Object parsed;
+        String text;
+        String targetLanguage;
+        int[] tokens;
+        String translation;
+        String error;
+
+        Row(long index, String line) {
+            this.index = index;
+            this.line = line;
+        }
+
+        /**
+         * Ready to write without inference: blank, unparsable or empty text
+         */
+        boolean isSettled() {
+            return translation != null || error != null;
+        }
+    }
+
+    final String defaultTarget;
+
+    RowFormat(String defaultTarget) {
+        this.defaultTarget = defaultTarget;
+    }
+
+    static RowFormat forName(String name, String defaultTarget, String textField, String targetField, int textColumn) {
+        switch (name) {
+            case "jsonl":
+                return new Jsonl(defaultTarget, textField, targetField);
+            case "tsv":
+                return new Tsv(defaultTarget, textColumn);
+            default:
+                throw new IllegalArgumentException("Unknown format: " + name + " (jsonl or tsv)");
+        }
+    }
+
+    /**
+     * Fill text and targetLanguage, or settle the row
+     */
+    abstract void parse(Row row);
+
+    /**
+     * Output line for a settled row
+     */
+    abstract String format(Row row);
+
+    static final class Jsonl extends RowFormat {
+        private final String textField;
+        private final String targetField;
+
+        Jsonl(String defaultTarget, String textField, String targetField) {
+            super(defaultTarget);
+            this.textField = textField;
+            this.targetField = targetField;
+        }
+
+        @Override
+        void parse(Row row) {
+            JSONObject object;
+            try {
+                object = new JSONObject(row.line);
+            } catch (JSONException e) {
+                row.error = "Invalid JSON: " + e.getMessage();
+                return;
+            }
+            row.parsed = object;
+            row.text = object.optString(textField, null);
+            row.targetLanguage = object.optString(targetField, defaultTarget);
+            if (row.text == null) {
+                row.error = "No \"" + textField + "\" field";
+            } else if (row.targetLanguage == null) {
+                row.error = "No \"" + targetField + "\" field and no --target";
+            } else if (row.text.trim().isEmpty()) {
+                row.translation = "";
+            }
+        }
+
+        @Override
+        String format(Row row) {
+            JSONObject object = row.parsed != null ? (JSONObject) row.parsed : new JSONObject().put("line", row.line);
+            if (row.error != null) return object.put("error", row.error).toString();
+            if (!object.has(targetField)) object.put(targetField, row.targetLanguage);
+            return object.put("translatedText", row.translation).toString();
+        }
+    }
+
+    static final class Tsv extends RowFormat {
+        private final int textColumn;
+
+        Tsv(String defaultTarget, int textColumn) {
+            super(defaultTarget);
+            this.textColumn = textColumn;
+        }
+
+        @Override
+        void parse(Row row) {
+            String[] columns = row.line.split("\t", -1);
+            int column = textColumn >= 0 ? textColumn : columns.length - 1;
+            if (column >= columns.length) {
+                row.error = "No column " + column;
+                return;
+            }
+            row.text = columns[column];
+            row.targetLanguage = defaultTarget;
+            if (row.text.trim().isEmpty()) row.translation = "";
+        }
+
+        @Override
+        String format(Row row) {
+            // Errors leave the column empty; they are counted and logged
+            String translation = row.error != null ? "" : row.translation;
+            return row.line + '\t' + translation.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+        }
+    }
+}
@@ -0,0 +1,808 @@
+package com.small100onnx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Beam Search Decoder for sequence generation
+ * Supports repetition penalty, n-gram blocking, an optional
+ * target-language vocabulary shortlist and an adaptive beam width
+ *
+ * Beams share their prefixes: tokens live once in an arena of
+ * (token, parent) entries and a beam is just its last entry. Candidates
+ * are score-only records, so a step allocates per beam rather than per
+ * beam and token; full sequences are built only for the callback and the
+ * final result.
+ *
+ * Adaptive mode keeps only the open hypotheses whose log-probability is
+ * within narrowGap of the step's best candidate, finished or not (at least
+ * minBeams, at most numBeams):
+ * a confident model runs close to greedy, an uncertain one gets the full
+ * beam back. Pruning drops open hypotheses whose length-normalised score is
+ * more than pruneMargin below the best hypothesis so far, finished or not.
+ *
+ * decodeTopK works on the model's own top-k (TopKCallback) instead of full
+ * logits. Repetition penalty, n-gram blocking and the shortlist are applied
+ * to those k entries as corrections; a step falls back to the full logits
+ * when a corrected candidate could be outranked by a token outside the k.
+ *
+ * decodeBatch runs independent searches (one per source row, e.g. one per
+ * target language) in lockstep: each step gathers the open beams of every
+ * row into a single BatchCallback call, so the model runs once per step
+ * instead of once per beam and row.
+ */
+public class BeamSearchDecoder {
+    
+    public interface DecoderCallback {
+        /**
+         * Get logits for the next token given current sequence
+         * The ids array is reused between calls; copy it to keep it.
+         * @param ids Current token sequence
+         * @return Logits array for vocabulary
+         */
+        float[] getNextLogits(int[] ids) throws Exception;
+    }
+    
+    /**
+     * The k most likely next tokens of one step, full logits on demand
+     */
+    public interface TopK {
+        /** Token ids, most likely first */
+        int[] ids();
+        
+        /** Raw logits of ids */
+        float[] logits();
+        
+        /** Log-sum-exp of the full-vocabulary logits */
+        float logSumExp();
+        
+        /** Full-vocabulary logits, for steps the top k cannot decide */
+        float[] fullLogits() throws Exception;
+    }
+    
+    public interface TopKCallback {
+        /**
+         * Get the top-k next tokens given current sequence
+         * The ids array is reused between calls; copy it to keep it.
+         */
+        TopK getNextTopK(int[] ids) throws Exception;
+    }
+    
+    public interface BatchCallback {
+        /**
+         * Get logits for the next token of several sequences of equal length
+         * @param ids Current token sequences
+         * @param rows Source row (index into decodeBatch's start sequences) of each sequence
+         * @return Logits array per sequence
+         */
+        float[][] getNextLogits(int[][] ids, int[] rows) throws Exception;
+    }
+    
+    private final int eosTokenId;
+    private final int numBeams;
+    private final float lengthPenalty;
+    private final float repetitionPenalty;
+    private final int noRepeatNgramSize;
+    
+    // Minimum (lower-bound) probability mass the shortlist must cover, else full vocab is used
+    public static final float DEFAULT_SHORTLIST_MIN_MASS = 0.95f;
+    // Top-k steps fall back to full logits if penalised tokens outside the k may hold more
+    // mass; bounds the score error per step, well inside the shortlist's -log(0.95) slack
+    private static final double TOPK_UNCORRECTED_MASS = 1e-2;
+    private float shortlistMinMass = DEFAULT_SHORTLIST_MIN_MASS;
+    private final AtomicLong shortlistSteps = new AtomicLong();
+    private final AtomicLong shortlistFallbacks = new AtomicLong();
+    private final AtomicLong topKSteps = new AtomicLong();
+    private final AtomicLong topKFallbacks = new AtomicLong();
+    
+    // Adaptive width and pruning; 0 disables. Volatile: TranslatorConfig may
+    // change them during a decode, which reads each once per step
+    private volatile int minBeams = 1;
+    private volatile float narrowGap;
+    private volatile float pruneMargin;
+    private final AtomicLong beamSteps = new AtomicLong();
+    private final AtomicLong beamsExpanded = new AtomicLong();
+    private Metrics metrics;
+    
+    public BeamSearchDecoder(int eosTokenId, int numBeams, float lengthPenalty, 
+                             float repetitionPenalty, int noRepeatNgramSize) {
+        this.eosTokenId = eosTokenId;
+        this.numBeams = numBeams;
+        this.lengthPenalty = lengthPenalty;
+        this.repetitionPenalty = repetitionPenalty;
+        this.noRepeatNgramSize = noRepeatNgramSize;
+    }
+    
+    public BeamSearchDecoder(int eosTokenId) {
+        this(eosTokenId, 5, 1.0f, 1.2f, 3);
+    }
+    
+    /**
+     * Record per-step decoder/logits/beam timings and counters (null to disable)
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+    
+    /**
+     * Run beam search decoding
+     * @param startTokenIds Initial token sequence
+     * @param maxNewTokens Maximum tokens to generate
+     * @param callback Callback to get next token logits
+     * @return Best token sequence
+     */
+    public int[] decode(int[] startTokenIds, int maxNewTokens, DecoderCallback callback) throws Exception {
+        return decode(startTokenIds, maxNewTokens, callback, null);
+    }
+    
+    /**
+     * Run beam search decoding restricted to a vocabulary shortlist
+     * @param shortlist Allowed token ids (must include EOS), or null for full vocab
+     */
+    public int[] decode(int[] startTokenIds, int maxNewTokens, DecoderCallback callback,
+                        BitSet shortlist) throws Exception {
+        return decode(startTokenIds, maxNewTokens, callback, null, shortlist);
+    }
+    
+    /**
+     * Run beam search decoding on the model's top-k outputs
+     * @param shortlist Allowed token ids (must include EOS), or null for full vocab
+     */
+    public int[] decodeTopK(int[] startTokenIds, int maxNewTokens, TopKCallback callback,
+                            BitSet shortlist) throws Exception {
+        return decode(startTokenIds, maxNewTokens, null, callback, shortlist);
+    }
+    
+    private int[] decode(int[] startTokenIds, int maxNewTokens, DecoderCallback logitsCallback,
+                         TopKCallback topKCallback, BitSet shortlist) throws Exception {
+        Search search = new Search(startTokenIds, shortlist);
+        for (int step = 0; step < maxNewTokens; step++) {
+            List<Beam> activeBeams = search.begin();
+            if (activeBeams.isEmpty()) break;
+            
+            // Active beams all grew by one token per step, so one buffer serves the step
+            int[] ids = new int[activeBeams.get(0).length];
+            for (Beam beam : activeBeams) {
+                search.arena.materialize(beam.node, ids);
+                long start = metrics != null ? System.nanoTime() : 0;
+                if (topKCallback != null) {
+                    TopK topK = topKCallback.getNextTopK(ids);
+                    if (metrics != null) start = metrics.recordSince(Metrics.Stage.DECODER_STEP, start);
+                    if (expandBeamTopK(beam, ids, topK, shortlist, search.candidates)) {
+                        topKSteps.incrementAndGet();
+                    } else {
+                        topKFallbacks.incrementAndGet();
+                        if (metrics != null) metrics.increment(Metrics.Counter.TOPK_FALLBACKS, 1);
+                        expandBeam(beam, ids, topK.fullLogits(), shortlist, search.scratch, search.candidates);
+                    }
+                } else {
+                    float[] logits = logitsCallback.getNextLogits(ids);
+                    if (metrics != null) start = metrics.recordSince(Metrics.Stage.DECODER_STEP, start);
+                    expandBeam(beam, ids, logits, shortlist, search.scratch, search.candidates);
+                }
+                if (metrics != null) metrics.recordSince(Metrics.Stage.LOGITS, start);
+            }
+            
+            search.end(activeBeams.size());
+        }
+        return search.best();
+    }
+    
+    /**
+     * Run one beam search per source row in lockstep, one callback per step
+     * All start sequences must have the same length; searches that finish
+     * early drop out of the batch.
+     * @param shortlists Allowed token ids per row (entries may be null), or null for full vocab
+     * @return Best token sequence per row
+     */
+    public int[][] decodeBatch(int[][] startTokenIds, int maxNewTokens, BatchCallback callback,
+                               BitSet[] shortlists) throws Exception {
+        Search[] searches = new Search[startTokenIds.length];
+        for (int r = 0; r < searches.length; r++) {
+            if (startTokenIds[r].length != startTokenIds[0].length) {
+                throw new IllegalArgumentException("Start sequences differ in length");
+            }
+            searches[r] = new Search(startTokenIds[r], shortlists != null ? shortlists[r] : null);
+        }
+        
+        List<List<Beam>> active = new ArrayList<>(searches.length);
+        for (int step = 0; step < maxNewTokens; step++) {
+            active.clear();
+            int count = 0;
+            for (Search search : searches) {
+                List<Beam> beams = search.begin();
+                active.add(beams);
+                count += beams.size();
+            }
+            if (count == 0) break;
+            
+            // Every open beam of every row has the same length
+            int[][] ids = new int[count][];
+            int[] rows = new int[count];
+            int i = 0;
+            for (int r = 0; r < searches.length; r++) {
+                for (Beam beam : active.get(r)) {
+                    ids[i] = new int[beam.length];
+                    searches[r].arena.materialize(beam.node, ids[i]);
+                    rows[i++] = r;
+                }
+            }
+            
+            long start = metrics != null ? System.nanoTime() : 0;
+            float[][] logits = callback.getNextLogits(ids, rows);
+            if (metrics != null) start = metrics.recordSince(Metrics.Stage.DECODER_STEP, start);
+            i = 0;
+            for (int r = 0; r < searches.length; r++) {
+                for (Beam beam : active.get(r)) {
+                    expandBeam(beam, ids[i], logits[i], searches[r].shortlist, searches[r].scratch,
+                               searches[r].candidates);
+                    i++;
+                }
+            }
+            if (metrics != null) metrics.recordSince(Metrics.Stage.LOGITS, start);
+            
+            for (int r = 0; r < searches.length; r++) {
+                if (!active.get(r).isEmpty()) searches[r].end(active.get(r).size());
+            }
+        }
+        
+        int[][] best = new int[searches.length][];
+        for (int r = 0; r < searches.length; r++) best[r] = searches[r].best();
+        return best;
+    }
+    
+    private List<Beam> filterActiveBeams(List<Beam> beams) {
+        List<Beam> active = new ArrayList<>();
+        for (Beam b : beams) {
+            if (!b.finished) active.add(b);
+        }
+        return active;
+    }
+    
+    private boolean shouldEarlyStop(List<Beam> finishedBeams, List<Beam> activeBeams) {
+        if (finishedBeams.size() < numBeams) return false;
+        
+        float bestFinished = normalizedScore(finishedBeams.get(0).score, finishedBeams.get(0).length);
+        float bestActive = normalizedScore(activeBeams.get(0).score, activeBeams.get(0).length);
+        return bestFinished > bestActive;
+    }
+    
+    public void setShortlistMinMass(float minMass) {
+        this.shortlistMinMass = minMass;
+    }
+    
+    /** Steps expanded over a shortlist */
+    public long getShortlistSteps() {
+        return shortlistSteps.get();
+    }
+    
+    /** Steps where the shortlist covered too little mass and full vocab was used */
+    public long getShortlistFallbacks() {
+        return shortlistFallbacks.get();
+    }
+    
+    /**
+     * Narrow the beam to the hypotheses within narrowGap (log-prob) of the
+     * best, keeping at least minBeams; narrowGap 0 keeps numBeams every step
+     */
+    public void setAdaptiveBeam(int minBeams, float narrowGap) {
+        this.minBeams = Math.max(1, Math.min(minBeams, numBeams));
+        this.narrowGap = narrowGap;
+    }
+    
+    /**
+     * Drop open hypotheses more than margin (normalised log-prob) below the
+     * best open or finished one; 0 disables
+     */
+    public void setPruneMargin(float margin) {
+        this.pruneMargin = margin;
+    }
+    
+    /** Steps decided from the model's top-k alone */
+    public long getTopKSteps() {
+        return topKSteps.get();
+    }
+    
+    /** Top-k steps that needed the full logits */
+    public long getTopKFallbacks() {
+        return topKFallbacks.get();
+    }
+    
+    /** Mean number of beams expanded per step since creation or the last reset */
+    public double getAverageBeamWidth() {
+        long steps = beamSteps.get();
+        return steps > 0 ? (double) beamsExpanded.get() / steps : 0;
+    }
+    
+    public void resetBeamStats() {
+        beamSteps.set(0);
+        beamsExpanded.set(0);
+    }
+    
+    private void expandBeam(Beam beam, int[] ids, float[] logits, BitSet shortlist, Scratch scratch,
+                            List<Candidate> out) {
+        if (shortlist != null) {
+            if (expandBeamShortlisted(beam, ids, logits, shortlist, scratch, out)) {
+                shortlistSteps.incrementAndGet();
+                return;
+            }
+            shortlistFallbacks.incrementAndGet();
+            if (metrics != null) metrics.increment(Metrics.Counter.SHORTLIST_FALLBACKS, 1);
+        }
+        
+        int vocabSize = logits.length;
+        
+        // Apply repetition penalty
+        applyRepetitionPenalty(logits, ids);
+        
+        // Log probabilities are logits - logSumExp; no normalised copy is kept
+        float max = Float.NEGATIVE_INFINITY;
+        for (float v : logits) if (v > max) max = v;
+        float sumExp = 0;
+        for (float v : logits) sumExp += (float) Math.exp(v - max);
+        float logSumExp = max + (float) Math.log(sumExp);
+        
+        // Whether to suppress EOS
+        boolean suppressEOS = ids.length <= 1;
+        
+        // Bounded top-k; n-gram check only for tokens that would enter it
+        int topK = numBeams * 2;
+        int[] topIds = scratch.topIds;
+        float[] topScores = scratch.topScores;
+        int count = 0;
+        for (int i = 0; i < vocabSize; i++) {
+            float logProb = logits[i] - logSumExp;
+            if (count == topK && logProb <= topScores[count - 1]) continue;
+            if (suppressEOS && i == eosTokenId) continue;
+            if (wouldRepeatNgram(ids, i)) continue;
+            count = insertTop(topIds, topScores, count, i, logProb);
+        }
+        
+        addCandidates(beam, topIds, topScores, count, out);
+    }
+    
+    /**
+     * Penalty, normalisation and top-k over shortlisted ids only
+     * Leaves logits untouched and returns false if the shortlist may hold
+     * less than shortlistMinMass of the probability mass.
+     */
+    private boolean expandBeamShortlisted(Beam beam, int[] beamIds, float[] logits, BitSet shortlist,
+                                          Scratch scratch, List<Candidate> out) {
+        int vocabSize = logits.length;
+        
+        // Largest logit outside the shortlist; a compare per id, no exp
+        float maxOutside = Float.NEGATIVE_INFINITY;
+        int outside = 0;
+        for (int i = shortlist.nextClearBit(0); i < vocabSize; i = shortlist.nextClearBit(i + 1)) {
+            if (logits[i] > maxOutside) maxOutside = logits[i];
+            outside++;
+        }
+        
+        BitSet seen = scratch.seen;
+        for (int id : beamIds) if (id >= 0) seen.set(id);
+        
+        // Penalised shortlist logits
+        int[] ids = scratch.ids(shortlist.cardinality());
+        float[] values = scratch.values;
+        int n = 0;
+        float max = Float.NEGATIVE_INFINITY;
+        for (int i = shortlist.nextSetBit(0); i >= 0 && i < vocabSize; i = shortlist.nextSetBit(i + 1)) {
+            float v = logits[i];
+            if (seen.get(i)) v = v > 0 ? v / repetitionPenalty : v * repetitionPenalty;
+            ids[n] = i;
+            values[n++] = v;
+            if (v > max) max = v;
+        }
+        seen.clear();
+        if (n == 0) return false;
+        
+        double sumExp = 0;
+        for (int j = 0; j < n; j++) sumExp += Math.exp(values[j] - max);
+        // Cheap bound on the mass outside: every outside id at maxOutside. Only
+        // when that is too loose, sum it exactly (the penalty only lowers it,
+        // so the unpenalised sum still bounds it)
+        double outsideExp = outside * Math.exp(maxOutside - max);
+        if (sumExp / (sumExp + outsideExp) < shortlistMinMass) {
+            outsideExp = 0;
+            for (int i = shortlist.nextClearBit(0); i < vocabSize; i = shortlist.nextClearBit(i + 1)) {
+                outsideExp += Math.exp(logits[i] - max);
+            }
+            if (sumExp / (sumExp + outsideExp) < shortlistMinMass) return false;
+        }
+        float logSumExp = max + (float) Math.log(sumExp);
+        
+        // Bounded top-k; n-gram check only for tokens that would enter it
+        boolean suppressEOS = beamIds.length <= 1;
+        int topK = numBeams * 2;
+        int[] topIds = scratch.topIds;
+        float[] topScores = scratch.topScores;
+        int count = 0;
+        for (int j = 0; j < n; j++) {
+            int id = ids[j];
+            float logProb = values[j] - logSumExp;
+            if (count == topK && logProb <= topScores[count - 1]) continue;
+            if (suppressEOS && id == eosTokenId) continue;
+            if (wouldRepeatNgram(beamIds, id)) continue;
+            count = insertTop(topIds, topScores, count, id, logProb);
+        }
+        
+        addCandidates(beam, topIds, topScores, count, out);
+        return true;
+    }
+    
+    /**
+     * Expand from the model's top-k with penalty, n-gram, EOS and shortlist
+     * corrections; returns false if the k entries cannot decide this step
+     *
+     * Tokens outside the k have logits at most the k-th one, and corrections
+     * only lower logits, so the selection is exact while the last chosen
+     * candidate is still at or above the k-th logit. logSumExp is
+     * corrected for penalised entries within the k; seen tokens outside it
+     * may hold at most TOPK_UNCORRECTED_MASS. With a shortlist, scores are
+     * normalised over its entries within the k, which must hold at least
+     * shortlistMinMass of the probability.
+     */
+    private boolean expandBeamTopK(Beam beam, int[] beamIds, TopK topK, BitSet shortlist,
+                                   List<Candidate> out) {
+        int[] ids = topK.ids();
+        float[] raw = topK.logits();
+        int k = ids.length;
+        int topKNeeded = numBeams * 2;
+        if (k < topKNeeded) return false;
+        float kth = raw[k - 1];
+        float logSumExp = topK.logSumExp();
+        
+        // Penalised logits and the probability mass the penalty removes
+        float[] values = new float[k];
+        double removed = 0;
+        int seenInside = 0;
+        for (int j = 0; j < k; j++) {
+            float v = raw[j];
+            if (contains(beamIds, ids[j])) {
+                seenInside++;
+                float p = v > 0 ? v / repetitionPenalty : v * repetitionPenalty;
+                removed += Math.exp(v - logSumExp) - Math.exp(p - logSumExp);
+                v = p;
+            }
+            values[j] = v;
+        }
+        int seenOutside = distinctCount(beamIds) - seenInside;
+        if (seenOutside * Math.exp(kth - logSumExp) > TOPK_UNCORRECTED_MASS) return false;
+        float normaliser = logSumExp + (float) Math.log(Math.max(1 - removed, Double.MIN_NORMAL));
+        
+        if (shortlist != null) {
+            double inside = 0;
+            for (int j = 0; j < k; j++) {
+                if (shortlist.get(ids[j])) inside += Math.exp(values[j] - normaliser);
+            }
+            if (inside < shortlistMinMass) return false;
+            normaliser += (float) Math.log(inside);
+        }
+        
+        boolean suppressEOS = beamIds.length <= 1;
+        int[] topIds = new int[topKNeeded];
+        float[] topScores = new float[topKNeeded];
+        int count = 0;
+        for (int j = 0; j < k; j++) {
+            int id = ids[j];
+            float logProb = values[j] - normaliser;
+            if (count == topKNeeded && logProb <= topScores[count - 1]) continue;
+            if (suppressEOS && id == eosTokenId) continue;
+            if (shortlist != null && !shortlist.get(id)) continue;
+            if (wouldRepeatNgram(beamIds, id)) continue;
+            count = insertTop(topIds, topScores, count, id, logProb);
+        }
+        // Same arithmetic as the k-th entry's own logProb, so it passes when chosen unpenalised
+        if (count < topKNeeded || topScores[count - 1] < kth - normaliser) return false;
+        
+        addCandidates(beam, topIds, topScores, count, out);
+        return true;
+    }
+    
+    private static int distinctCount(int[] ids) {
+        int count = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (!occursBefore(ids, i)) count++;
+        }
+        return count;
+    }
+    
+    private static boolean contains(int[] ids, int id) {
+        for (int value : ids) {
+            if (value == id) return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Insert into a descending top-k list; ties keep the earlier id first
+     * @return New count
+     */
+    private static int insertTop(int[] topIds, float[] topScores, int count, int id, float logProb) {
+        int pos = count < topIds.length ? count++ : count - 1;
+        while (pos > 0 && topScores[pos - 1] < logProb) {
+            topIds[pos] = topIds[pos - 1];
+            topScores[pos] = topScores[pos - 1];
+            pos--;
+        }
+        topIds[pos] = id;
+        topScores[pos] = logProb;
+        return count;
+    }
+    
+    private void addCandidates(Beam beam, int[] topIds, float[] topScores, int count, List<Candidate> out) {
+        for (int k = 0; k < count; k++) {
+            out.add(new Candidate(beam, topIds[k], beam.score + topScores[k], topIds[k] == eosTokenId));
+        }
+    }
+    
+    /**
+     * Penalise each distinct id once; walks the sequence, not the vocabulary
+     */
+    private void applyRepetitionPenalty(float[] logits, int[] seenIds) {
+        for (int i = 0; i < seenIds.length; i++) {
+            int id = seenIds[i];
+            if (id < 0 || id >= logits.length || occursBefore(seenIds, i)) continue;
+            logits[id] = logits[id] > 0 ? logits[id] / repetitionPenalty : logits[id] * repetitionPenalty;
+        }
+    }
+    
+    private static boolean occursBefore(int[] ids, int index) {
+        for (int i = 0; i < index; i++) {
+            if (ids[i] == ids[index]) return true;
+        }
+        return false;
+    }
+    
+    private boolean wouldRepeatNgram(int[] tokens, int nextToken) {
+        if (noRepeatNgramSize <= 0 || tokens.length < noRepeatNgramSize - 1) return false;
+        
+        // Compare each earlier n-gram with the last n-1 tokens plus nextToken
+        int start = tokens.length - (noRepeatNgramSize - 1);
+        for (int i = 0; i <= tokens.length - noRepeatNgramSize; i++) {
+            if (tokens[i + noRepeatNgramSize - 1] != nextToken) continue;
+            boolean match = true;
+            for (int j = 0; j < noRepeatNgramSize - 1; j++) {
+                if (tokens[i + j] != tokens[start + j]) {
+                    match = false;
+                    break;
+                }
+            }
+            if (match) return true;
+        }
+        return false;
+    }
+    
+    private void sortCandidates(List<Candidate> candidates) {
+        Collections.sort(candidates, (a, b) -> Float.compare(
+            normalizedScore(b.score, b.length), normalizedScore(a.score, a.length)));
+    }
+    
+    private float normalizedScore(float score, int length) {
+        return score / (float) Math.pow(length, lengthPenalty);
+    }
+    
+    /**
+     * Keep the best open candidates (numBeams, or the adaptive width) and
+     * every finished one seen before both lists are full; only these get
+     * arena entries
+     */
+    private void distributeBeams(List<Candidate> candidates, BeamArena arena,
+                                 List<Beam> beams, List<Beam> finishedBeams) {
+        beams.clear();
+        
+        // Candidates are sorted and share one length, so the first is the best
+        // of this step by raw log-prob too
+        Candidate first = candidates.isEmpty() ? null : candidates.get(0);
+        float gap = narrowGap;
+        float margin = pruneMargin;
+        int minWidth = minBeams;
+        float narrowFloor = gap > 0 && first != null ? first.score - gap : Float.NEGATIVE_INFINITY;
+        
+        float pruneFloor = Float.NEGATIVE_INFINITY;
+        if (margin > 0 && first != null) {
+            float best = normalizedScore(first.score, first.length);
+            if (!finishedBeams.isEmpty()) {
+                Beam top = finishedBeams.get(0);
+                best = Math.max(best, normalizedScore(top.score, top.length));
+            }
+            pruneFloor = best - margin;
+        }
+        
+        for (Candidate candidate : candidates) {
+            if (candidate.finished) {
+                insertSorted(finishedBeams, candidate.toBeam(arena));
+            } else if (beams.size() < numBeams) {
+                boolean narrowed = beams.size() >= minWidth && candidate.score < narrowFloor;
+                if (!narrowed && normalizedScore(candidate.score, candidate.length) >= pruneFloor) {
+                    beams.add(candidate.toBeam(arena));
+                }
+            }
+            
+            if (beams.size() >= numBeams && finishedBeams.size() >= numBeams) break;
+        }
+    }
+    
+    private void insertSorted(List<Beam> list, Beam beam) {
+        float score = normalizedScore(beam.score, beam.length);
+        int idx = 0;
+        for (int i = 0; i < list.size(); i++) {
+            Beam other = list.get(i);
+            if (normalizedScore(other.score, other.length) < score) {
+                idx = i;
+                break;
+            }
+            idx = i + 1;
+        }
+        list.add(idx, beam);
+    }
+    
+    private int[] selectBest(List<Beam> beams, List<Beam> finishedBeams, BeamArena arena, int[] fallback) {
+        List<Beam> all = new ArrayList<>();
+        all.addAll(finishedBeams);
+        all.addAll(beams);
+        
+        if (all.isEmpty()) return fallback;
+        
+        Collections.sort(all, (a, b) -> Float.compare(
+            normalizedScore(b.score, b.length), normalizedScore(a.score, a.length)));
+        Beam best = all.get(0);
+        int[] ids = new int[best.length];
+        arena.materialize(best.node, ids);
+        return ids;
+    }
+    
+    // Inner classes
+    
+    /**
+     * Growable (token, parent) entries shared by all beams of one decode
+     */
+    private static class BeamArena {
+        int[] tokens;
+        int[] parents;
+        int size;
+        
+        BeamArena(int capacity) {
+            tokens = new int[capacity];
+            parents = new int[capacity];
+        }
+        
+        /** Append token after parent (-1 for none); returns the new entry */
+        int add(int token, int parent) {
+            if (size == tokens.length) {
+                tokens = Arrays.copyOf(tokens, size * 2);
+                parents = Arrays.copyOf(parents, size * 2);
+            }
+            tokens[size] = token;
+            parents[size] = parent;
+            return size++;
+        }
+        
+        /** Fill out with the sequence ending at node; out.length is its length */
+        void materialize(int node, int[] out) {
+            for (int i = out.length - 1; i >= 0; i--) {
+                out[i] = tokens[node];
+                node = parents[node];
+            }
+        }
+    }
+    
+    /**
+     * One beam search: its arena, open and finished hypotheses
+     */
+    private class Search {
+        final BeamArena arena;
+        final BitSet shortlist;
+        final int[] startTokenIds;
+        final List<Beam> beams = new ArrayList<>();
+        final List<Beam> finishedBeams = new ArrayList<>();
+        // Candidates of the current step
+        final List<Candidate> candidates = new ArrayList<>();
+        final Scratch scratch = new Scratch();
+        boolean done;
+        
+        Search(int[] startTokenIds, BitSet shortlist) {
+            this.startTokenIds = startTokenIds;
+            this.shortlist = shortlist;
+            arena = new BeamArena(startTokenIds.length + numBeams * 32);
+            int root = -1;
+            for (int id : startTokenIds) root = arena.add(id, root);
+            beams.add(new Beam(root, startTokenIds.length, 0.0f, false));
+        }
+        
+        /** Open beams to expand this step; empty once the search is over */
+        List<Beam> begin() {
+            if (done) return Collections.emptyList();
+            List<Beam> activeBeams = filterActiveBeams(beams);
+            if (activeBeams.isEmpty() || shouldEarlyStop(finishedBeams, activeBeams)) {
+                done = true;
+                return Collections.emptyList();
+            }
+            candidates.clear();
+            return activeBeams;
+        }
+        
+        /** Select the next beams from the step's candidates */
+        void end(int expanded) {
+            long start = metrics != null ? System.nanoTime() : 0;
+            sortCandidates(candidates);
+            distributeBeams(candidates, arena, beams, finishedBeams);
+            beamSteps.incrementAndGet();
+            beamsExpanded.addAndGet(expanded);
+            if (metrics != null) {
+                metrics.recordSince(Metrics.Stage.BEAM, start);
+                metrics.increment(Metrics.Counter.BEAM_STEPS, 1);
+                metrics.increment(Metrics.Counter.BEAMS_EXPANDED, expanded);
+            }
+        }
+        
+        int[] best() {
+            int[] best = selectBest(beams, finishedBeams, arena, startTokenIds);
+            if (metrics != null) {
+                metrics.increment(Metrics.Counter.TOKENS_GENERATED, best.length - startTokenIds.length);
+            }
+            return best;
+        }
+    }
+    
+    /**
+     * Buffers reused by every expansion of one search
+     */
+    private class Scratch {
+        final int[] topIds = new int[numBeams * 2];
+        final float[] topScores = new float[numBeams * 2];
+        final BitSet seen = new BitSet();
+        private int[] ids = new int[0];
+        float[] values = new float[0];
+        
+        /** Shortlist ids buffer (values grows with it) */
+        int[] ids(int size) {
+            if (ids.length < size) {
+                ids = new int[size];
+                values = new float[size];
+            }
+            return ids;
+        }
+    }
+    
+    private static class Beam {
+        final int node;
+        final int length;
+        final float score;
+        final boolean finished;
+        
+        Beam(int node, int length, float score, boolean finished) {
+            this.node = node;
+            this.length = length;
+            this.score = score;
+            this.finished = finished;
+        }
+    }
+    
+    /**
+     * A beam plus one token, without an arena entry until it survives
+     */
+    private static class Candidate {
+        final Beam parent;
+        final int token;
+        final int length;
+        final float score;
+        final boolean finished;
+        
+        Candidate(Beam parent, int token, float score, boolean finished) {
+            this.parent = parent;
+            this.token = token;
+            this.length = parent.length + 1;
+            this.score = score;
+            this.finished = finished;
+        }
+        
+        Beam toBeam(BeamArena arena) {
+            return new Beam(arena.add(token, parent.node), length, score, finished);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.small100onnx;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Download Progress - byte-level progress across the files of one update
+ *
+ * Transfers report bytes from their download threads; snapshots with
+ * current/average throughput and ETA are pushed to the listener at most
+ * once per interval (file completions always push), so the JS bridge is
+ * not flooded by 64 KB reads.
+ *
+ * Plain Java (no Android APIs) so it can be tested on the JVM.
+ */
+public class DownloadProgress {
+    // Weight of the newest sample in the current throughput estimate
+    private static final double RATE_SMOOTHING = 0.3;
+
+    /**
+     * Point-in-time view passed to the listener
+     */
+    public static class Snapshot {
+        public final int filesDone;
+        public final int filesTotal;
+        public final long bytesDone;
+        // Known or expected bytes of all files; grows if a size was unknown up front
+        public final long bytesTotal;
+        public final long bytesPerSecond;
+        public final long averageBytesPerSecond;
+        // -1 while no throughput is measured yet
+        public final long etaSeconds;
+        // File whose progress triggered this snapshot
+        public final String file;
+
+        Snapshot(int filesDone, int filesTotal, long bytesDone, long bytesTotal, long bytesPerSecond,
+                 long averageBytesPerSecond, long etaSeconds, String file) {
+            this.filesDone = filesDone;
+            this.filesTotal = filesTotal;
+            this.bytesDone = bytesDone;
+            this.bytesTotal = bytesTotal;
+            this.bytesPerSecond = bytesPerSecond;
+            this.averageBytesPerSecond = averageBytesPerSecond;
+            this.etaSeconds = etaSeconds;
+            this.file = file;
+        }
+    }
+
+    public interface Listener {
+        void onProgress(Snapshot snapshot);
+    }
+
+    private final int filesTotal;
+    private final long intervalNanos;
+    private final Listener listener;
+    private final long startNanos = System.nanoTime();
+
+    // Per-file expected size; replaced by the server size once a transfer starts
+    private final Map<String, Long> fileBytes = new ConcurrentHashMap<>();
+    private final AtomicLong bytesDone = new AtomicLong();
+    private final AtomicLong transferredBytes = new AtomicLong();
+    private final AtomicInteger filesDone = new AtomicInteger();
+
+    private volatile long lastEmitNanos;
+    // Guarded by this
+    private long lastSampleNanos = startNanos;
+    private long lastSampleBytes;
+    private double currentRate;
+
+    /**
+     * @param intervalMs minimum time between pushed snapshots (0 = every update)
+     */
+    public DownloadProgress(int filesTotal, long intervalMs, Listener listener) {
+        this.filesTotal = filesTotal;
+        this.intervalNanos = intervalMs * 1_000_000L;
+        this.listener = listener;
+    }
+
+    /**
+     * Size announced by the manifest, so the total is meaningful before transfers start
+     */
+    public void expect(String file, long bytes) {
+        if (bytes > 0) fileBytes.put(file, bytes);
+    }
+
+    /**
+     * Listener for one file's transfer
+     */
+    public ModelDownloader.ProgressListener forFile(String file) {
+        return new ModelDownloader.ProgressListener() {
+            @Override
+            public void onStart(long totalBytes, long resumedBytes) {
+                if (totalBytes > 0) fileBytes.put(file, totalBytes);
+                // Resumed bytes count as done but not towards throughput
+                bytesDone.addAndGet(resumedBytes);
+            }
+
+            @Override
+            public void onBytes(int count) {
+                bytesDone.addAndGet(count);
+                transferredBytes.addAndGet(count);
+                if (System.nanoTime() - lastEmitNanos >= intervalNanos) emit(file, false);
+            }
+        };
+    }
+
+    /**
+     * A file finished without a transfer (already present or reused)
+     */
+    public void skipped(String file, long bytes) {
+        fileBytes.put(file, bytes);
+        bytesDone.addAndGet(bytes);
+    }
+
+    public void fileDone(String file) {
+        filesDone.incrementAndGet();
+        emit(file, true);
+    }
+
+    public Snapshot snapshot(String file) {
+        long now = System.nanoTime();
+        long done = bytesDone.get();
+        long transferred = transferredBytes.get();
+        long total = 0;
+        for (long bytes : fileBytes.values()) total += bytes;
+        total = Math.max(total, done);
+
+        double rate;
+        synchronized (this) {
+            long elapsed = now - lastSampleNanos;
+            // Samples shorter than 100ms are too noisy to update the estimate
+            if (elapsed >= 100_000_000L) {
+                double sample = (transferred - lastSampleBytes) * 1e9 / elapsed;
+                currentRate = currentRate == 0 ? sample : RATE_SMOOTHING * sample + (1 - RATE_SMOOTHING) * currentRate;
+                lastSampleNanos = now;
+                lastSampleBytes = transferred;
+            }
+            rate = currentRate;
+        }
+        long elapsedTotal = now - startNanos;
+        long average = elapsedTotal > 0 ? (long) (transferred * 1e9 / elapsedTotal) : 0;
+        long eta = rate > 0 ? (long) Math.ceil((total - done) / rate) : -1;
+        return new Snapshot(filesDone.get(), filesTotal, done, total, (long) rate, average, eta, file);
+    }
+
+    // Serialized so the listener sees snapshots in order
+    private synchronized void emit(String file, boolean force) {
+        long now = System.nanoTime();
+        // Another thread emitted while this one waited for the lock
+        if (!force && now - lastEmitNanos < intervalNanos) return;
+        lastEmitNanos = now;
+        if (listener != null) listener.onProgress(snapshot(file));
+    }
+}
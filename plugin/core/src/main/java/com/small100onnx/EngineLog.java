@@ -0,0 +1,33 @@
+package com.small100onnx;
+
+/**
+ * Engine Log - android.util.Log-style calls routed to the installed Platform
+ */
+public final class EngineLog {
+    private EngineLog() {
+    }
+
+    public static void d(String tag, String msg) {
+        Platform.get().log(Platform.DEBUG, tag, msg, null);
+    }
+
+    public static void i(String tag, String msg) {
+        Platform.get().log(Platform.INFO, tag, msg, null);
+    }
+
+    public static void w(String tag, String msg) {
+        Platform.get().log(Platform.WARN, tag, msg, null);
+    }
+
+    public static void w(String tag, String msg, Throwable tr) {
+        Platform.get().log(Platform.WARN, tag, msg, tr);
+    }
+
+    public static void e(String tag, String msg) {
+        Platform.get().log(Platform.ERROR, tag, msg, null);
+    }
+
+    public static void e(String tag, String msg, Throwable tr) {
+        Platform.get().log(Platform.ERROR, tag, msg, tr);
+    }
+}
@@ -0,0 +1,203 @@
+package com.small100onnx;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Metrics - per-stage latency histograms and counters for translation
+ *
+ * Recording is lock-free (atomic adds into fixed log-scale buckets), so
+ * it can stay on in production; timings use System.nanoTime. One shared
+ * instance outlives Translator swaps and session reloads.
+ *
+ * Plain Java (no Android APIs) so it can be tested on the JVM.
+ */
+public class Metrics {
+
+    public enum Stage {
+        QUEUE_WAIT("queueWait"),
+        TOKENIZE("tokenize"),
+        ENCODER("encoder"),
+        DECODER_STEP("decoderStep"),
+        LOGITS("logits"),
+        BEAM("beam"),
+        DETOKENIZE("detokenize"),
+        TOTAL("total");
+
+        public final String key;
+
+        Stage(String key) {
+            this.key = key;
+        }
+    }
+
+    public enum Counter {
+        TRANSLATIONS("translations"),
+        TOKENS_GENERATED("tokensGenerated"),
+        BEAMS_EXPANDED("beamsExpanded"),
+        // Beam search steps; beamsExpanded / beamSteps is the average beam width
+        BEAM_STEPS("beamSteps"),
+        // Decoder steps that reused cached cross-attention K/V or batched row inputs
+        CACHE_HITS("cacheHits"),
+        SHORTLIST_FALLBACKS("shortlistFallbacks"),
+        // Top-k decoder steps that needed the full logits
+        TOPK_FALLBACKS("topKFallbacks"),
+        // Translations served from the translation memory (not in TRANSLATIONS)
+        MEMORY_HITS("memoryHits");
+
+        public final String key;
+
+        Counter(String key) {
+            this.key = key;
+        }
+    }
+
+    private static final Metrics SHARED = new Metrics();
+
+    private final Histogram[] histograms = new Histogram[Stage.values().length];
+    private final AtomicLong[] counters = new AtomicLong[Counter.values().length];
+    private final Metrics parent;
+
+    public Metrics() {
+        this(null);
+    }
+
+    /**
+     * Metrics that also forward every sample to parent
+     * (e.g. a profiling window that must not hide samples from the shared instance)
+     */
+    public Metrics(Metrics parent) {
+        this.parent = parent;
+        for (int i = 0; i < histograms.length; i++) histograms[i] = new Histogram();
+        for (int i = 0; i < counters.length; i++) counters[i] = new AtomicLong();
+    }
+
+    /**
+     * Process-wide instance used by Translator
+     */
+    public static Metrics shared() {
+        return SHARED;
+    }
+
+    public void record(Stage stage, long nanos) {
+        histograms[stage.ordinal()].record(nanos);
+        if (parent != null) parent.record(stage, nanos);
+    }
+
+    /**
+     * Record the time since startNanos (from System.nanoTime) and return now
+     */
+    public long recordSince(Stage stage, long startNanos) {
+        long now = System.nanoTime();
+        record(stage, now - startNanos);
+        return now;
+    }
+
+    public void increment(Counter counter, long delta) {
+        counters[counter.ordinal()].addAndGet(delta);
+        if (parent != null) parent.increment(counter, delta);
+    }
+
+    public Histogram histogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    public long count(Counter counter) {
+        return counters[counter.ordinal()].get();
+    }
+
+    public Map<String, Long> counters() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Counter counter : Counter.values()) result.put(counter.key, count(counter));
+        return result;
+    }
+
+    public void reset() {
+        for (Histogram histogram : histograms) histogram.reset();
+        for (AtomicLong counter : counters) counter.set(0);
+    }
+
+    /**
+     * Log-scale latency histogram: 4 buckets per power of two (<= 19% error)
+     */
+    public static class Histogram {
+        private static final int SUB_BUCKETS = 4;
+        private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        public void record(long nanos) {
+            if (nanos < 0) nanos = 0;
+            buckets.incrementAndGet(bucketOf(nanos));
+            count.incrementAndGet();
+            sum.addAndGet(nanos);
+            long current;
+            while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) {
+                // Retry with the newer maximum
+            }
+        }
+
+        public long count() {
+            return count.get();
+        }
+
+        public double meanMs() {
+            long n = count.get();
+            return n > 0 ? sum.get() / 1e6 / n : 0;
+        }
+
+        public double maxMs() {
+            return max.get() / 1e6;
+        }
+
+        /**
+         * Upper bound of the bucket holding the given quantile (0..1), in ms
+         */
+        public double percentileMs(double quantile) {
+            long n = 0;
+            long[] snapshot = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = buckets.get(i);
+                n += snapshot[i];
+            }
+            if (n == 0) return 0;
+            long rank = (long) Math.ceil(quantile * n);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= Math.max(rank, 1)) {
+                    return Math.min(upperBound(i), max.get()) / 1e6;
+                }
+            }
+            return maxMs();
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) buckets.set(i, 0);
+            count.set(0);
+            sum.set(0);
+            max.set(0);
+        }
+
+        static int bucketOf(long nanos) {
+            if (nanos < SUB_BUCKETS) return (int) nanos;
+            int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+            // Two bits below the leading one pick the sub-bucket
+            int sub = (int) (nanos >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+            return exponent * SUB_BUCKETS + sub;
+        }
+
+        static long upperBound(int bucket) {
+            if (bucket < SUB_BUCKETS) return bucket;
+            int exponent = bucket / SUB_BUCKETS;
+            int sub = bucket % SUB_BUCKETS;
+            long base = 1L << exponent;
+            return base + (base >>> 2) * (sub + 1) - 1;
+        }
+    }
+}
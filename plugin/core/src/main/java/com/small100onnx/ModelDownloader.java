@@ -0,0 +1,609 @@
+package com.small100onnx;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Model Downloader - resumable HTTP downloads
+ *
+ * Data goes to "<file>.part" and is renamed to the target only when complete,
+ * so a partial download is never mistaken for a model file. Servers that
+ * accept byte ranges get large files fetched as parallel chunks; progress is
+ * tracked in "<file>.part.state" so an interrupted download resumes from the
+ * last finished chunk (or, for streamed files, from the last written byte).
+ *
+ * SHA-256 is computed while downloading, in file order: the chunk next in
+ * line is digested straight from its network stream and chunks ahead of it
+ * are held in memory until it finishes, so the file is read once. The hash
+ * is checked against the expected one before the rename, so corrupt files
+ * never become visible.
+ *
+ * Compressed copies (gzip built in; other encodings can be registered) are
+ * fetched with the same resumable machinery, then decompressed as a stream
+ * into the target while hashing the decompressed bytes.
+ *
+ * Plain Java (no Android APIs) so it can run against a local test server.
+ */
+public class ModelDownloader {
+    public static final String PART_SUFFIX = ".part";
+    public static final String STATE_SUFFIX = ".part.state";
+
+    public static final long DEFAULT_CHUNK_SIZE = 8L * 1024 * 1024;
+    public static final int DEFAULT_PARALLEL_CHUNKS = 4;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Chunk bytes held for hashing ahead of the in-order prefix; past this they are read back from disk
+    private static final long MAX_HASH_BACKLOG = 16L * 1024 * 1024;
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 30000;
+
+    private static final String MODE_STREAM = "stream";
+    private static final String MODE_CHUNKED = "chunked";
+
+    /**
+     * Wraps a compressed stream into a decompressing one
+     */
+    public interface Decompressor {
+        InputStream open(InputStream compressed) throws IOException;
+    }
+
+    /**
+     * Byte-level progress of one transfer (called from download threads)
+     */
+    public interface ProgressListener {
+        /** Transfer of totalBytes (-1 if unknown) starts with resumedBytes already on disk */
+        void onStart(long totalBytes, long resumedBytes);
+        void onBytes(int count);
+    }
+
+    private static final ProgressListener NO_PROGRESS = new ProgressListener() {
+        @Override
+        public void onStart(long totalBytes, long resumedBytes) {}
+
+        @Override
+        public void onBytes(int count) {}
+    };
+
+    private static final Map<String, Decompressor> DECOMPRESSORS = new ConcurrentHashMap<>();
+
+    static {
+        DECOMPRESSORS.put("gzip", in -> new GZIPInputStream(in, BUFFER_SIZE));
+    }
+
+    private final ExecutorService chunkPool;
+    private final long chunkSize;
+
+    public ModelDownloader(int parallelChunks, long chunkSize) {
+        this.chunkPool = Executors.newFixedThreadPool(parallelChunks);
+        this.chunkSize = chunkSize;
+    }
+
+    public ModelDownloader() {
+        this(DEFAULT_PARALLEL_CHUNKS, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Download fileUrl to target, resuming a previous partial download if possible
+     * @return SHA-256 of the file (hex)
+     */
+    public String download(String fileUrl, File target) throws Exception {
+        return download(fileUrl, target, null);
+    }
+    
+    /**
+     * Download and verify against an expected SHA-256 (hex, null to skip)
+     * On mismatch the partial data is discarded and an IOException thrown.
+     * @return SHA-256 of the file (hex)
+     */
+    public String download(String fileUrl, File target, String expectedSha256) throws Exception {
+        return download(fileUrl, target, expectedSha256, null);
+    }
+
+    /**
+     * Download and verify, reporting transferred bytes to listener (may be null)
+     * @return SHA-256 of the file (hex)
+     */
+    public String download(String fileUrl, File target, String expectedSha256,
+                           ProgressListener listener) throws Exception {
+        if (listener == null) listener = NO_PROGRESS;
+        File part = new File(target.getPath() + PART_SUFFIX);
+        File stateFile = new File(target.getPath() + STATE_SUFFIX);
+
+        RemoteInfo remote = probe(fileUrl);
+        boolean chunked = remote.acceptsRanges && remote.length >= 2 * chunkSize;
+        String mode = chunked ? MODE_CHUNKED : MODE_STREAM;
+
+        // Partial data is only reusable for the same URL, size, validator and layout
+        DownloadState state = DownloadState.load(stateFile);
+        if (state == null || !state.matches(fileUrl, remote, mode, chunkSize)) {
+            part.delete();
+            state = new DownloadState(fileUrl, remote.length, remote.etag, mode, chunkSize);
+            state.save(stateFile);
+        }
+
+        MessageDigest digest = newDigest();
+        if (chunked) {
+            downloadChunked(fileUrl, part, remote, state, stateFile, digest, listener);
+        } else {
+            downloadStream(fileUrl, part, remote, digest, listener);
+        }
+
+        if (remote.length >= 0 && part.length() != remote.length) {
+            throw new IOException("Incomplete download: " + fileUrl
+                + " (" + part.length() + " of " + remote.length + " bytes)");
+        }
+        String sha256 = toHex(digest.digest());
+        if (expectedSha256 != null && !expectedSha256.equalsIgnoreCase(sha256)) {
+            // Corrupt data cannot be resumed from
+            part.delete();
+            stateFile.delete();
+            throw new IOException("Checksum mismatch: " + fileUrl);
+        }
+        if (!part.renameTo(target)) {
+            throw new IOException("Failed to move " + part + " to " + target);
+        }
+        stateFile.delete();
+        return sha256;
+    }
+
+    /**
+     * Download a compressed copy and decompress it to target
+     * The compressed file is kept as "<target>.<encoding>" until decompressed,
+     * so an interrupted transfer resumes like a plain one.
+     * @param compressedSize compressed size from the manifest, -1 if unknown
+     * @param expectedSha256 hash of the decompressed file (hex, null to skip)
+     * @return SHA-256 of the decompressed file (hex)
+     * @throws FileNotFoundException if the server has no such compressed copy
+     */
+    public String downloadCompressed(String compressedUrl, String encoding, long compressedSize,
+                                     File target, String expectedSha256) throws Exception {
+        return downloadCompressed(compressedUrl, encoding, compressedSize, target, expectedSha256, null);
+    }
+
+    /**
+     * Compressed download reporting compressed bytes to listener (may be null)
+     */
+    public String downloadCompressed(String compressedUrl, String encoding, long compressedSize,
+                                     File target, String expectedSha256,
+                                     ProgressListener listener) throws Exception {
+        Decompressor decompressor = DECOMPRESSORS.get(encoding);
+        if (decompressor == null) throw new IOException("Unsupported encoding: " + encoding);
+
+        File packed = new File(target.getPath() + "." + encoding);
+        // Complete from an earlier attempt that stopped before decompressing
+        if (!packed.exists() || compressedSize < 0 || packed.length() != compressedSize) {
+            download(compressedUrl, packed, null, listener);
+        } else if (listener != null) {
+            listener.onStart(compressedSize, compressedSize);
+        }
+
+        File part = new File(target.getPath() + PART_SUFFIX);
+        MessageDigest digest = newDigest();
+        try (InputStream in = decompressor.open(new FileInputStream(packed));
+             OutputStream out = new FileOutputStream(part)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) != -1) {
+                out.write(buffer, 0, bytesRead);
+                digest.update(buffer, 0, bytesRead);
+            }
+        } catch (IOException e) {
+            // Truncated or corrupt stream: fetch the compressed copy again next time
+            part.delete();
+            packed.delete();
+            throw e;
+        }
+
+        String sha256 = toHex(digest.digest());
+        if (expectedSha256 != null && !expectedSha256.equalsIgnoreCase(sha256)) {
+            part.delete();
+            packed.delete();
+            throw new IOException("Checksum mismatch: " + compressedUrl);
+        }
+        if (!part.renameTo(target)) {
+            throw new IOException("Failed to move " + part + " to " + target);
+        }
+        packed.delete();
+        return sha256;
+    }
+
+    /**
+     * Make another encoding (e.g. "zstd", "xz") available to downloadCompressed
+     */
+    public static void registerDecompressor(String encoding, Decompressor decompressor) {
+        DECOMPRESSORS.put(encoding, decompressor);
+    }
+
+    public static boolean supportsEncoding(String encoding) {
+        return DECOMPRESSORS.containsKey(encoding);
+    }
+
+    /**
+     * SHA-256 of a whole file (hex), used for deep verification
+     */
+    public static String sha256(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        hashRange(file, 0, file.length(), digest);
+        return toHex(digest.digest());
+    }
+
+    public void shutdown() {
+        chunkPool.shutdownNow();
+    }
+
+    // Private helpers
+
+    private RemoteInfo probe(String fileUrl) throws IOException {
+        HttpURLConnection connection = open(fileUrl);
+        try {
+            connection.setRequestMethod("HEAD");
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                // No usable HEAD: plain streamed download of unknown size
+                return new RemoteInfo(-1, null, false);
+            }
+            // getContentLengthLong needs API 24
+            String lengthHeader = connection.getHeaderField("Content-Length");
+            long length = lengthHeader != null ? Long.parseLong(lengthHeader.trim()) : -1;
+            String etag = connection.getHeaderField("ETag");
+            boolean ranges = "bytes".equalsIgnoreCase(connection.getHeaderField("Accept-Ranges"));
+            return new RemoteInfo(length, etag, ranges && length > 0);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private void downloadStream(String fileUrl, File part, RemoteInfo remote,
+                                MessageDigest digest, ProgressListener listener) throws Exception {
+        long existing = part.exists() ? part.length() : 0;
+        if (remote.length >= 0 && existing == remote.length) {
+            listener.onStart(remote.length, existing);
+            hashRange(part, 0, existing, digest);
+            return;
+        }
+        if (!remote.acceptsRanges || (remote.length >= 0 && existing > remote.length)) existing = 0;
+
+        HttpURLConnection connection = open(fileUrl);
+        try {
+            if (existing > 0) {
+                connection.setRequestProperty("Range", "bytes=" + existing + "-");
+                if (remote.etag != null) connection.setRequestProperty("If-Range", remote.etag);
+            }
+            int code = connection.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_FOUND) throw new FileNotFoundException(fileUrl);
+            boolean append = existing > 0 && code == HttpURLConnection.HTTP_PARTIAL;
+            if (code != HttpURLConnection.HTTP_OK && !append) {
+                throw new IOException("Failed to download: " + fileUrl + " (" + code + ")");
+            }
+            // Resumed: the digest has to cover the bytes already on disk
+            if (append) hashRange(part, 0, existing, digest);
+            listener.onStart(remote.length, append ? existing : 0);
+
+            try (InputStream in = connection.getInputStream();
+                 OutputStream out = new FileOutputStream(part, append)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int bytesRead;
+                while ((bytesRead = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, bytesRead);
+                    digest.update(buffer, 0, bytesRead);
+                    listener.onBytes(bytesRead);
+                }
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private void downloadChunked(String fileUrl, File part, RemoteInfo remote, DownloadState state,
+                                 File stateFile, MessageDigest digest, ProgressListener listener) throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(part, "rw")) {
+            if (raf.length() != remote.length) raf.setLength(remote.length);
+        }
+
+        int chunks = (int) ((remote.length + chunkSize - 1) / chunkSize);
+        OrderedHasher hasher = new OrderedHasher(part, remote.length, chunks, digest);
+        hasher.advance(state);
+        long resumed = 0;
+        for (int i = 0; i < chunks; i++) {
+            if (state.isDone(i)) resumed += Math.min(chunkSize, remote.length - i * chunkSize);
+        }
+        listener.onStart(remote.length, resumed);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < chunks; i++) {
+            if (state.isDone(i)) continue;
+            final int index = i;
+            final long start = i * chunkSize;
+            final long end = Math.min(start + chunkSize, remote.length) - 1;
+            futures.add(chunkPool.submit(() -> {
+                downloadRange(fileUrl, part, start, end, remote.etag, listener, hasher, index);
+                synchronized (state) {
+                    state.markDone(index);
+                    state.save(stateFile);
+                }
+                hasher.advance(state);
+                return null;
+            }));
+        }
+
+        try {
+            for (Future<?> future : futures) future.get();
+        } catch (ExecutionException e) {
+            for (Future<?> future : futures) future.cancel(true);
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+        hasher.advance(state);
+        if (!hasher.isComplete()) throw new IOException("Chunks missing: " + fileUrl);
+    }
+
+    private void downloadRange(String fileUrl, File part, long start, long end, String etag,
+                               ProgressListener listener, OrderedHasher hasher, int chunk) throws IOException {
+        HttpURLConnection connection = open(fileUrl);
+        try {
+            connection.setRequestProperty("Range", "bytes=" + start + "-" + end);
+            if (etag != null) connection.setRequestProperty("If-Range", etag);
+            int code = connection.getResponseCode();
+            if (code != HttpURLConnection.HTTP_PARTIAL) {
+                // 200 here means the file changed (If-Range) or ranges are not honoured
+                throw new IOException("Range request failed: " + fileUrl + " (" + code + ")");
+            }
+
+            long expected = end - start + 1;
+            long written = 0;
+            try (InputStream in = connection.getInputStream();
+                 RandomAccessFile raf = new RandomAccessFile(part, "rw")) {
+                raf.seek(start);
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int bytesRead;
+                while (written < expected && (bytesRead = in.read(buffer)) != -1) {
+                    if (Thread.currentThread().isInterrupted()) throw new IOException("Cancelled");
+                    int n = (int) Math.min(bytesRead, expected - written);
+                    raf.write(buffer, 0, n);
+                    hasher.update(chunk, buffer, n);
+                    written += n;
+                    listener.onBytes(n);
+                }
+            }
+            if (written != expected) {
+                throw new IOException("Short range read: " + fileUrl + " (" + written + " of " + expected + ")");
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static HttpURLConnection open(String fileUrl) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(fileUrl).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        return connection;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void hashRange(File file, long start, long length, MessageDigest digest) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(start);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long remaining = length;
+            while (remaining > 0) {
+                int n = raf.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (n < 0) throw new IOException("Unexpected end of " + file);
+                digest.update(buffer, 0, n);
+                remaining -= n;
+            }
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Feeds chunk bytes to the digest in file order as they arrive
+     * Bytes of the chunk at the end of the hashed prefix go straight to the
+     * digest; bytes of later chunks wait in memory until the prefix reaches
+     * them. Chunks finished by an earlier run, and bytes that didn't fit in
+     * MAX_HASH_BACKLOG, are read back from the .part file instead.
+     */
+    private class OrderedHasher {
+        private final File part;
+        private final long length;
+        private final int chunks;
+        private final MessageDigest digest;
+        // First chunk not fully hashed, and how many of its bytes are
+        private int next;
+        private long nextHashed;
+        // Bytes received for chunks after next
+        private final Map<Integer, Backlog> backlogs = new HashMap<>();
+        private long backlogBytes;
+
+        OrderedHasher(File part, long length, int chunks, MessageDigest digest) {
+            this.part = part;
+            this.length = length;
+            this.chunks = chunks;
+            this.digest = digest;
+        }
+
+        /**
+         * Bytes of a chunk, in order, after they were written to the .part file
+         */
+        synchronized void update(int chunk, byte[] data, int count) {
+            if (chunk == next) {
+                digest.update(data, 0, count);
+                nextHashed += count;
+                return;
+            }
+            Backlog backlog = backlogs.computeIfAbsent(chunk, c -> new Backlog());
+            backlog.received += count;
+            if (backlog.spilled) return;
+            if (backlogBytes + count > MAX_HASH_BACKLOG) {
+                // Read back from disk once the prefix reaches this chunk
+                backlogBytes -= backlog.held;
+                backlog.buffers.clear();
+                backlog.held = 0;
+                backlog.spilled = true;
+                return;
+            }
+            backlog.buffers.add(Arrays.copyOf(data, count));
+            backlog.held += count;
+            backlogBytes += count;
+        }
+
+        /**
+         * Extend the hashed prefix over the chunks marked done
+         */
+        synchronized void advance(DownloadState state) throws IOException {
+            while (next < chunks && state.isDone(next)) {
+                long start = next * chunkSize;
+                long chunkLength = Math.min(chunkSize, length - start);
+                if (nextHashed < chunkLength) {
+                    hashRange(part, start + nextHashed, chunkLength - nextHashed, digest);
+                }
+                next++;
+                nextHashed = 0;
+                // A chunk already downloading continues straight into the digest
+                Backlog backlog = backlogs.remove(next);
+                if (backlog != null) {
+                    if (backlog.spilled) {
+                        hashRange(part, next * chunkSize, backlog.received, digest);
+                    } else {
+                        for (byte[] buffer : backlog.buffers) digest.update(buffer);
+                    }
+                    nextHashed = backlog.received;
+                    backlogBytes -= backlog.held;
+                }
+            }
+        }
+
+        synchronized boolean isComplete() {
+            return next == chunks;
+        }
+    }
+
+    private static class Backlog {
+        final List<byte[]> buffers = new ArrayList<>();
+        long received;
+        long held;
+        boolean spilled;
+    }
+
+    private static class RemoteInfo {
+        final long length;
+        final String etag;
+        final boolean acceptsRanges;
+
+        RemoteInfo(long length, String etag, boolean acceptsRanges) {
+            this.length = length;
+            this.etag = etag;
+            this.acceptsRanges = acceptsRanges;
+        }
+    }
+
+    /**
+     * Persisted progress of one download
+     */
+    private static class DownloadState {
+        final String url;
+        final long length;
+        final String etag;
+        final String mode;
+        final long chunkSize;
+        final BitSet done = new BitSet();
+
+        DownloadState(String url, long length, String etag, String mode, long chunkSize) {
+            this.url = url;
+            this.length = length;
+            this.etag = etag;
+            this.mode = mode;
+            this.chunkSize = chunkSize;
+        }
+
+        boolean matches(String url, RemoteInfo remote, String mode, long chunkSize) {
+            return this.url.equals(url) && this.length == remote.length
+                && String.valueOf(this.etag).equals(String.valueOf(remote.etag))
+                && this.mode.equals(mode) && this.chunkSize == chunkSize;
+        }
+
+        synchronized boolean isDone(int chunk) {
+            return done.get(chunk);
+        }
+
+        synchronized void markDone(int chunk) {
+            done.set(chunk);
+        }
+
+        static DownloadState load(File file) {
+            if (!file.exists()) return null;
+            Properties props = new Properties();
+            try (InputStream in = new FileInputStream(file)) {
+                props.load(in);
+                DownloadState state = new DownloadState(props.getProperty("url"),
+                    Long.parseLong(props.getProperty("length")), props.getProperty("etag"),
+                    props.getProperty("mode"), Long.parseLong(props.getProperty("chunkSize")));
+                String chunks = props.getProperty("done", "");
+                for (String c : chunks.split(",")) {
+                    if (!c.isEmpty()) state.done.set(Integer.parseInt(c));
+                }
+                return state;
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        void save(File file) throws IOException {
+            Properties props = new Properties();
+            props.setProperty("url", url);
+            props.setProperty("length", String.valueOf(length));
+            if (etag != null) props.setProperty("etag", etag);
+            props.setProperty("mode", mode);
+            props.setProperty("chunkSize", String.valueOf(chunkSize));
+            StringBuilder chunks = new StringBuilder();
+            for (int i = done.nextSetBit(0); i >= 0; i = done.nextSetBit(i + 1)) {
+                if (chunks.length() > 0) chunks.append(',');
+                chunks.append(i);
+            }
+            props.setProperty("done", chunks.toString());
+
+            File tmp = new File(file.getPath() + ".tmp");
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                props.store(out, null);
+            }
+            if (!tmp.renameTo(file)) throw new IOException("Failed to save " + file);
+        }
+    }
+}
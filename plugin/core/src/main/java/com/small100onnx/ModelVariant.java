@@ -0,0 +1,166 @@
+package com.small100onnx;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Model Variant - one encoder/decoder export (int8, fp16, fp32, ...)
+ *
+ * Variants are listed in variants.json next to the model files:
+ * {"variants": [{"name": "fp16", "encoder": "encoder_fp16.onnx",
+ *                "decoder": "decoder_fp16.onnx", "residentBytes": 620000000}, ...]}
+ * An optional "crossKv" file is a small init graph computing the decoder's
+ * cross-attention keys/values from encoder_hidden_states (see TranslationEngine).
+ * Without a manifest only the int8 pair is available.
+ */
+public class ModelVariant {
+    public static final String MANIFEST_FILE = "variants.json";
+    public static final String SELECTION_FILE = "selected_variant.json";
+
+    public static final ModelVariant DEFAULT =
+        new ModelVariant("int8", "encoder_int8.onnx", "decoder_int8.onnx", 0);
+
+    public final String name;
+    public final String encoderFile;
+    public final String decoderFile;
+    // Cross-attention K/V init graph, or null
+    public final String crossKvFile;
+    // Declared resident size; 0 means estimate from file sizes
+    public final long residentBytes;
+
+    public ModelVariant(String name, String encoderFile, String decoderFile, long residentBytes) {
+        this(name, encoderFile, decoderFile, null, residentBytes);
+    }
+
+    public ModelVariant(String name, String encoderFile, String decoderFile, String crossKvFile,
+                        long residentBytes) {
+        this.name = name;
+        this.encoderFile = encoderFile;
+        this.decoderFile = decoderFile;
+        this.crossKvFile = crossKvFile;
+        this.residentBytes = residentBytes;
+    }
+
+    /**
+     * Model files of this variant
+     */
+    public List<String> files() {
+        List<String> files = new ArrayList<>();
+        files.add(encoderFile);
+        files.add(decoderFile);
+        if (crossKvFile != null) files.add(crossKvFile);
+        return files;
+    }
+
+    public boolean isDownloaded(File modelsDir) {
+        for (String file : files()) {
+            if (!new File(modelsDir, file).exists()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Resident size: declared, else sum of model file sizes
+     */
+    public long estimateResidentBytes(File modelsDir) {
+        if (residentBytes > 0) return residentBytes;
+        long total = 0;
+        for (String file : files()) total += new File(modelsDir, file).length();
+        return total;
+    }
+
+    /**
+     * Parse variants.json content
+     */
+    public static List<ModelVariant> parseManifest(String json) throws Exception {
+        JSONArray arr = new JSONObject(json).getJSONArray("variants");
+        List<ModelVariant> result = new ArrayList<>();
+        for (int i = 0; i < arr.length(); i++) {
+            JSONObject v = arr.getJSONObject(i);
+            result.add(new ModelVariant(v.getString("name"), v.getString("encoder"),
+                v.getString("decoder"), v.optString("crossKv", null), v.optLong("residentBytes", 0)));
+        }
+        return result;
+    }
+
+    /**
+     * Variants listed in the local manifest, or only DEFAULT without one
+     */
+    public static List<ModelVariant> loadManifest(File modelsDir) {
+        File file = new File(modelsDir, MANIFEST_FILE);
+        if (file.exists()) {
+            try {
+                List<ModelVariant> variants = parseManifest(readFile(file));
+                if (!variants.isEmpty()) return variants;
+            } catch (Exception ignored) {
+                // Corrupt manifest: fall back to the int8 pair
+            }
+        }
+        return Collections.singletonList(DEFAULT);
+    }
+
+    /**
+     * Persisted benchmark choice for this device, or null if none
+     */
+    public static ModelVariant loadSelected(File modelsDir, String deviceKey) {
+        File file = new File(modelsDir, SELECTION_FILE);
+        if (!file.exists()) return null;
+        try {
+            JSONObject obj = new JSONObject(readFile(file));
+            // Selection is only valid for the device that measured it (backups may be restored elsewhere)
+            if (!deviceKey.equals(obj.optString("device"))) return null;
+            String name = obj.getString("variant");
+            for (ModelVariant v : loadManifest(modelsDir)) {
+                if (v.name.equals(name) && v.isDownloaded(modelsDir)) return v;
+            }
+        } catch (Exception ignored) {
+            // Treat as not selected
+        }
+        return null;
+    }
+
+    /**
+     * Variant to load: persisted choice, else DEFAULT
+     */
+    public static ModelVariant resolve(File modelsDir, String deviceKey) {
+        ModelVariant selected = loadSelected(modelsDir, deviceKey);
+        return selected != null ? selected : DEFAULT;
+    }
+
+    public static void saveSelected(File modelsDir, String deviceKey, ModelVariant variant,
+                                    Map<String, Long> latenciesMs) throws Exception {
+        JSONObject obj = new JSONObject();
+        obj.put("device", deviceKey);
+        obj.put("variant", variant.name);
+        JSONObject results = new JSONObject();
+        for (Map.Entry<String, Long> entry : latenciesMs.entrySet()) {
+            results.put(entry.getKey(), entry.getValue().longValue());
+        }
+        obj.put("latenciesMs", results);
+        try (FileOutputStream fos = new FileOutputStream(new File(modelsDir, SELECTION_FILE))) {
+            fos.write(obj.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private static String readFile(File file) throws Exception {
+        try (FileInputStream fis = new FileInputStream(file)) {
+            byte[] data = new byte[(int) file.length()];
+            fis.read(data);
+            return new String(data, StandardCharsets.UTF_8);
+        }
+    }
+}
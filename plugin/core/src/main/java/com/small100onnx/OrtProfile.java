@@ -0,0 +1,155 @@
+package com.small100onnx;
+
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ORT Profile - per-operator and per-node kernel time from ORT session traces
+ *
+ * Reads the Chrome-trace JSON written by SessionOptions.enableProfiling
+ * line by line (ORT writes one event per line), so traces of long
+ * translations are never held in memory. Only "<node>_kernel_time" node
+ * events and "model_run" session events are aggregated.
+ *
+ * Plain Java (no Android APIs) so it can be tested on the JVM.
+ */
+public class OrtProfile {
+    private static final String KERNEL_SUFFIX = "_kernel_time";
+    private static final String MODEL_RUN = "model_run";
+
+    /**
+     * Aggregated kernel time of one operator type or node
+     */
+    public static class Entry {
+        public final String name;
+        public final String opType;
+        public long count;
+        public long totalUs;
+        public long maxUs;
+
+        Entry(String name, String opType) {
+            this.name = name;
+            this.opType = opType;
+        }
+
+        void add(long us) {
+            count++;
+            totalUs += us;
+            if (us > maxUs) maxUs = us;
+        }
+
+        public double totalMs() {
+            return totalUs / 1000.0;
+        }
+
+        public double maxMs() {
+            return maxUs / 1000.0;
+        }
+    }
+
+    private final Map<String, Entry> operators = new HashMap<>();
+    private final Map<String, Entry> nodes = new HashMap<>();
+    private long runs;
+    private long runUs;
+    private long kernelUs;
+
+    /**
+     * Aggregate one or more traces of the same session
+     */
+    public static OrtProfile parse(List<File> traces) throws IOException {
+        OrtProfile profile = new OrtProfile();
+        for (File trace : traces) profile.read(trace);
+        return profile;
+    }
+
+    /**
+     * Operator types by total kernel time, largest first
+     */
+    public List<Entry> getOperators() {
+        return sorted(operators, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Nodes by total kernel time, largest first
+     */
+    public List<Entry> getTopNodes(int limit) {
+        return sorted(nodes, limit);
+    }
+
+    /** Session.run calls captured */
+    public long getRuns() {
+        return runs;
+    }
+
+    /** Wall time inside Session.run, including ORT overhead between kernels */
+    public double getRunMs() {
+        return runUs / 1000.0;
+    }
+
+    /** Sum of kernel times */
+    public double getKernelMs() {
+        return kernelUs / 1000.0;
+    }
+
+    // Private helpers
+
+    private void read(File trace) throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(trace), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // Cheap filter first: fence events are two thirds of a trace
+                if (!line.contains(KERNEL_SUFFIX) && !line.contains(MODEL_RUN)) continue;
+                line = line.trim();
+                if (line.endsWith(",")) line = line.substring(0, line.length() - 1);
+                if (!line.startsWith("{")) continue;
+                addEvent(new JSONObject(line));
+            }
+        }
+    }
+
+    private void addEvent(JSONObject event) {
+        String name = event.optString("name");
+        long us = event.optLong("dur");
+        if ("Session".equals(event.optString("cat"))) {
+            if (MODEL_RUN.equals(name)) {
+                runs++;
+                runUs += us;
+            }
+            return;
+        }
+        if (!name.endsWith(KERNEL_SUFFIX)) return;
+
+        JSONObject args = event.optJSONObject("args");
+        String opType = args != null ? args.optString("op_name", "?") : "?";
+        String node = name.substring(0, name.length() - KERNEL_SUFFIX.length());
+        kernelUs += us;
+        entry(operators, opType, opType).add(us);
+        entry(nodes, node, opType).add(us);
+    }
+
+    private static Entry entry(Map<String, Entry> map, String name, String opType) {
+        Entry entry = map.get(name);
+        if (entry == null) {
+            entry = new Entry(name, opType);
+            map.put(name, entry);
+        }
+        return entry;
+    }
+
+    private static List<Entry> sorted(Map<String, Entry> map, int limit) {
+        List<Entry> entries = new ArrayList<>(map.values());
+        entries.sort((a, b) -> Long.compare(b.totalUs, a.totalUs));
+        return entries.size() > limit ? new ArrayList<>(entries.subList(0, limit)) : entries;
+    }
+}
@@ -0,0 +1,57 @@
+package com.small100onnx;
+
+/**
+ * Platform - host services the engine uses but plain Java doesn't define
+ * The defaults suit a desktop or server JVM: warnings and errors go to
+ * stderr, debug and info output only with -Dsmall100.debug=true, the device
+ * key describes the host, and background work runs at minimum Java thread
+ * priority. Hosts replace them once at startup with install (the Android
+ * plugin routes logs to logcat and priorities to android.os.Process).
+ */
+public class Platform {
+    // Same values as android.util.Log priorities
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+
+    private static final boolean VERBOSE = Boolean.getBoolean("small100.debug");
+    private static volatile Platform current = new Platform();
+
+    public static Platform get() {
+        return current;
+    }
+
+    /**
+     * Replace the platform hooks for the whole process
+     */
+    public static void install(Platform platform) {
+        if (platform == null) throw new IllegalArgumentException("platform is null");
+        current = platform;
+    }
+
+    /**
+     * Write one log message
+     * @param error Optional cause, null if none
+     */
+    public void log(int priority, String tag, String message, Throwable error) {
+        if (priority < WARN && !VERBOSE) return;
+        String level = priority >= ERROR ? "E" : priority == WARN ? "W" : priority == INFO ? "I" : "D";
+        System.err.println(level + "/" + tag + ": " + message + (error != null ? " " + error : ""));
+    }
+
+    /**
+     * Identifies the hardware a model variant selection was measured on
+     */
+    public String deviceKey() {
+        return System.getProperty("os.arch", "unknown") + "/" + System.getProperty("os.name", "unknown")
+            + "/" + Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Lower the calling thread's priority for work that yields to requests
+     */
+    public void setBackgroundPriority() {
+        Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+    }
+}
@@ -0,0 +1,172 @@
+package com.small100onnx;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pool Benchmark - picks the replicas x intra-op threads split with the
+ * highest throughput on this device
+ * Loads a pool per candidate split, keeps every replica busy with batch-1
+ * translations for a few seconds and persists the winner per device key,
+ * like VariantBenchmark does for model variants. One core leaves nothing
+ * to compare (1x1).
+ */
+public class PoolBenchmark {
+    private static final String TAG = "PoolBenchmark";
+    public static final String SELECTION_FILE = "selected_pool_split.json";
+    public static final int DEFAULT_MAX_REPLICAS = 8;
+
+    private static final long MEASURE_MS = 3000;
+    // Clients per replica, so a replica never idles between requests
+    private static final int CLIENTS_PER_REPLICA = 2;
+    private static final String[] SENTENCES = {
+        "The meeting has been moved to Thursday afternoon.",
+        "Please check the attached report before tomorrow.",
+        "Our store opens at nine and closes at six.",
+        "Thank you for your order, it will ship soon."
+    };
+
+    /**
+     * Result of one benchmark run
+     */
+    public static class Result {
+        // Fastest measured split, null if none could run
+        public final TranslatorPool.Split best;
+        // Translations per second per split ("2x4"); failed splits are absent
+        public final Map<String, Double> throughput;
+
+        Result(TranslatorPool.Split best, Map<String, Double> throughput) {
+            this.best = best;
+            this.throughput = throughput;
+        }
+    }
+
+    /**
+     * Persisted split, or benchmark now and persist
+     */
+    public static TranslatorPool.Split selectOrBenchmark(File modelsDir, int maxReplicas) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        List<TranslatorPool.Split> candidates = TranslatorPool.Split.candidates(cores, maxReplicas);
+        if (candidates.size() < 2) return candidates.get(0);
+
+        String device = VariantBenchmark.deviceKey();
+        TranslatorPool.Split selected = loadSelected(modelsDir, device);
+        if (selected != null) return selected;
+
+        Result result = run(modelsDir, candidates);
+        if (result.best == null) {
+            EngineLog.w(TAG, "No split measured, selection not saved");
+            return candidates.get(0);
+        }
+        try {
+            saveSelected(modelsDir, device, result);
+        } catch (Exception e) {
+            EngineLog.w(TAG, "Selection not saved", e);
+        }
+        return result.best;
+    }
+
+    /**
+     * Benchmark candidates; best is null if none could run
+     */
+    public static Result run(File modelsDir, List<TranslatorPool.Split> candidates) {
+        Map<String, Double> throughput = new LinkedHashMap<>();
+        TranslatorPool.Split best = null;
+        double bestRate = 0;
+
+        for (TranslatorPool.Split split : candidates) {
+            try {
+                double rate = measure(modelsDir, split);
+                throughput.put(split.toString(), rate);
+                EngineLog.d(TAG, split + ": " + String.format("%.2f", rate) + " translations/s");
+                if (rate > bestRate) {
+                    bestRate = rate;
+                    best = split;
+                }
+            } catch (Exception e) {
+                EngineLog.w(TAG, split + ": skipped", e);
+            }
+        }
+
+        EngineLog.d(TAG, "Selected " + best + " " + throughput);
+        return new Result(best, throughput);
+    }
+
+    public static TranslatorPool.Split loadSelected(File modelsDir, String deviceKey) {
+        File file = new File(modelsDir, SELECTION_FILE);
+        if (!file.exists()) return null;
+        try (FileInputStream in = new FileInputStream(file)) {
+            byte[] data = new byte[(int) file.length()];
+            int read = 0;
+            while (read < data.length) read += in.read(data, read, data.length - read);
+            JSONObject obj = new JSONObject(new String(data, StandardCharsets.UTF_8));
+            // Only valid on the device (and core count) that measured it
+            if (!deviceKey.equals(obj.optString("device"))) return null;
+            return new TranslatorPool.Split(obj.getInt("replicas"), obj.getInt("intraOpThreads"));
+        } catch (Exception ignored) {
+            // Treat as not selected
+        }
+        return null;
+    }
+
+    private static void saveSelected(File modelsDir, String deviceKey, Result result) throws Exception {
+        JSONObject obj = new JSONObject();
+        obj.put("device", deviceKey);
+        obj.put("replicas", result.best.replicas);
+        obj.put("intraOpThreads", result.best.intraOpThreads);
+        obj.put("throughput", new JSONObject(result.throughput));
+        try (FileOutputStream fos = new FileOutputStream(new File(modelsDir, SELECTION_FILE))) {
+            fos.write(obj.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Translations per second with every replica busy
+     */
+    private static double measure(File modelsDir, TranslatorPool.Split split) throws Exception {
+        TranslatorPool pool = TranslatorPool.create(modelsDir, split);
+        try {
+            // Repeats must reach the models, and the benchmark must not fill the memory
+            pool.getMemory().setEnabled(false);
+            String target = pool.getSupportedLanguages()[0];
+            for (Translator replica : pool.getReplicas()) replica.translate(SENTENCES[0], target);
+
+            AtomicLong done = new AtomicLong();
+            AtomicReference<Exception> failure = new AtomicReference<>();
+            long start = System.nanoTime();
+            long deadline = start + MEASURE_MS * 1_000_000;
+            List<Thread> clients = new ArrayList<>();
+            for (int c = 0; c < split.replicas * CLIENTS_PER_REPLICA; c++) {
+                int first = c;
+                Thread client = new Thread(() -> {
+                    try {
+                        for (int i = first; System.nanoTime() < deadline; i++) {
+                            pool.translate(SENTENCES[i % SENTENCES.length], target);
+                            done.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }, "Small100-PoolBenchmark-" + c);
+                client.start();
+                clients.add(client);
+            }
+            for (Thread client : clients) client.join();
+            if (failure.get() != null) throw failure.get();
+            // Calls running at the deadline finish after it; count the time they took
+            return done.get() / ((System.nanoTime() - start) / 1e9);
+        } finally {
+            pool.close();
+        }
+    }
+}
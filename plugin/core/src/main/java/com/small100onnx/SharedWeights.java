@@ -0,0 +1,260 @@
+package com.small100onnx;
+
+import ai.onnxruntime.OnnxJavaType;
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shared Weights - one copy of a model's weights for all sessions of it
+ *
+ * Each OrtSession normally keeps its own copy of every initializer, so N
+ * replicas of a model hold N copies. Here the large raw_data initializers are
+ * found in the .onnx protobuf, wrapped as tensors over a read-only memory map
+ * of the file (no copy, pages shared through the page cache) and handed to
+ * every session via SessionOptions.addInitializer, which makes ORT use them
+ * instead of loading its own.
+ *
+ * Kernels that prepack their weights (e.g. MatMulInteger) still keep a
+ * packed copy per session: sharing those needs ORT's prepacked weights
+ * container, which the Java API (1.18) doesn't expose.
+ */
+public class SharedWeights implements AutoCloseable {
+    private static final String TAG = "SharedWeights";
+    // Small initializers (shapes, scales) are cheap per session and may be constant-folded
+    private static final int MIN_SHARED_BYTES = 64 * 1024;
+
+    // Model path -> initializer name -> tensor over the mapped file
+    private final Map<String, Map<String, OnnxTensor>> models = new HashMap<>();
+    private long sharedBytes;
+
+    /**
+     * Add this model's shared initializers to options (mapping the file on first use)
+     */
+    public synchronized void addTo(OrtSession.SessionOptions options, File model) throws OrtException {
+        Map<String, OnnxTensor> initializers = models.get(model.getAbsolutePath());
+        if (initializers == null) {
+            try {
+                initializers = map(model);
+            } catch (IOException | RuntimeException e) {
+                // Unreadable layout: this model's sessions load their own weights
+                EngineLog.w(TAG, model.getName() + ": weights not shared", e);
+                initializers = new LinkedHashMap<>();
+            }
+            models.put(model.getAbsolutePath(), initializers);
+        }
+        for (Map.Entry<String, OnnxTensor> entry : initializers.entrySet()) {
+            options.addInitializer(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Bytes of weights held once instead of per session
+     */
+    public synchronized long getSharedBytes() {
+        return sharedBytes;
+    }
+
+    /**
+     * Close after every session using these weights is closed
+     */
+    @Override
+    public synchronized void close() {
+        for (Map<String, OnnxTensor> initializers : models.values()) {
+            for (OnnxTensor tensor : initializers.values()) tensor.close();
+        }
+        models.clear();
+        sharedBytes = 0;
+    }
+
+    // Private helpers
+
+    private Map<String, OnnxTensor> map(File model) throws IOException, OrtException {
+        MappedByteBuffer file;
+        try (RandomAccessFile raf = new RandomAccessFile(model, "r");
+             FileChannel channel = raf.getChannel()) {
+            // The mapping outlives the channel
+            file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        Map<String, OnnxTensor> initializers = new LinkedHashMap<>();
+        OrtEnvironment env = OrtEnvironment.getEnvironment();
+        long bytes = 0;
+        for (Initializer init : readInitializers(file)) {
+            OnnxJavaType type = javaType(init.dataType);
+            if (type == null || init.length < MIN_SHARED_BYTES) continue;
+            ByteBuffer data = file.duplicate();
+            data.position(init.offset).limit(init.offset + init.length);
+            initializers.put(init.name, OnnxTensor.createTensor(env,
+                data.slice().order(ByteOrder.LITTLE_ENDIAN), init.dims, type));
+            bytes += init.length;
+        }
+        sharedBytes += bytes;
+        EngineLog.d(TAG, model.getName() + ": sharing " + initializers.size() + " initializers, " + bytes + " bytes");
+        return initializers;
+    }
+
+    /**
+     * TensorProto data types with a fixed-size Java mapping
+     */
+    private static OnnxJavaType javaType(int dataType) {
+        switch (dataType) {
+            case 1: return OnnxJavaType.FLOAT;
+            case 2: return OnnxJavaType.UINT8;
+            case 3: return OnnxJavaType.INT8;
+            case 5: return OnnxJavaType.INT16;
+            case 6: return OnnxJavaType.INT32;
+            case 7: return OnnxJavaType.INT64;
+            case 10: return OnnxJavaType.FLOAT16;
+            case 11: return OnnxJavaType.DOUBLE;
+            default: return null;
+        }
+    }
+
+    static final class Initializer {
+        String name;
+        int dataType;
+        long[] dims = new long[0];
+        int offset;
+        int length;
+    }
+
+    /**
+     * Top-level graph initializers stored as raw_data
+     * ModelProto.graph (7) -> GraphProto.initializer (5) -> TensorProto
+     * { dims (1), data_type (2), name (8), raw_data (9), data_location (14) }
+     */
+    static List<Initializer> readInitializers(ByteBuffer model) {
+        List<Initializer> result = new ArrayList<>();
+        ProtoReader modelProto = new ProtoReader(model, 0, model.limit());
+        while (modelProto.next()) {
+            if (modelProto.field != 7 || modelProto.wireType != 2) {
+                modelProto.skip();
+                continue;
+            }
+            ProtoReader graph = modelProto.message();
+            while (graph.next()) {
+                if (graph.field != 5 || graph.wireType != 2) {
+                    graph.skip();
+                    continue;
+                }
+                Initializer init = readTensor(graph.message());
+                if (init != null) result.add(init);
+            }
+        }
+        return result;
+    }
+
+    private static Initializer readTensor(ProtoReader tensor) {
+        Initializer init = new Initializer();
+        List<Long> dims = new ArrayList<>();
+        boolean raw = false;
+        while (tensor.next()) {
+            if (tensor.field == 1 && tensor.wireType == 0) {
+                dims.add(tensor.varint());
+            } else if (tensor.field == 1 && tensor.wireType == 2) {
+                ProtoReader packed = tensor.message();
+                while (packed.position < packed.end) dims.add(packed.varint());
+            } else if (tensor.field == 2 && tensor.wireType == 0) {
+                init.dataType = (int) tensor.varint();
+            } else if (tensor.field == 8 && tensor.wireType == 2) {
+                init.name = tensor.string();
+            } else if (tensor.field == 9 && tensor.wireType == 2) {
+                int length = (int) tensor.varint();
+                init.offset = tensor.position;
+                init.length = length;
+                tensor.position += length;
+                raw = true;
+            } else if (tensor.field == 14 && tensor.wireType == 0) {
+                // External data: weights live in another file
+                if (tensor.varint() != 0) return null;
+            } else {
+                tensor.skip();
+            }
+        }
+        if (!raw || init.name == null) return null;
+        init.dims = new long[dims.size()];
+        for (int i = 0; i < init.dims.length; i++) init.dims[i] = dims.get(i);
+        return init;
+    }
+
+    /**
+     * Minimal protobuf wire format reader over a buffer range
+     */
+    private static final class ProtoReader {
+        private final ByteBuffer buffer;
+        private final int end;
+        private int position;
+        int field;
+        int wireType;
+
+        ProtoReader(ByteBuffer buffer, int start, int end) {
+            this.buffer = buffer;
+            this.position = start;
+            this.end = end;
+        }
+
+        boolean next() {
+            if (position >= end) return false;
+            long key = varint();
+            field = (int) (key >>> 3);
+            wireType = (int) (key & 7);
+            return true;
+        }
+
+        long varint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buffer.get(position++);
+                value |= (long) (b & 0x7f) << shift;
+                if (b >= 0) return value;
+            }
+            throw new IllegalStateException("Malformed varint at " + position);
+        }
+
+        ProtoReader message() {
+            int length = (int) varint();
+            ProtoReader reader = new ProtoReader(buffer, position, position + length);
+            position += length;
+            return reader;
+        }
+
+        String string() {
+            int length = (int) varint();
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) bytes[i] = buffer.get(position + i);
+            position += length;
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        void skip() {
+            switch (wireType) {
+                case 0: varint(); break;
+                case 1: position += 8; break;
+                case 2: {
+                    // Not position += varint(): that adds to the position from before the length
+                    int length = (int) varint();
+                    position += length;
+                    break;
+                }
+                case 5: position += 4; break;
+                default: throw new IllegalStateException("Unsupported wire type " + wireType + " at " + position);
+            }
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package com.small100onnx;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -13,8 +12,10 @@ import java.util.Set;
  */
 public class SimpleBPETokenizer {
     private Map<String, Integer> vocab;
-    private Map<Integer, String> reverseVocab;
+    // Indexed by token id; a flat array avoids ~128k boxed map entries
+    private String[] reverseVocab;
     private Set<String> specialTokens;
+    private long residentBytes;
     
     // Special token IDs for M2M100/SMALL100
     private static final int BOS_TOKEN_ID = 0;
@@ -24,13 +25,23 @@ public class SimpleBPETokenizer {
     
     public SimpleBPETokenizer(Map<String, Integer> vocab) {
         this.vocab = vocab;
-        this.reverseVocab = new HashMap<>();
         this.specialTokens = new HashSet<>();
         
         // Build reverse vocab for decoding
+        int maxId = -1;
+        long chars = 0;
         for (Map.Entry<String, Integer> entry : vocab.entrySet()) {
-            reverseVocab.put(entry.getValue(), entry.getKey());
+            maxId = Math.max(maxId, entry.getValue());
+            chars += entry.getKey().length();
         }
+        this.reverseVocab = new String[maxId + 1];
+        for (Map.Entry<String, Integer> entry : vocab.entrySet()) {
+            if (entry.getValue() >= 0) reverseVocab[entry.getValue()] = entry.getKey();
+        }
+        
+        // Approximate: map node + table slot + boxed Integer + String header per entry,
+        // 2 bytes per char, one reference per reverse slot
+        this.residentBytes = vocab.size() * (32L + 8 + 16 + 40) + chars * 2 + reverseVocab.length * 4L;
         
         // Mark special tokens
         specialTokens.add("<s>");
@@ -92,7 +103,7 @@ public class SimpleBPETokenizer {
         StringBuilder sb = new StringBuilder();
         
         for (int id : ids) {
-            String token = reverseVocab.get(id);
+            String token = reverseToken(id);
             if (token == null) continue;
             
             if (skipSpecialTokens && specialTokens.contains(token)) {
@@ -111,10 +122,21 @@ public class SimpleBPETokenizer {
      * Decode single token ID to string (for debugging)
      */
     public String decodeToken(int id) {
-        String token = reverseVocab.get(id);
+        String token = reverseToken(id);
         return token != null ? token : "<unknown>";
     }
     
+    private String reverseToken(int id) {
+        return id >= 0 && id < reverseVocab.length ? reverseVocab[id] : null;
+    }
+    
+    /**
+     * Approximate heap held by vocab structures in bytes
+     */
+    public long estimateResidentBytes() {
+        return residentBytes;
+    }
+    
     public int getVocabSize() {
         return vocab.size();
     }
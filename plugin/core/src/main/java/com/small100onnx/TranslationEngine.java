@@ -0,0 +1,983 @@
+package com.small100onnx;
+
+import ai.onnxruntime.NodeInfo;
+import ai.onnxruntime.OnnxJavaType;
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OnnxTensorLike;
+import ai.onnxruntime.OnnxValue;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import ai.onnxruntime.TensorInfo;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Translation Engine - handles ONNX model inference
+ * Manages encoder/decoder sessions and translation pipeline
+ *
+ * Decoders that take precomputed cross-attention keys/values
+ * (past_key_values.N.encoder.key/value) get them once per source sentence,
+ * either from encoder outputs named present.N.encoder.key/value or from the
+ * variant's crossKv init graph run on encoder_hidden_states. Encoder-side
+ * tensors are created once per sentence and reused by every decoder step.
+ *
+ * Decoders exported with a top-k tail (see TopKTail in the benchmark module)
+ * also output topk_log_probs/topk_logits/topk_indices for the last position.
+ * runDecoderStepTopK copies only those k entries to Java; the full logits
+ * stay in native memory until the next step in case the beam search needs
+ * them.
+ *
+ * runEncoderBatch encodes several rows of equal length at once (e.g. one
+ * source sentence per target language); runDecoderStepBatch then feeds each
+ * decoder input row the encoder row it belongs to. Encoder-side inputs
+ * expanded to a row pattern are cached for the next steps, and batched logits
+ * are written into a reused native buffer so only the last position of each
+ * row is copied to Java.
+ */
+public class TranslationEngine {
+    private static final String TAG = "TranslationEngine";
+    public static final String TOPK_LOG_PROBS = "topk_log_probs";
+    public static final String TOPK_LOGITS = "topk_logits";
+    public static final String TOPK_INDICES = "topk_indices";
+    // Decoder calls per batched step are split into chunks of at most this many rows
+    public static final int DEFAULT_MAX_BATCH_ROWS = 8;
+    // Row patterns whose expanded encoder-side inputs are kept (one per chunk)
+    private static final int ROW_INPUTS_CACHED = 4;
+    private static final int[] SINGLE_ROW = {0};
+    
+    private final OrtEnvironment ortEnv;
+    // Sessions may be created concurrently by Translator's init pipeline
+    private volatile OrtSession encoderSession;
+    private volatile OrtSession decoderSession;
+    // Optional init graph: encoder_hidden_states -> cross-attention K/V
+    private volatile OrtSession crossKvSession;
+    
+    // Model file sizes, used as resident size estimate while a session is loaded
+    private long encoderBytes;
+    private long decoderBytes;
+    private long crossKvBytes;
+    private File encoderFile;
+    private File decoderFile;
+    
+    // Trace directory while ORT profiling is on; traces of sessions closed meanwhile
+    private volatile File profileDir;
+    private final List<File> encoderTraces = new ArrayList<>();
+    private final List<File> decoderTraces = new ArrayList<>();
+    
+    // Cached encoder output for beam search, one entry per encoder row
+    private float[][][] cachedEncoderHidden;
+    private long[][] cachedAttentionMask;
+    private int cachedSeqLen;
+    private int cachedHiddenSize;
+    
+    // Per-sentence decoder inputs (all encoder rows in order), created on the first decoder step
+    private OnnxTensor cachedHiddenTensor;
+    private OnnxTensor cachedMaskTensor;
+    // Encoder result kept open while its cross K/V outputs are in use
+    private OrtSession.Result cachedCrossKvResult;
+    private Map<String, OnnxTensor> cachedCrossKv;
+    private long cachedCrossKvBytes;
+    // Decoder cross K/V input -> source output name; resolved on first use after a load
+    private volatile Map<String, String> crossKvWiring;
+    private volatile boolean crossKvFromEncoder;
+    // Last top-k step result, open until the next step so full logits stay reachable
+    private OrtSession.Result topKResult;
+    
+    // Batched decoding: encoder-side inputs per row pattern, pinned logits output buffer
+    private final Map<String, RowInputs> rowInputs = new LinkedHashMap<String, RowInputs>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, RowInputs> eldest) {
+            if (size() <= ROW_INPUTS_CACHED) return false;
+            eldest.getValue().close();
+            return true;
+        }
+    };
+    private ByteBuffer batchLogits;
+    // Decoder steps that reused cached cross K/V or row inputs, since the last takeCacheHits()
+    private long cacheHits;
+    private volatile int maxBatchRows = DEFAULT_MAX_BATCH_ROWS;
+    
+    // Session settings, read when a session is (re)opened
+    private volatile int intraOpThreads;
+    private volatile SharedWeights sharedWeights;
+    
+    public TranslationEngine() throws OrtException {
+        this.ortEnv = OrtEnvironment.getEnvironment();
+    }
+    
+    /**
+     * Load encoder and decoder models from directory
+     */
+    public void loadModels(File modelsDir) throws OrtException {
+        loadModels(modelsDir, ModelVariant.DEFAULT);
+    }
+    
+    /**
+     * Load encoder and decoder of a specific model variant
+     */
+    public void loadModels(File modelsDir, ModelVariant variant) throws OrtException {
+        loadEncoder(modelsDir, variant);
+        loadDecoder(modelsDir, variant);
+        
+        EngineLog.d(TAG, "Models loaded successfully (" + variant + ")");
+    }
+    
+    /**
+     * Load encoder session only
+     * Independent of loadDecoder, so both can run on separate threads
+     */
+    public void loadEncoder(File modelsDir, ModelVariant variant) throws OrtException {
+        File encoder = new File(modelsDir, variant.encoderFile);
+        encoderSession = ortEnv.createSession(encoder.getAbsolutePath(), sessionOptions("encoder", encoder));
+        encoderFile = encoder;
+        encoderBytes = encoder.length();
+        crossKvWiring = null;
+    }
+    
+    /**
+     * Load decoder session only
+     */
+    public void loadDecoder(File modelsDir, ModelVariant variant) throws OrtException {
+        File decoder = new File(modelsDir, variant.decoderFile);
+        decoderSession = ortEnv.createSession(decoder.getAbsolutePath(), sessionOptions("decoder", decoder));
+        decoderFile = decoder;
+        decoderBytes = decoder.length();
+        
+        // Init graph rides with the decoder: only decoders taking cross K/V need it
+        File crossKv = variant.crossKvFile != null ? new File(modelsDir, variant.crossKvFile) : null;
+        if (crossKv != null && crossKv.exists()) {
+            crossKvSession = ortEnv.createSession(crossKv.getAbsolutePath(), sessionOptions(null, crossKv));
+            crossKvBytes = crossKv.length();
+        }
+        crossKvWiring = null;
+    }
+    
+    /**
+     * Reopen loaded sessions with ORT op-level profiling into dir
+     * Sessions loaded later (reloads) are profiled too until stopProfiling.
+     * Not thread-safe against running inference; callers serialize.
+     */
+    public void startProfiling(File dir) throws OrtException {
+        dir.mkdirs();
+        profileDir = dir;
+        reopenSessions();
+    }
+    
+    /**
+     * End profiling and reopen loaded sessions without it
+     * @return Trace files per session ("encoder", "decoder"); the caller deletes them
+     */
+    public Map<String, List<File>> stopProfiling() throws OrtException {
+        endProfiling();
+        Map<String, List<File>> traces = new HashMap<>();
+        traces.put("encoder", new ArrayList<>(encoderTraces));
+        traces.put("decoder", new ArrayList<>(decoderTraces));
+        encoderTraces.clear();
+        decoderTraces.clear();
+        profileDir = null;
+        reopenSessions();
+        return traces;
+    }
+    
+    public boolean isProfiling() {
+        return profileDir != null;
+    }
+    
+    /**
+     * Run encoder on input tokens
+     * @return Encoder hidden states shape [batch, seq_len, hidden_size]
+     */
+    public float[][][] runEncoder(long[] inputIds, long[] attentionMask) throws OrtException {
+        return runEncoderBatch(new long[][]{inputIds}, new long[][]{attentionMask});
+    }
+    
+    /**
+     * Run encoder on several rows of the same length in one pass
+     * @return Encoder hidden states shape [rows, seq_len, hidden_size]
+     */
+    public float[][][] runEncoderBatch(long[][] inputIds, long[][] attentionMask) throws OrtException {
+        clearCache();
+        int rows = inputIds.length;
+        int length = inputIds[0].length;
+        long[] flatIds = new long[rows * length];
+        long[] flatMask = new long[rows * length];
+        for (int r = 0; r < rows; r++) {
+            if (inputIds[r].length != length || attentionMask[r].length != length) {
+                throw new IllegalArgumentException("Encoder rows differ in length");
+            }
+            System.arraycopy(inputIds[r], 0, flatIds, r * length, length);
+            System.arraycopy(attentionMask[r], 0, flatMask, r * length, length);
+        }
+        OnnxTensor inputIdsTensor = OnnxTensor.createTensor(ortEnv,
+            LongBuffer.wrap(flatIds), new long[]{rows, length});
+        OnnxTensor attMaskTensor = OnnxTensor.createTensor(ortEnv,
+            LongBuffer.wrap(flatMask), new long[]{rows, length});
+        
+        Map<String, OnnxTensor> inputs = new HashMap<>();
+        inputs.put("input_ids", inputIdsTensor);
+        inputs.put("attention_mask", attMaskTensor);
+        
+        OrtSession.Result result = encoderSession.run(inputs);
+        boolean keepResult = false;
+        try {
+            float[][][] hidden = (float[][][]) result.get(0).getValue();
+            
+            // Cache for decoder use
+            this.cachedEncoderHidden = hidden;
+            this.cachedAttentionMask = attentionMask;
+            this.cachedSeqLen = hidden[0].length;
+            this.cachedHiddenSize = hidden[0][0].length;
+            
+            // Cross K/V outputs stay valid only while the result is open
+            Map<String, OnnxTensor> crossKv = crossKvOutputs(result);
+            if (!crossKv.isEmpty()) {
+                cachedCrossKvResult = result;
+                cachedCrossKv = crossKv;
+                cachedCrossKvBytes = tensorBytes(crossKv);
+                keepResult = true;
+            }
+            
+            return hidden;
+        } finally {
+            if (!keepResult) result.close();
+            inputIdsTensor.close();
+            attMaskTensor.close();
+        }
+    }
+    
+    /**
+     * Run decoder step to get logits for next token
+     * Must call runEncoder first to cache encoder output
+     */
+    public float[] runDecoderStep(int[] decoderInputIds) throws OrtException {
+        if (cachedEncoderHidden == null) {
+            throw new IllegalStateException("Must call runEncoder first");
+        }
+        if (decoderSession == null) {
+            throw new IllegalStateException("Decoder model not loaded");
+        }
+        
+        closeTopKResult();
+        OnnxTensor decoderInputTensor = inputIdsTensor(decoderInputIds);
+        try (OrtSession.Result result = decoderSession.run(decoderInputs(decoderInputTensor, SINGLE_ROW))) {
+            return lastLogits(result.get(0));
+        } finally {
+            decoderInputTensor.close();
+        }
+    }
+    
+    /**
+     * Run one decoder step for several sequences of equal length
+     * Must call runEncoderBatch (or runEncoder) first.
+     * @param rows Encoder row each sequence attends to
+     * @return Next-token logits per sequence
+     */
+    public float[][] runDecoderStepBatch(int[][] decoderInputIds, int[] rows) throws OrtException {
+        if (cachedEncoderHidden == null) {
+            throw new IllegalStateException("Must call runEncoder first");
+        }
+        if (decoderSession == null) {
+            throw new IllegalStateException("Decoder model not loaded");
+        }
+        
+        closeTopKResult();
+        float[][] logits = new float[decoderInputIds.length][];
+        int chunkRows = maxBatchRows;
+        for (int from = 0; from < decoderInputIds.length; from += chunkRows) {
+            int to = Math.min(from + chunkRows, decoderInputIds.length);
+            runDecoderChunk(decoderInputIds, Arrays.copyOfRange(rows, from, to), from, logits);
+        }
+        return logits;
+    }
+    
+    /**
+     * Bound the rows per batched decoder call; logits of a call take
+     * rows * tgt_len * vocab floats of native memory
+     */
+    public void setMaxBatchRows(int rows) {
+        this.maxBatchRows = Math.max(1, rows);
+    }
+    
+    /**
+     * Intra-op threads per session (0 = ORT default, one per core)
+     * Takes effect for sessions loaded afterwards.
+     */
+    public void setIntraOpThreads(int threads) {
+        this.intraOpThreads = Math.max(0, threads);
+    }
+    
+    public int getIntraOpThreads() {
+        return intraOpThreads;
+    }
+    
+    /**
+     * Take large initializers from weights instead of loading a copy per
+     * session; for sessions loaded afterwards, which keep them in use
+     */
+    public void setSharedWeights(SharedWeights weights) {
+        this.sharedWeights = weights;
+    }
+    
+    /**
+     * Run decoder step and return only the k most likely next tokens
+     * Requires hasTopKOutput(). The returned TopK's full logits are readable
+     * until the next decoder step or clearCache.
+     */
+    public BeamSearchDecoder.TopK runDecoderStepTopK(int[] decoderInputIds) throws OrtException {
+        if (cachedEncoderHidden == null) {
+            throw new IllegalStateException("Must call runEncoder first");
+        }
+        if (decoderSession == null) {
+            throw new IllegalStateException("Decoder model not loaded");
+        }
+        
+        closeTopKResult();
+        OnnxTensor decoderInputTensor = inputIdsTensor(decoderInputIds);
+        OrtSession.Result result;
+        try {
+            result = decoderSession.run(decoderInputs(decoderInputTensor, SINGLE_ROW));
+        } finally {
+            decoderInputTensor.close();
+        }
+        topKResult = result;
+        
+        OnnxValue fullLogits = result.get(0);
+        OnnxTensor logProbs = null;
+        OnnxTensor logits = null;
+        OnnxTensor indices = null;
+        for (Map.Entry<String, OnnxValue> entry : result) {
+            if (entry.getKey().equals("logits")) {
+                fullLogits = entry.getValue();
+            } else if (entry.getKey().equals(TOPK_LOG_PROBS)) {
+                logProbs = (OnnxTensor) entry.getValue();
+            } else if (entry.getKey().equals(TOPK_LOGITS)) {
+                logits = (OnnxTensor) entry.getValue();
+            } else if (entry.getKey().equals(TOPK_INDICES)) {
+                indices = (OnnxTensor) entry.getValue();
+            }
+        }
+        if (logProbs == null || logits == null || indices == null) {
+            throw new IllegalStateException("Decoder has no top-k outputs");
+        }
+        
+        // [batch, positions, k]: the last k entries belong to the last position
+        long[] shape = indices.getInfo().getShape();
+        int k = (int) shape[shape.length - 1];
+        FloatBuffer logProbBuffer = logProbs.getFloatBuffer();
+        FloatBuffer logitBuffer = logits.getFloatBuffer();
+        LongBuffer indexBuffer = indices.getLongBuffer();
+        int offset = indexBuffer.remaining() - k;
+        
+        int[] ids = new int[k];
+        float[] values = new float[k];
+        for (int i = 0; i < k; i++) {
+            ids[i] = (int) indexBuffer.get(offset + i);
+            values[i] = logitBuffer.get(offset + i);
+        }
+        // log p = logit - logSumExp for every entry; the first is the most precise
+        float logSumExp = values[0] - logProbBuffer.get(offset);
+        return new StepTopK(ids, values, logSumExp, fullLogits);
+    }
+    
+    /**
+     * Check if the decoder outputs top-k candidates next to its logits
+     */
+    public boolean hasTopKOutput() {
+        OrtSession session = decoderSession;
+        if (session == null) return false;
+        try {
+            Set<String> outputs = session.getOutputNames();
+            return outputs.contains(TOPK_LOG_PROBS) && outputs.contains(TOPK_LOGITS)
+                && outputs.contains(TOPK_INDICES);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Clear cached encoder output
+     */
+    public void clearCache() {
+        closeTopKResult();
+        for (RowInputs inputs : rowInputs.values()) inputs.close();
+        rowInputs.clear();
+        batchLogits = null;
+        cachedEncoderHidden = null;
+        cachedAttentionMask = null;
+        closeQuietly(cachedHiddenTensor);
+        closeQuietly(cachedMaskTensor);
+        cachedHiddenTensor = null;
+        cachedMaskTensor = null;
+        if (cachedCrossKvResult != null) {
+            cachedCrossKvResult.close();
+        } else if (cachedCrossKv != null) {
+            for (OnnxTensor tensor : cachedCrossKv.values()) closeQuietly(tensor);
+        }
+        cachedCrossKvResult = null;
+        cachedCrossKv = null;
+        cachedCrossKvBytes = 0;
+    }
+    
+    /**
+     * Check if models are loaded
+     */
+    public boolean isReady() {
+        return encoderSession != null && decoderSession != null;
+    }
+    
+    /**
+     * Check if the decoder only needs the inputs runDecoderStep feeds
+     * (exports with self-attention past key/values or use_cache_branch are not supported)
+     */
+    public boolean hasSupportedDecoderInputs() {
+        if (decoderSession == null) return false;
+        for (String name : decoderSession.getInputNames()) {
+            if (!name.equals("input_ids") && !name.equals("encoder_hidden_states")
+                    && !name.equals("encoder_attention_mask") && !isCrossKvName(name)) {
+                return false;
+            }
+        }
+        try {
+            crossKvWiring();
+            return true;
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Check if the decoder takes precomputed cross-attention K/V
+     */
+    public boolean usesCrossKv() {
+        return decoderSession != null && !crossKvWiring().isEmpty();
+    }
+    
+    /**
+     * Check if encoder is loaded (decoder may still be loading)
+     */
+    public boolean isEncoderReady() {
+        return encoderSession != null;
+    }
+    
+    /**
+     * Close and release resources
+     */
+    public void close() {
+        clearCache();
+        // Sessions closed while profiling keep their traces for stopProfiling
+        endProfiling();
+        if (encoderSession != null) {
+            try { encoderSession.close(); } catch (Exception ignored) {}
+            encoderSession = null;
+        }
+        if (decoderSession != null) {
+            try { decoderSession.close(); } catch (Exception ignored) {}
+            decoderSession = null;
+        }
+        if (crossKvSession != null) {
+            try { crossKvSession.close(); } catch (Exception ignored) {}
+            crossKvSession = null;
+        }
+        crossKvWiring = null;
+    }
+    
+    /**
+     * Encoder hidden states as a decoder input, flattened once per sentence
+     */
+    private OnnxTensor hiddenTensor() throws OrtException {
+        if (cachedHiddenTensor == null) {
+            cachedHiddenTensor = createHiddenTensor(allRows());
+        }
+        return cachedHiddenTensor;
+    }
+    
+    private OnnxTensor maskTensor() throws OrtException {
+        if (cachedMaskTensor == null) {
+            cachedMaskTensor = createMaskTensor(allRows());
+        }
+        return cachedMaskTensor;
+    }
+    
+    private OnnxTensor createHiddenTensor(int[] rows) throws OrtException {
+        int rowSize = cachedSeqLen * cachedHiddenSize;
+        float[] flatHidden = new float[rows.length * rowSize];
+        for (int r = 0; r < rows.length; r++) {
+            for (int s = 0; s < cachedSeqLen; s++) {
+                System.arraycopy(cachedEncoderHidden[rows[r]][s], 0, flatHidden,
+                    r * rowSize + s * cachedHiddenSize, cachedHiddenSize);
+            }
+        }
+        return OnnxTensor.createTensor(ortEnv,
+            FloatBuffer.wrap(flatHidden), new long[]{rows.length, cachedSeqLen, cachedHiddenSize});
+    }
+    
+    private OnnxTensor createMaskTensor(int[] rows) throws OrtException {
+        long[] flatMask = new long[rows.length * cachedSeqLen];
+        for (int r = 0; r < rows.length; r++) {
+            System.arraycopy(cachedAttentionMask[rows[r]], 0, flatMask, r * cachedSeqLen, cachedSeqLen);
+        }
+        return OnnxTensor.createTensor(ortEnv, LongBuffer.wrap(flatMask), new long[]{rows.length, cachedSeqLen});
+    }
+    
+    private int[] allRows() {
+        int[] rows = new int[cachedEncoderHidden.length];
+        for (int r = 0; r < rows.length; r++) rows[r] = r;
+        return rows;
+    }
+    
+    private boolean isAllRows(int[] rows) {
+        if (rows.length != cachedEncoderHidden.length) return false;
+        for (int r = 0; r < rows.length; r++) {
+            if (rows[r] != r) return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Cross K/V for the current sentence: encoder outputs, or one init graph run
+     */
+    private Map<String, OnnxTensor> crossKvTensors() throws OrtException {
+        if (cachedCrossKv != null) {
+            cacheHits++;
+            return cachedCrossKv;
+        }
+        if (crossKvFromEncoder) {
+            throw new IllegalStateException("Encoder returned no cross-attention K/V");
+        }
+        
+        Map<String, OnnxTensorLike> inputs = new HashMap<>();
+        for (String name : crossKvSession.getInputNames()) {
+            if (name.equals("encoder_hidden_states")) {
+                inputs.put(name, hiddenTensor());
+            } else if (name.equals("encoder_attention_mask") || name.equals("attention_mask")) {
+                inputs.put(name, maskTensor());
+            }
+        }
+        OrtSession.Result result = crossKvSession.run(inputs);
+        cachedCrossKvResult = result;
+        cachedCrossKv = crossKvOutputs(result);
+        cachedCrossKvBytes = tensorBytes(cachedCrossKv);
+        return cachedCrossKv;
+    }
+    
+    /**
+     * Map each decoder cross K/V input to an output of the encoder or the init graph
+     * Outputs match by the same name or with "present." for "past_key_values.".
+     */
+    private Map<String, String> crossKvWiring() {
+        Map<String, String> wiring = crossKvWiring;
+        if (wiring != null) return wiring;
+        
+        List<String> needed = new ArrayList<>();
+        for (String name : decoderSession.getInputNames()) {
+            if (isCrossKvName(name)) needed.add(name);
+        }
+        wiring = new HashMap<>();
+        boolean fromEncoder = false;
+        if (!needed.isEmpty()) {
+            OrtSession encoder = encoderSession;
+            OrtSession init = crossKvSession;
+            if (encoder != null && (wiring = wire(needed, encoder.getOutputNames())) != null) {
+                fromEncoder = true;
+            } else if (init == null || (wiring = wire(needed, init.getOutputNames())) == null) {
+                throw new IllegalStateException("Decoder takes " + needed
+                    + " but neither the encoder nor a crossKv init graph provides them");
+            }
+            EngineLog.d(TAG, "Cross-attention K/V from " + (fromEncoder ? "encoder" : "init graph")
+                + ": " + wiring.size() + " tensors");
+        }
+        crossKvFromEncoder = fromEncoder;
+        crossKvWiring = wiring;
+        return wiring;
+    }
+    
+    private static Map<String, String> wire(List<String> inputs, Set<String> outputs) {
+        Map<String, String> wiring = new HashMap<>();
+        for (String input : inputs) {
+            String present = input.replace("past_key_values.", "present.");
+            if (outputs.contains(input)) {
+                wiring.put(input, input);
+            } else if (outputs.contains(present)) {
+                wiring.put(input, present);
+            } else {
+                return null;
+            }
+        }
+        return wiring;
+    }
+    
+    private static boolean isCrossKvName(String name) {
+        return name.contains(".encoder.key") || name.contains(".encoder.value");
+    }
+    
+    private static Map<String, OnnxTensor> crossKvOutputs(OrtSession.Result result) {
+        Map<String, OnnxTensor> tensors = new HashMap<>();
+        for (Map.Entry<String, OnnxValue> entry : result) {
+            if (isCrossKvName(entry.getKey()) && entry.getValue() instanceof OnnxTensor) {
+                tensors.put(entry.getKey(), (OnnxTensor) entry.getValue());
+            }
+        }
+        return tensors;
+    }
+    
+    private static long tensorBytes(Map<String, OnnxTensor> tensors) {
+        long bytes = 0;
+        for (OnnxTensor tensor : tensors.values()) {
+            long elements = 1;
+            for (long dim : tensor.getInfo().getShape()) elements *= dim;
+            bytes += elements * 4;
+        }
+        return bytes;
+    }
+    
+    private static void closeQuietly(OnnxTensor tensor) {
+        if (tensor != null) tensor.close();
+    }
+    
+    private void closeTopKResult() {
+        if (topKResult != null) {
+            topKResult.close();
+            topKResult = null;
+        }
+    }
+    
+    private OnnxTensor inputIdsTensor(int[] decoderInputIds) throws OrtException {
+        long[] inputIds = new long[decoderInputIds.length];
+        for (int i = 0; i < decoderInputIds.length; i++) {
+            inputIds[i] = decoderInputIds[i];
+        }
+        return OnnxTensor.createTensor(ortEnv, LongBuffer.wrap(inputIds), new long[]{1, inputIds.length});
+    }
+    
+    /**
+     * input_ids plus the per-sentence inputs the decoder declares
+     * @param rows Encoder row of each input_ids row
+     */
+    private Map<String, OnnxTensorLike> decoderInputs(OnnxTensor inputIds, int[] rows) throws OrtException {
+        RowInputs expanded = null;
+        if (!isAllRows(rows)) {
+            String key = Arrays.toString(rows);
+            expanded = rowInputs.get(key);
+            if (expanded == null) {
+                expanded = new RowInputs(rows);
+                rowInputs.put(key, expanded);
+            } else {
+                cacheHits++;
+            }
+        }
+        
+        Map<String, OnnxTensorLike> inputs = new HashMap<>();
+        inputs.put("input_ids", inputIds);
+        for (String name : decoderSession.getInputNames()) {
+            if (name.equals("encoder_hidden_states")) {
+                inputs.put(name, expanded != null ? expanded.hidden() : hiddenTensor());
+            } else if (name.equals("encoder_attention_mask")) {
+                inputs.put(name, expanded != null ? expanded.mask() : maskTensor());
+            }
+        }
+        Map<String, String> wiring = crossKvWiring();
+        if (!wiring.isEmpty()) {
+            Map<String, OnnxTensor> crossKv = expanded != null ? expanded.crossKv() : crossKvTensors();
+            for (Map.Entry<String, String> entry : wiring.entrySet()) {
+                inputs.put(entry.getKey(), crossKv.get(entry.getValue()));
+            }
+        }
+        return inputs;
+    }
+    
+    /**
+     * One chunk of a batched step; fills logits[from..] with last-position logits
+     * A static vocab dimension lets ORT write into batchLogits directly, so
+     * earlier positions are never copied to the Java heap.
+     */
+    private void runDecoderChunk(int[][] decoderInputIds, int[] rows, int from, float[][] logits)
+            throws OrtException {
+        int batch = rows.length;
+        int length = decoderInputIds[from].length;
+        long[] flatIds = new long[batch * length];
+        for (int b = 0; b < batch; b++) {
+            int[] ids = decoderInputIds[from + b];
+            if (ids.length != length) throw new IllegalArgumentException("Decoder rows differ in length");
+            for (int i = 0; i < length; i++) flatIds[b * length + i] = ids[i];
+        }
+        OnnxTensor inputIds = OnnxTensor.createTensor(ortEnv, LongBuffer.wrap(flatIds), new long[]{batch, length});
+        try {
+            Map<String, OnnxTensorLike> inputs = decoderInputs(inputIds, rows);
+            long vocab = logitsVocabSize();
+            if (vocab <= 0) {
+                try (OrtSession.Result result = decoderSession.run(inputs)) {
+                    FloatBuffer all = ((OnnxTensor) result.get(0)).getFloatBuffer();
+                    readLastPositions(all, batch, length, all.capacity() / (batch * length), from, logits);
+                }
+                return;
+            }
+            
+            long bytes = batch * length * vocab * 4;
+            if (bytes > Integer.MAX_VALUE) throw new IllegalStateException("Batched logits exceed 2 GB");
+            if (batchLogits == null || batchLogits.capacity() < bytes) {
+                batchLogits = ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+            }
+            ByteBuffer view = batchLogits.duplicate().order(ByteOrder.nativeOrder());
+            view.limit((int) bytes);
+            FloatBuffer pinned = view.asFloatBuffer();
+            try (OnnxTensor output = OnnxTensor.createTensor(ortEnv, pinned, new long[]{batch, length, vocab})) {
+                // Logits land in the pinned buffer; the result only wraps the bound output
+                decoderSession.run(inputs, Collections.singletonMap("logits", output)).close();
+                readLastPositions(pinned, batch, length, (int) vocab, from, logits);
+            }
+        } finally {
+            inputIds.close();
+        }
+    }
+    
+    private static void readLastPositions(FloatBuffer all, int batch, int length, int vocab, int from,
+                                          float[][] logits) {
+        for (int b = 0; b < batch; b++) {
+            float[] row = new float[vocab];
+            all.position((b * length + length - 1) * vocab);
+            all.get(row);
+            logits[from + b] = row;
+        }
+    }
+    
+    /**
+     * Static last dimension of the logits output, or -1 if dynamic
+     */
+    private long logitsVocabSize() throws OrtException {
+        NodeInfo info = decoderSession.getOutputInfo().get("logits");
+        if (info == null || !(info.getInfo() instanceof TensorInfo)) return -1;
+        long[] shape = ((TensorInfo) info.getInfo()).getShape();
+        return shape.length == 3 ? shape[2] : -1;
+    }
+    
+    /**
+     * Copy of the last position's logits ([1, positions, vocab])
+     */
+    private static float[] lastLogits(OnnxValue value) throws OrtException {
+        float[][][] logits = (float[][][]) value.getValue();
+        int lastPos = logits[0].length - 1;
+        return Arrays.copyOf(logits[0][lastPos], logits[0][lastPos].length);
+    }
+    
+    /**
+     * Encoder-side decoder inputs expanded to one row pattern, created on first use
+     */
+    private class RowInputs {
+        private final int[] rows;
+        private OnnxTensor hidden;
+        private OnnxTensor mask;
+        private Map<String, OnnxTensor> crossKv;
+        
+        RowInputs(int[] rows) {
+            this.rows = rows;
+        }
+        
+        OnnxTensor hidden() throws OrtException {
+            if (hidden == null) hidden = createHiddenTensor(rows);
+            return hidden;
+        }
+        
+        OnnxTensor mask() throws OrtException {
+            if (mask == null) mask = createMaskTensor(rows);
+            return mask;
+        }
+        
+        /** Rows of the sentence's cross K/V, copied once per pattern */
+        Map<String, OnnxTensor> crossKv() throws OrtException {
+            if (crossKv == null) {
+                Map<String, OnnxTensor> gathered = new HashMap<>();
+                try {
+                    for (Map.Entry<String, OnnxTensor> entry : crossKvTensors().entrySet()) {
+                        gathered.put(entry.getKey(), gatherRows(entry.getValue()));
+                    }
+                } catch (OrtException | RuntimeException e) {
+                    for (OnnxTensor tensor : gathered.values()) tensor.close();
+                    throw e;
+                }
+                crossKv = gathered;
+            }
+            return crossKv;
+        }
+        
+        long bytes() {
+            long bytes = hidden != null ? (long) rows.length * cachedSeqLen * cachedHiddenSize * 4 : 0;
+            return bytes + (crossKv != null ? tensorBytes(crossKv) : 0);
+        }
+        
+        void close() {
+            closeQuietly(hidden);
+            closeQuietly(mask);
+            if (crossKv != null) {
+                for (OnnxTensor tensor : crossKv.values()) tensor.close();
+            }
+        }
+        
+        private OnnxTensor gatherRows(OnnxTensor source) throws OrtException {
+            if (source.getInfo().type != OnnxJavaType.FLOAT) {
+                throw new IllegalStateException("Batched decoding needs float cross-attention K/V");
+            }
+            long[] shape = source.getInfo().getShape().clone();
+            FloatBuffer all = source.getFloatBuffer();
+            int rowSize = (int) (all.capacity() / shape[0]);
+            float[] gathered = new float[rows.length * rowSize];
+            for (int r = 0; r < rows.length; r++) {
+                all.position(rows[r] * rowSize);
+                all.get(gathered, r * rowSize, rowSize);
+            }
+            shape[0] = rows.length;
+            return OnnxTensor.createTensor(ortEnv, FloatBuffer.wrap(gathered), shape);
+        }
+    }
+    
+    /**
+     * Top-k of one step; full logits are read from the still-open result on demand
+     */
+    private class StepTopK implements BeamSearchDecoder.TopK {
+        private final int[] ids;
+        private final float[] logits;
+        private final float logSumExp;
+        private final OrtSession.Result result;
+        private final OnnxValue fullLogits;
+        
+        StepTopK(int[] ids, float[] logits, float logSumExp, OnnxValue fullLogits) {
+            this.ids = ids;
+            this.logits = logits;
+            this.logSumExp = logSumExp;
+            this.result = topKResult;
+            this.fullLogits = fullLogits;
+        }
+        
+        @Override
+        public int[] ids() {
+            return ids;
+        }
+        
+        @Override
+        public float[] logits() {
+            return logits;
+        }
+        
+        @Override
+        public float logSumExp() {
+            return logSumExp;
+        }
+        
+        @Override
+        public float[] fullLogits() throws OrtException {
+            if (topKResult != result) {
+                throw new IllegalStateException("Full logits are only available until the next decoder step");
+            }
+            return lastLogits(fullLogits);
+        }
+    }
+    
+    /**
+     * @param name Trace name while profiling; null never profiles
+     */
+    private OrtSession.SessionOptions sessionOptions(String name, File model) throws OrtException {
+        OrtSession.SessionOptions options = new OrtSession.SessionOptions();
+        if (intraOpThreads > 0) options.setIntraOpNumThreads(intraOpThreads);
+        if (sharedWeights != null) sharedWeights.addTo(options, model);
+        File dir = profileDir;
+        if (dir != null && name != null) {
+            // ORT appends a timestamp and .json to the prefix
+            options.enableProfiling(new File(dir, name).getAbsolutePath());
+        }
+        return options;
+    }
+    
+    private void reopenSessions() throws OrtException {
+        if (encoderSession != null) {
+            endProfiling(encoderSession, encoderTraces);
+            encoderSession.close();
+            encoderSession = ortEnv.createSession(encoderFile.getAbsolutePath(),
+                sessionOptions("encoder", encoderFile));
+        }
+        if (decoderSession != null) {
+            endProfiling(decoderSession, decoderTraces);
+            decoderSession.close();
+            decoderSession = ortEnv.createSession(decoderFile.getAbsolutePath(),
+                sessionOptions("decoder", decoderFile));
+        }
+    }
+    
+    private void endProfiling() {
+        endProfiling(encoderSession, encoderTraces);
+        endProfiling(decoderSession, decoderTraces);
+    }
+    
+    private void endProfiling(OrtSession session, List<File> traces) {
+        if (session == null || profileDir == null) return;
+        try {
+            String path = session.endProfiling();
+            if (path != null && !path.isEmpty()) traces.add(new File(path));
+        } catch (OrtException e) {
+            // Not profiled (opened before startProfiling) or already ended
+            EngineLog.w(TAG, "endProfiling failed", e);
+        }
+    }
+    
+    /**
+     * Cache hits since the last call, then reset; call serialized with inference
+     */
+    public long takeCacheHits() {
+        long hits = cacheHits;
+        cacheHits = 0;
+        return hits;
+    }
+    
+    // Resident size estimates (bytes)
+    public long getEncoderResidentBytes() {
+        return encoderSession != null ? encoderBytes : 0;
+    }
+    
+    public long getDecoderResidentBytes() {
+        long bytes = decoderSession != null ? decoderBytes : 0;
+        return bytes + (crossKvSession != null ? crossKvBytes : 0);
+    }
+    
+    /**
+     * Encoder output and batching caches; call serialized with inference
+     * (rowInputs is an access-ordered map)
+     */
+    public long getCacheResidentBytes() {
+        float[][][] hidden = cachedEncoderHidden;
+        long bytes = hidden != null ? (long) hidden.length * cachedSeqLen * cachedHiddenSize * 4 : 0;
+        // Flattened copy fed to the decoder
+        if (cachedHiddenTensor != null) bytes *= 2;
+        for (RowInputs inputs : rowInputs.values()) bytes += inputs.bytes();
+        ByteBuffer logits = batchLogits;
+        if (logits != null) bytes += logits.capacity();
+        return bytes + cachedCrossKvBytes;
+    }
+    
+    // Getters for debug info
+    public String[] getEncoderInputNames() throws OrtException {
+        return encoderSession != null ? encoderSession.getInputNames().toArray(new String[0]) : new String[0];
+    }
+    
+    public String[] getEncoderOutputNames() throws OrtException {
+        return encoderSession != null ? encoderSession.getOutputNames().toArray(new String[0]) : new String[0];
+    }
+    
+    public String[] getDecoderInputNames() throws OrtException {
+        return decoderSession != null ? decoderSession.getInputNames().toArray(new String[0]) : new String[0];
+    }
+    
+    public String[] getDecoderOutputNames() throws OrtException {
+        return decoderSession != null ? decoderSession.getOutputNames().toArray(new String[0]) : new String[0];
+    }
+}
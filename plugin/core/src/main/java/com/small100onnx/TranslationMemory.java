@@ -0,0 +1,502 @@
+package com.small100onnx;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Translation Memory - past translations served again without inference
+ *
+ * Sources are split into tokens; numbers, URLs, e-mail addresses, codes
+ * (letters mixed with digits) and capitalised words inside a sentence are
+ * placeholders. A source whose template (placeholders replaced by their
+ * type) equals a stored one reuses the stored translation with the new
+ * values swapped in. Near matches may also differ in capitalised words,
+ * e.g. a name opening the sentence; similarity is the share of equal
+ * template tokens and must reach the threshold. They are indexed by the
+ * template with capitalised words masked, so every candidate is found with
+ * one hash lookup (templated traffic shares most n-grams, which defeats
+ * MinHash buckets).
+ *
+ * A value is swapped only if the stored one occurs in the stored translation
+ * as a whole word exactly as often as in the stored source. Anything the
+ * model translated (weekdays, localised numbers) makes the match unusable,
+ * so inference runs instead. Number placeholders carry a plural class, so
+ * "1 message" never serves "5 messages".
+ *
+ * Stored gzipped next to the model, so a model update starts empty.
+ * Plain Java (no Android APIs) so it can be tested on the JVM.
+ */
+public class TranslationMemory {
+    public static final String FILE_NAME = "translation_memory.bin";
+    public static final float DEFAULT_THRESHOLD = 0.8f;
+    public static final int DEFAULT_MAX_ENTRIES = 20_000;
+
+    // Longer texts are neither stored nor looked up
+    private static final int MAX_SOURCE_CHARS = 2000;
+    private static final int MAX_TRANSLATION_CHARS = 8000;
+    // Shorter sources match by template only
+    private static final int MIN_FUZZY_TOKENS = 4;
+    private static final int MAGIC = 0x534d544d;
+    private static final int VERSION = 1;
+
+    // URL, e-mail, number, word, any other non-space character
+    private static final Pattern TOKEN = Pattern.compile(
+        "((?:https?://|www\\.)\\S*[^\\s.,;:!?)\\]}'\"])"
+        + "|([\\w.+-]+@[\\w-]+(?:\\.[\\w-]+)+)"
+        + "|(\\d+(?:[.,:]\\d+)*)(?![\\p{L}\\p{N}_])"
+        + "|([\\p{L}\\p{M}\\p{N}_]+(?:['’-][\\p{L}\\p{M}\\p{N}_]+)*)"
+        + "|(\\S)");
+
+    /**
+     * A served translation and how it was found
+     */
+    public static class Match {
+        public final String translation;
+        public final float similarity;
+        // Source equal to the stored one, nothing swapped
+        public final boolean exact;
+
+        Match(String translation, float similarity, boolean exact) {
+            this.translation = translation;
+            this.similarity = similarity;
+            this.exact = exact;
+        }
+    }
+
+    private static class Token {
+        final String text;
+        // Placeholder type ("{NAME}", "{NUM5}", ...) or the text itself
+        final String tag;
+        final boolean placeholder;
+
+        Token(String text, String tag) {
+            this.text = text;
+            this.tag = tag;
+            this.placeholder = !tag.equals(text);
+        }
+    }
+
+    private static class Entry {
+        final String language;
+        final String source;
+        final String translation;
+        final Token[] tokens;
+        final String key;
+        // Template with capitalised words masked, or null for short sources
+        final String nearKey;
+
+        Entry(String language, String source, String translation, Token[] tokens, String key, String nearKey) {
+            this.language = language;
+            this.source = source;
+            this.translation = translation;
+            this.tokens = tokens;
+            this.key = key;
+            this.nearKey = nearKey;
+        }
+    }
+
+    // Template key -> entry, least recently used first
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, List<Entry>> near = new HashMap<>();
+    private volatile boolean enabled = true;
+    private volatile float threshold = DEFAULT_THRESHOLD;
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+    private long storedChars;
+    private boolean dirty;
+
+    private final AtomicLong exactHits = new AtomicLong();
+    private final AtomicLong swapHits = new AtomicLong();
+    private final AtomicLong fuzzyHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Load the memory stored in the model directory; empty if there is none
+     */
+    public static TranslationMemory load(File modelsDir) throws IOException {
+        TranslationMemory memory = new TranslationMemory();
+        File file = new File(modelsDir, FILE_NAME);
+        if (!file.exists()) return memory;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unknown translation memory format: " + file);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String language = in.readUTF();
+                String source = in.readUTF();
+                memory.put(language, source, in.readUTF());
+            }
+        }
+        memory.dirty = false;
+        return memory;
+    }
+
+    /**
+     * Write the memory next to the model (no-op if nothing changed)
+     */
+    public synchronized void save(File modelsDir) throws IOException {
+        if (!dirty) return;
+        File file = new File(modelsDir, FILE_NAME);
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(tmp))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            // Least recently used first, so a reload keeps the eviction order
+            for (Entry entry : entries.values()) {
+                out.writeUTF(entry.language);
+                out.writeUTF(entry.source);
+                out.writeUTF(entry.translation);
+            }
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Failed to write " + file);
+        }
+        dirty = false;
+    }
+
+    /**
+     * Stored translation for text, adapted to its placeholders, or null
+     */
+    public String lookup(String text, String language) {
+        Match match = find(text, language);
+        return match != null ? match.translation : null;
+    }
+
+    /**
+     * Best usable match at or above the threshold, or null
+     */
+    public synchronized Match find(String text, String language) {
+        if (!enabled || text.length() > MAX_SOURCE_CHARS) return null;
+        Token[] tokens = tokenize(text);
+        if (tokens.length == 0) return null;
+
+        // Template match: placeholders may differ, everything else is equal
+        // (get also marks the entry recently used)
+        Entry same = entries.get(templateKey(language, tokens));
+        if (same != null) {
+            Match match = adapt(same, tokens, 1f);
+            if (match != null) return count(match);
+        }
+
+        if (threshold < 1f && tokens.length >= MIN_FUZZY_TOKENS) {
+            Match best = null;
+            Entry bestEntry = null;
+            List<Entry> candidates = near.get(nearKey(language, tokens));
+            for (int i = 0; candidates != null && i < candidates.size(); i++) {
+                Entry candidate = candidates.get(i);
+                if (candidate == same) continue;
+                float similarity = similarity(candidate.tokens, tokens);
+                if (similarity < threshold || (best != null && similarity <= best.similarity)) continue;
+                Match match = adapt(candidate, tokens, similarity);
+                if (match != null) {
+                    best = match;
+                    bestEntry = candidate;
+                }
+            }
+            if (best != null) {
+                entries.get(bestEntry.key);
+                return count(best);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Remember a translation produced by the model
+     */
+    public synchronized void add(String text, String language, String translation) {
+        if (!enabled || translation.isEmpty()
+                || text.length() > MAX_SOURCE_CHARS || translation.length() > MAX_TRANSLATION_CHARS) {
+            return;
+        }
+        put(language, text, translation);
+    }
+
+    /**
+     * Minimum share of equal template tokens for a near match; 1 serves
+     * template matches only
+     */
+    public void setThreshold(float threshold) {
+        if (threshold <= 0f || threshold > 1f) {
+            throw new IllegalArgumentException("Threshold must be in (0, 1]: " + threshold);
+        }
+        this.threshold = threshold;
+    }
+
+    public float getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Turn lookups and recording on or off; stored entries are kept
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Cap the entry count, evicting least recently used entries beyond it
+     */
+    public synchronized void setMaxEntries(int maxEntries) {
+        if (maxEntries < 1) throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        this.maxEntries = maxEntries;
+        evict();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        dirty |= !entries.isEmpty();
+        entries.clear();
+        near.clear();
+        storedChars = 0;
+    }
+
+    /**
+     * Hit and miss counts since creation: exact, swapped (template match
+     * with new placeholder values), fuzzy (near match) and misses
+     */
+    public Map<String, Long> stats() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        result.put("entries", (long) size());
+        result.put("exactHits", exactHits.get());
+        result.put("swapHits", swapHits.get());
+        result.put("fuzzyHits", fuzzyHits.get());
+        result.put("misses", misses.get());
+        return result;
+    }
+
+    /**
+     * Approximate heap used by entries and the index
+     */
+    public synchronized long estimateResidentBytes() {
+        // Strings at 2 bytes per char (sources, translations, two keys), ~64 bytes per token, ~200 per entry
+        long tokens = 0;
+        for (Entry entry : entries.values()) tokens += entry.tokens.length;
+        return storedChars * 4 + tokens * 64 + entries.size() * 200L;
+    }
+
+    // Private helpers
+
+    private void put(String language, String source, String translation) {
+        Token[] tokens = tokenize(source);
+        if (tokens.length == 0) return;
+        String key = templateKey(language, tokens);
+        Entry previous = entries.remove(key);
+        if (previous != null) unindex(previous);
+
+        String nearKey = tokens.length >= MIN_FUZZY_TOKENS ? nearKey(language, tokens) : null;
+        Entry entry = new Entry(language, source, translation, tokens, key, nearKey);
+        entries.put(key, entry);
+        if (nearKey != null) near.computeIfAbsent(nearKey, k -> new ArrayList<>(1)).add(entry);
+        storedChars += source.length() + translation.length();
+        dirty = true;
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (entries.size() > maxEntries && it.hasNext()) {
+            Entry oldest = it.next();
+            it.remove();
+            unindex(oldest);
+            dirty = true;
+        }
+    }
+
+    private void unindex(Entry entry) {
+        storedChars -= entry.source.length() + entry.translation.length();
+        if (entry.nearKey == null) return;
+        List<Entry> group = near.get(entry.nearKey);
+        if (group == null) return;
+        group.remove(entry);
+        if (group.isEmpty()) near.remove(entry.nearKey);
+    }
+
+    private Match count(Match match) {
+        if (match.exact) exactHits.incrementAndGet();
+        else if (match.similarity >= 1f) swapHits.incrementAndGet();
+        else fuzzyHits.incrementAndGet();
+        return match;
+    }
+
+    /**
+     * Stored translation with the stored values replaced by the asked ones,
+     * or null if a difference can't be swapped
+     */
+    private Match adapt(Entry entry, Token[] asked, float similarity) {
+        Token[] stored = entry.tokens;
+        Map<String, String> swaps = new HashMap<>();
+        Map<String, Integer> occurrences = new HashMap<>();
+        for (int i = 0; i < stored.length; i++) {
+            Token s = stored[i];
+            Token a = asked[i];
+            if (!s.tag.equals(a.tag) && !(isCapitalised(s.text) && isCapitalised(a.text)
+                    && !s.placeholder && !a.placeholder)) {
+                return null;
+            }
+            occurrences.merge(s.text, 1, Integer::sum);
+            if (s.text.equals(a.text)) continue;
+            String previous = swaps.put(s.text, a.text);
+            if (previous != null && !previous.equals(a.text)) return null;
+        }
+        if (swaps.isEmpty()) return new Match(entry.translation, 1f, true);
+        // A swapped value kept elsewhere in the source has no single replacement
+        for (int i = 0; i < stored.length; i++) {
+            if (swaps.containsKey(stored[i].text) && stored[i].text.equals(asked[i].text)) return null;
+        }
+
+        String translation = entry.translation;
+        List<int[]> spans = new ArrayList<>();
+        List<String> replacements = new ArrayList<>();
+        for (Map.Entry<String, String> swap : swaps.entrySet()) {
+            String value = swap.getKey();
+            int found = 0;
+            for (int at = translation.indexOf(value); at >= 0; at = translation.indexOf(value, at + 1)) {
+                if (!isWholeWord(translation, at, at + value.length())) continue;
+                spans.add(new int[]{at, at + value.length()});
+                replacements.add(swap.getValue());
+                found++;
+            }
+            if (found != occurrences.get(value)) return null;
+        }
+
+        Integer[] order = new Integer[spans.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (x, y) -> Integer.compare(spans.get(x)[0], spans.get(y)[0]));
+        StringBuilder result = new StringBuilder(translation.length() + 16);
+        int end = 0;
+        for (int i : order) {
+            int[] span = spans.get(i);
+            if (span[0] < end) return null;
+            result.append(translation, end, span[0]).append(replacements.get(i));
+            end = span[1];
+        }
+        result.append(translation, end, translation.length());
+        return new Match(result.toString(), similarity, false);
+    }
+
+    private static float similarity(Token[] stored, Token[] asked) {
+        int equal = 0;
+        for (int i = 0; i < stored.length; i++) {
+            if (stored[i].tag.equals(asked[i].tag)) equal++;
+        }
+        return (float) equal / stored.length;
+    }
+
+    static Token[] tokenize(String text) {
+        List<Token> tokens = new ArrayList<>();
+        Matcher m = TOKEN.matcher(text);
+        boolean sentenceStart = true;
+        while (m.find()) {
+            String value = m.group();
+            String tag = value;
+            if (m.group(1) != null) {
+                tag = "{URL}";
+            } else if (m.group(2) != null) {
+                tag = "{EMAIL}";
+            } else if (m.group(3) != null) {
+                tag = "{NUM" + pluralClass(value) + "}";
+            } else if (m.group(4) != null) {
+                if (hasLetterAndDigit(value)) tag = "{CODE}";
+                else if (!sentenceStart && isCapitalised(value)) tag = "{NAME}";
+            }
+            tokens.add(new Token(value, tag));
+            sentenceStart = m.group(5) != null && ".!?¡¿:…".contains(value);
+        }
+        return tokens.toArray(new Token[0]);
+    }
+
+    /**
+     * Numbers sharing a class take the same grammatical number in every
+     * language: under 20 exact, larger ones by the last two digits when those
+     * are 0-19 (Slavic teens, Arabic 3-10/11-99) else by the last digit;
+     * decimals and separated numbers form classes of their own
+     */
+    private static String pluralClass(String number) {
+        if (number.indexOf('.') >= 0 || number.indexOf(',') >= 0 || number.indexOf(':') >= 0) {
+            return "s" + (number.indexOf(':') >= 0 ? ":" : "");
+        }
+        if (number.length() > 18) return "x";
+        long n = Long.parseLong(number);
+        if (n < 20) return Long.toString(n);
+        long lastTwo = n % 100;
+        return lastTwo < 20 ? "h" + lastTwo : "t" + n % 10;
+    }
+
+    private static boolean hasLetterAndDigit(String value) {
+        boolean letter = false;
+        boolean digit = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            letter |= Character.isLetter(c);
+            digit |= Character.isDigit(c);
+        }
+        return letter && digit;
+    }
+
+    private static boolean isCapitalised(String value) {
+        return !value.isEmpty() && Character.isUpperCase(value.charAt(0));
+    }
+
+    private static boolean isWholeWord(String text, int start, int end) {
+        return (start == 0 || !continuesWord(text, start - 1, -1))
+            && (end == text.length() || !continuesWord(text, end, 1));
+    }
+
+    // Letters and digits continue a word; "." "," ":" between digits continue a number
+    private static boolean continuesWord(String text, int i, int direction) {
+        char c = text.charAt(i);
+        if (Character.isLetterOrDigit(c) || c == '_') return true;
+        if (c != '.' && c != ',' && c != ':') return false;
+        int next = i + direction;
+        int inner = i - direction;
+        return next >= 0 && next < text.length() && Character.isDigit(text.charAt(next))
+            && Character.isDigit(text.charAt(inner));
+    }
+
+    private static String templateKey(String language, Token[] tokens) {
+        StringBuilder key = new StringBuilder(language).append('\u0000');
+        for (Token token : tokens) key.append(token.tag).append('\u0001');
+        return key.toString();
+    }
+
+    // Only capitalised words may differ in a usable near match
+    private static String nearKey(String language, Token[] tokens) {
+        StringBuilder key = new StringBuilder(language).append('\u0000');
+        for (Token token : tokens) {
+            key.append(token.placeholder || !isCapitalised(token.text) ? token.tag : "{CAP}").append('\u0001');
+        }
+        return key.toString();
+    }
+}
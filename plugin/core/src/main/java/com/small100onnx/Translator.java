@@ -0,0 +1,904 @@
+package com.small100onnx;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Translator - high-level translation API
+ * Coordinates tokenizer, engine, and decoder
+ */
+public class Translator {
+    private static final String TAG = "Translator";
+    
+    // Init pipeline stage names (keys of getInitTimings)
+    public static final String STAGE_TOKENIZER = "tokenizer";
+    public static final String STAGE_LANGUAGES = "languages";
+    public static final String STAGE_ENCODER = "encoder";
+    public static final String STAGE_DECODER = "decoder";
+    public static final String STAGE_MEMORY = "memory";
+    public static final String STAGE_TOTAL = "total";
+    
+    // Warm-up: encoder sequence-length buckets and decoder steps per bucket
+    private static final int[] WARM_UP_BUCKETS = {8, 32, 96};
+    private static final int WARM_UP_DECODE_STEPS = 3;
+    private static final String WARM_UP_TEXT = "The quick brown fox jumps over the lazy dog. ";
+    
+    /**
+     * Callback for asynchronous creation
+     */
+    public interface InitCallback {
+        /** A pipeline stage finished (called from a worker thread) */
+        void onStageComplete(String stage, long elapsedMs);
+        
+        /** Tokenizer, languages and encoder are loaded; decoder may still be loading */
+        void onEncoderReady(Translator translator);
+        
+        /** All stages loaded */
+        void onReady(Translator translator);
+        
+        /** Loading failed; a translator passed to onEncoderReady has its sessions closed and is unusable */
+        void onError(Exception error);
+    }
+    
+    /**
+     * Result of a profiling window: ORT kernel times plus Java-side stage timings
+     */
+    public static class Profile {
+        public final int translations;
+        public final OrtProfile encoder;
+        public final OrtProfile decoder;
+        // Stage histograms of the profiled translations only
+        public final Metrics stages;
+        
+        Profile(int translations, OrtProfile encoder, OrtProfile decoder, Metrics stages) {
+            this.translations = translations;
+            this.encoder = encoder;
+            this.decoder = decoder;
+            this.stages = stages;
+        }
+    }
+    
+    private final SimpleBPETokenizer tokenizer;
+    private final TranslationEngine engine;
+    private final BeamSearchDecoder decoder;
+    private final Map<String, Integer> languageTokenMap;
+    private final VocabShortlist shortlist;
+    // Replaceable so replicas of one model can share a memory
+    private volatile TranslationMemory memory;
+    private final Future<?> decoderLoad;
+    private final Map<String, Long> initTimings;
+    private final File modelsDir;
+    private final ModelVariant variant;
+    
+    // Engine caches encoder output per request, so inference is serialized
+    private final Object inferenceLock = new Object();
+    // Shared metrics, or a profiling window forwarding to them
+    private volatile Metrics metrics = Metrics.shared();
+    private final AtomicBoolean warmUpCancelled = new AtomicBoolean(false);
+    private volatile boolean warmedUp;
+    
+    // Profiling: translations left in the window (guarded by inferenceLock)
+    private int profileRemaining;
+    private int profileTranslations;
+    private volatile boolean profiling;
+    private volatile Profile lastProfile;
+    
+    private Translator(SimpleBPETokenizer tokenizer, TranslationEngine engine,
+                       BeamSearchDecoder decoder, Map<String, Integer> languageTokenMap,
+                       VocabShortlist shortlist, TranslationMemory memory, Future<?> decoderLoad,
+                       Map<String, Long> initTimings, File modelsDir, ModelVariant variant) {
+        this.tokenizer = tokenizer;
+        this.engine = engine;
+        this.decoder = decoder;
+        this.languageTokenMap = languageTokenMap;
+        this.shortlist = shortlist;
+        this.memory = memory;
+        this.decoderLoad = decoderLoad;
+        this.initTimings = initTimings;
+        this.modelsDir = modelsDir;
+        this.variant = variant;
+    }
+    
+    /**
+     * Create Translator from model directory
+     * Blocks until all stages of the init pipeline have finished
+     */
+    public static Translator create(File modelsDir) throws Exception {
+        try {
+            return createAsync(modelsDir, null).get();
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+    
+    /**
+     * Create Translator asynchronously
+     * Tokenizer, language tokens, encoder, decoder and translation memory
+     * load concurrently.
+     * The returned future completes when every stage has loaded.
+     */
+    public static Future<Translator> createAsync(File modelsDir, InitCallback callback) {
+        return createAsync(modelsDir, ModelVariant.resolve(modelsDir, VariantBenchmark.deviceKey()), callback);
+    }
+    
+    /**
+     * Create Translator asynchronously with a specific model variant
+     */
+    public static Future<Translator> createAsync(File modelsDir, ModelVariant variant, InitCallback callback) {
+        return createAsync(modelsDir, variant, 0, null, callback);
+    }
+    
+    /**
+     * Create Translator asynchronously as one replica of a pool (see TranslatorPool)
+     * @param intraOpThreads ORT intra-op threads per session, 0 for ORT's default
+     * @param weights Initializers shared with the other replicas, or null
+     */
+    public static Future<Translator> createAsync(File modelsDir, ModelVariant variant, int intraOpThreads,
+                                                 SharedWeights weights, InitCallback callback) {
+        // One thread per stage plus the coordinator
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        return executor.submit(() -> {
+            try {
+                return runInitPipeline(modelsDir, variant, intraOpThreads, weights, callback, executor);
+            } finally {
+                // Shut down only after the coordinator submitted the stages (shutdown rejects new work)
+                executor.shutdown();
+            }
+        });
+    }
+    
+    private static Translator runInitPipeline(File modelsDir, ModelVariant variant, int intraOpThreads,
+                                              SharedWeights weights, InitCallback callback,
+                                              ExecutorService executor) throws Exception {
+        long start = System.currentTimeMillis();
+        Map<String, Long> timings = new ConcurrentHashMap<>();
+        TranslationEngine engine = new TranslationEngine();
+        engine.setIntraOpThreads(intraOpThreads);
+        engine.setSharedWeights(weights);
+        
+        Future<SimpleBPETokenizer> tokenizerLoad = executor.submit(
+            timedStage(STAGE_TOKENIZER, timings, callback, () -> loadTokenizer(modelsDir)));
+        Future<Map<String, Integer>> languagesLoad = executor.submit(
+            timedStage(STAGE_LANGUAGES, timings, callback, () -> loadLanguageTokens(modelsDir)));
+        Future<Void> encoderLoad = executor.submit(
+            timedStage(STAGE_ENCODER, timings, callback, () -> { engine.loadEncoder(modelsDir, variant); return null; }));
+        Future<Void> decoderLoad = executor.submit(
+            timedStage(STAGE_DECODER, timings, callback, () -> { engine.loadDecoder(modelsDir, variant); return null; }));
+        Future<TranslationMemory> memoryLoad = executor.submit(
+            timedStage(STAGE_MEMORY, timings, callback, () -> loadMemory(modelsDir)));
+        
+        try {
+            SimpleBPETokenizer tokenizer = tokenizerLoad.get();
+            EngineLog.d(TAG, "Tokenizer loaded, vocab size: " + tokenizer.getVocabSize());
+            
+            Map<String, Integer> langTokens = languagesLoad.get();
+            EngineLog.d(TAG, "Language tokens loaded: " + langTokens.size());
+            
+            // Output shortlists always keep special and language tokens
+            int[] alwaysIncluded = new int[langTokens.size() + 4];
+            int n = 0;
+            for (int id : langTokens.values()) alwaysIncluded[n++] = id;
+            alwaysIncluded[n++] = tokenizer.getBosTokenId();
+            alwaysIncluded[n++] = tokenizer.getPadTokenId();
+            alwaysIncluded[n++] = tokenizer.getEosTokenId();
+            alwaysIncluded[n] = tokenizer.getUnkTokenId();
+            VocabShortlist shortlist = VocabShortlist.load(modelsDir, alwaysIncluded);
+            
+            encoderLoad.get();
+            TranslationMemory memory = memoryLoad.get();
+            
+            // Create beam search decoder
+            BeamSearchDecoder decoder = new BeamSearchDecoder(tokenizer.getEosTokenId());
+            decoder.setMetrics(Metrics.shared());
+            
+            Translator translator = new Translator(tokenizer, engine, decoder, langTokens,
+                shortlist, memory, decoderLoad, timings, modelsDir, variant);
+            if (callback != null) callback.onEncoderReady(translator);
+            
+            decoderLoad.get();
+            timings.put(STAGE_TOTAL, System.currentTimeMillis() - start);
+            EngineLog.d(TAG, "Init pipeline (" + variant + "): " + timings);
+            
+            if (callback != null) callback.onReady(translator);
+            return translator;
+        } catch (Exception e) {
+            // Session creation can't be interrupted: a session finishing after
+            // close() would leak, so let every stage end first
+            awaitQuietly(tokenizerLoad, languagesLoad, encoderLoad, decoderLoad, memoryLoad);
+            engine.close();
+            
+            Exception cause = e instanceof ExecutionException ? unwrap((ExecutionException) e) : e;
+            if (callback != null) callback.onError(cause);
+            throw cause;
+        }
+    }
+    
+    private static <T> Callable<T> timedStage(String stage, Map<String, Long> timings,
+                                              InitCallback callback, Callable<T> task) {
+        return () -> {
+            long start = System.currentTimeMillis();
+            T result = task.call();
+            long elapsed = System.currentTimeMillis() - start;
+            timings.put(stage, elapsed);
+            EngineLog.d(TAG, "Init stage " + stage + ": " + elapsed + "ms");
+            if (callback != null) callback.onStageComplete(stage, elapsed);
+            return result;
+        };
+    }
+    
+    /**
+     * Translate text to target language
+     */
+    public String translate(String text, String targetLanguage) throws Exception {
+        // Memory hits skip inference and never wait for the lock
+        String remembered = memory.lookup(text, targetLanguage);
+        if (remembered != null) {
+            metrics.increment(Metrics.Counter.MEMORY_HITS, 1);
+            return remembered;
+        }
+        
+        // Real requests take priority over a running warm-up
+        warmUpCancelled.set(true);
+        long start = System.nanoTime();
+        synchronized (inferenceLock) {
+            metrics.recordSince(Metrics.Stage.QUEUE_WAIT, start);
+            String result = translateLocked(text, targetLanguage);
+            memory.add(text, targetLanguage, result);
+            metrics.recordSince(Metrics.Stage.TOTAL, start);
+            metrics.increment(Metrics.Counter.TRANSLATIONS, 1);
+            countProfiledLocked(1);
+            return result;
+        }
+    }
+    
+    /**
+     * Translate text into several target languages in one batched pass
+     * The text is tokenized once, the encoder runs once on one row per target
+     * (rows differ only in the leading language token) and every decoder
+     * call serves the beams of all targets still open. Targets found in the
+     * translation memory are left out of the batch.
+     * @return Translations in the order of targetLanguages
+     */
+    public List<String> translateToMany(String text, List<String> targetLanguages) throws Exception {
+        return translateBatch(Collections.nCopies(targetLanguages.size(), text), targetLanguages);
+    }
+    
+    /**
+     * Translate several texts in one batched pass, row i being texts[i] into
+     * targetLanguages[i]
+     * Rows are right-padded to the longest and masked, so the encoder runs
+     * once and every decoder call serves the beams of all rows still open.
+     * Rows found in the translation memory are left out of the batch. Sort
+     * rows by length first to keep padding low.
+     * @return Translations in row order
+     */
+    public List<String> translateBatch(List<String> texts, List<String> targetLanguages) throws Exception {
+        return translateBatch(texts, null, targetLanguages);
+    }
+    
+    /**
+     * translateBatch with rows already tokenized by tokenize(), so callers
+     * can tokenize on their own threads while the previous batch runs
+     * @param tokens tokenize(texts[i]) per row; null, or null entries, tokenize here
+     */
+    public List<String> translateBatch(List<String> texts, List<int[]> tokens,
+                                       List<String> targetLanguages) throws Exception {
+        if (texts.size() != targetLanguages.size() || (tokens != null && tokens.size() != texts.size())) {
+            throw new IllegalArgumentException("Texts and target languages differ in count");
+        }
+        if (texts.isEmpty()) return Collections.emptyList();
+        List<String> results = new ArrayList<>(texts.size());
+        List<String> novelTexts = new ArrayList<>();
+        List<int[]> novelTokens = new ArrayList<>();
+        List<String> novelTargets = new ArrayList<>();
+        for (int i = 0; i < texts.size(); i++) {
+            String remembered = memory.lookup(texts.get(i), targetLanguages.get(i));
+            results.add(remembered);
+            if (remembered == null) {
+                novelTexts.add(texts.get(i));
+                novelTokens.add(tokens != null ? tokens.get(i) : null);
+                novelTargets.add(targetLanguages.get(i));
+            }
+        }
+        int hits = texts.size() - novelTexts.size();
+        if (hits > 0) metrics.increment(Metrics.Counter.MEMORY_HITS, hits);
+        if (novelTexts.isEmpty()) return results;
+        
+        warmUpCancelled.set(true);
+        long start = System.nanoTime();
+        synchronized (inferenceLock) {
+            metrics.recordSince(Metrics.Stage.QUEUE_WAIT, start);
+            List<String> translated = novelTexts.size() == 1
+                ? Collections.singletonList(translateLocked(novelTexts.get(0), novelTargets.get(0)))
+                : translateBatchLocked(novelTexts, novelTokens, novelTargets);
+            metrics.recordSince(Metrics.Stage.TOTAL, start);
+            metrics.increment(Metrics.Counter.TRANSLATIONS, novelTexts.size());
+            countProfiledLocked(novelTexts.size());
+            
+            int next = 0;
+            for (int i = 0; i < results.size(); i++) {
+                if (results.get(i) != null) continue;
+                String result = translated.get(next++);
+                memory.add(texts.get(i), targetLanguages.get(i), result);
+                results.set(i, result);
+            }
+            return results;
+        }
+    }
+    
+    /**
+     * Source tokens for translateBatch; thread-safe and lock-free
+     */
+    public int[] tokenize(String text) {
+        return tokenizer.encode(text);
+    }
+    
+    /**
+     * Profile the next translations with ORT op-level profiling
+     * Sessions are reopened with profiling on (and again without it once the
+     * window ends), so expect one slow call at each end. Traces go to dir and
+     * are deleted after parsing; ORT caps a trace at one million events.
+     * @param translations Translations to profile (at least 1)
+     */
+    public void startProfiling(int translations, File dir) throws Exception {
+        cancelWarmUp();
+        synchronized (inferenceLock) {
+            if (profiling) throw new IllegalStateException("Profiling already running");
+            awaitDecoder();
+            engine.startProfiling(dir);
+            profiling = true;
+            profileRemaining = Math.max(translations, 1);
+            profileTranslations = 0;
+            metrics = new Metrics(Metrics.shared());
+            decoder.setMetrics(metrics);
+        }
+        EngineLog.d(TAG, "Profiling the next " + translations + " translations");
+    }
+    
+    /**
+     * End a profiling window early; the profile covers translations so far
+     */
+    public void stopProfiling() {
+        synchronized (inferenceLock) {
+            if (profiling) finishProfilingLocked();
+        }
+    }
+    
+    /**
+     * True from startProfiling until the profile is parsed
+     */
+    public boolean isProfiling() {
+        return profiling;
+    }
+    
+    /**
+     * Last completed profile, or null
+     */
+    public Profile getProfile() {
+        return lastProfile;
+    }
+    
+    private String translateLocked(String text, String targetLanguage) throws Exception {
+        EngineLog.d(TAG, "Translating: \"" + text + "\" to " + targetLanguage);
+        
+        // Get target language token ID
+        String tgtToken = "__" + targetLanguage + "__";
+        Integer tgtTokenId = languageTokenMap.get(tgtToken);
+        if (tgtTokenId == null) {
+            throw new IllegalArgumentException("Unknown target language: " + targetLanguage);
+        }
+        
+        // Tokenize input
+        long stageStart = System.nanoTime();
+        int[] textTokens = tokenizer.encode(text);
+        stageStart = metrics.recordSince(Metrics.Stage.TOKENIZE, stageStart);
+        
+        // Build encoder input: [tgt_lang_token, ...tokens, eos_token]
+        long[] inputIds = new long[textTokens.length + 2];
+        inputIds[0] = tgtTokenId;
+        for (int i = 0; i < textTokens.length; i++) {
+            inputIds[i + 1] = textTokens[i];
+        }
+        inputIds[inputIds.length - 1] = tokenizer.getEosTokenId();
+        
+        // Attention mask (all 1s)
+        long[] attentionMask = new long[inputIds.length];
+        Arrays.fill(attentionMask, 1L);
+        
+        // Run encoder
+        engine.runEncoder(inputIds, attentionMask);
+        metrics.recordSince(Metrics.Stage.ENCODER, stageStart);
+        
+        // Decoder session may still be loading if created via createAsync
+        awaitDecoder();
+        
+        // Beam search decode (per-step timings recorded by the decoder)
+        int[] startTokens = {tokenizer.getEosTokenId()};
+        
+        BitSet allowed = shortlist.get(targetLanguage);
+        int[] outputIds;
+        if (engine.hasTopKOutput()) {
+            // Only the model's top-k crosses JNI; full logits on the rare steps that need them
+            outputIds = decoder.decodeTopK(startTokens, 256, engine::runDecoderStepTopK, allowed);
+        } else {
+            outputIds = decoder.decode(startTokens, 256, engine::runDecoderStep, allowed);
+        }
+        shortlist.record(targetLanguage, outputIds);
+        
+        metrics.increment(Metrics.Counter.CACHE_HITS, engine.takeCacheHits());
+        
+        // Clear engine cache
+        engine.clearCache();
+        
+        // Detokenize result
+        stageStart = System.nanoTime();
+        String result = detokenize(outputIds);
+        metrics.recordSince(Metrics.Stage.DETOKENIZE, stageStart);
+        EngineLog.d(TAG, "Result: \"" + result + "\"");
+        
+        return result;
+    }
+    
+    private List<String> translateBatchLocked(List<String> texts, List<int[]> tokens,
+                                              List<String> targetLanguages) throws Exception {
+        EngineLog.d(TAG, "Translating " + texts.size() + " rows to " + targetLanguages);
+        
+        int rows = targetLanguages.size();
+        long[] tgtTokenIds = new long[rows];
+        for (int r = 0; r < rows; r++) {
+            Integer id = languageTokenMap.get("__" + targetLanguages.get(r) + "__");
+            if (id == null) {
+                throw new IllegalArgumentException("Unknown target language: " + targetLanguages.get(r));
+            }
+            tgtTokenIds[r] = id;
+        }
+        
+        // Tokenize each distinct text once, unless the caller already did
+        long stageStart = System.nanoTime();
+        Map<String, int[]> tokensByText = new HashMap<>();
+        int[][] rowTokens = new int[rows][];
+        int maxTokens = 0;
+        for (int r = 0; r < rows; r++) {
+            int[] textTokens = tokens.get(r);
+            if (textTokens == null) textTokens = tokensByText.computeIfAbsent(texts.get(r), tokenizer::encode);
+            rowTokens[r] = textTokens;
+            maxTokens = Math.max(maxTokens, textTokens.length);
+        }
+        stageStart = metrics.recordSince(Metrics.Stage.TOKENIZE, stageStart);
+        
+        // One encoder row each: [tgt_lang_token, ...tokens, eos_token, pad...]
+        long[][] inputIds = new long[rows][maxTokens + 2];
+        long[][] attentionMask = new long[rows][maxTokens + 2];
+        for (int r = 0; r < rows; r++) {
+            int[] textTokens = rowTokens[r];
+            Arrays.fill(inputIds[r], tokenizer.getPadTokenId());
+            inputIds[r][0] = tgtTokenIds[r];
+            for (int i = 0; i < textTokens.length; i++) {
+                inputIds[r][i + 1] = textTokens[i];
+            }
+            inputIds[r][textTokens.length + 1] = tokenizer.getEosTokenId();
+            Arrays.fill(attentionMask[r], 0, textTokens.length + 2, 1L);
+        }
+        
+        engine.runEncoderBatch(inputIds, attentionMask);
+        metrics.recordSince(Metrics.Stage.ENCODER, stageStart);
+        
+        awaitDecoder();
+        
+        // One beam search per row, all decoded together
+        int[][] startTokens = new int[rows][];
+        BitSet[] allowed = new BitSet[rows];
+        for (int r = 0; r < rows; r++) {
+            startTokens[r] = new int[]{tokenizer.getEosTokenId()};
+            allowed[r] = shortlist.get(targetLanguages.get(r));
+        }
+        int[][] outputIds = decoder.decodeBatch(startTokens, 256, engine::runDecoderStepBatch, allowed);
+        for (int r = 0; r < rows; r++) shortlist.record(targetLanguages.get(r), outputIds[r]);
+        
+        metrics.increment(Metrics.Counter.CACHE_HITS, engine.takeCacheHits());
+        engine.clearCache();
+        
+        stageStart = System.nanoTime();
+        List<String> results = new ArrayList<>(rows);
+        for (int[] ids : outputIds) results.add(detokenize(ids));
+        metrics.recordSince(Metrics.Stage.DETOKENIZE, stageStart);
+        EngineLog.d(TAG, "Results: " + results);
+        
+        return results;
+    }
+    
+    /**
+     * Run synthetic encoder/decoder passes in the background
+     * Warms up ORT arenas, kernel selection and JIT for tokenizer and beam search.
+     * Runs at background priority and stops at the next pass boundary
+     * or decoder step once translate() is called.
+     */
+    public Future<?> warmUp() {
+        warmUpCancelled.set(false);
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            runWarmUp();
+            return null;
+        });
+        Thread thread = new Thread(task, "Small100-WarmUp");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+        return task;
+    }
+    
+    /**
+     * Stop a running warm-up
+     */
+    public void cancelWarmUp() {
+        warmUpCancelled.set(true);
+    }
+    
+    /**
+     * Check if a warm-up ran over all buckets
+     */
+    public boolean isWarmedUp() {
+        return warmedUp;
+    }
+    
+    /**
+     * Check if translator is ready
+     * True as soon as the encoder is loaded; translate waits for a decoder still loading
+     */
+    public boolean isReady() {
+        if (decoderLoad.isDone() && !engine.isReady()) return false;
+        return engine.isEncoderReady();
+    }
+    
+    /**
+     * Per-stage init timings in ms (tokenizer, languages, encoder, decoder, total)
+     */
+    public Map<String, Long> getInitTimings() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(initTimings));
+    }
+    
+    /**
+     * Close encoder/decoder sessions and their arenas; tokenizer stays loaded
+     * Waits for an in-flight translation to finish.
+     */
+    public void releaseSessions() {
+        cancelWarmUp();
+        synchronized (inferenceLock) {
+            engine.close();
+        }
+        EngineLog.d(TAG, "Sessions released");
+    }
+    
+    /**
+     * Reload sessions closed by releaseSessions (encoder and decoder concurrently)
+     */
+    public void reloadSessions() throws Exception {
+        synchronized (inferenceLock) {
+            if (engine.isReady()) return;
+            
+            long start = System.currentTimeMillis();
+            FutureTask<Void> decoderReload = new FutureTask<>(() -> {
+                engine.loadDecoder(modelsDir, variant);
+                return null;
+            });
+            new Thread(decoderReload, "Small100-DecoderReload").start();
+            try {
+                engine.loadEncoder(modelsDir, variant);
+                decoderReload.get();
+            } catch (ExecutionException e) {
+                engine.close();
+                throw unwrap(e);
+            } catch (Exception e) {
+                engine.close();
+                throw e;
+            }
+            EngineLog.d(TAG, "Sessions reloaded: " + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+    
+    /**
+     * Approximate resident bytes per component
+     * Waits for an in-flight translation, which may be changing the caches.
+     */
+    public Map<String, Long> getResidentBytes() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        result.put("encoder", engine.getEncoderResidentBytes());
+        result.put("decoder", engine.getDecoderResidentBytes());
+        synchronized (inferenceLock) {
+            result.put("encoderCache", engine.getCacheResidentBytes());
+        }
+        result.put("tokenizer", tokenizer.estimateResidentBytes());
+        // Map node + key String + boxed Integer per language token
+        result.put("languages", languageTokenMap.size() * 120L);
+        result.put("translationMemory", memory.estimateResidentBytes());
+        return result;
+    }
+    
+    /**
+     * Release resources
+     */
+    public void close() {
+        cancelWarmUp();
+        shortlist.saveLearned(modelsDir);
+        try {
+            memory.save(modelsDir);
+        } catch (IOException e) {
+            EngineLog.w(TAG, "Translation memory not saved", e);
+        }
+        engine.close();
+        // Closed sessions are not reopened; this only collects and deletes their traces
+        stopProfiling();
+    }
+    
+    /**
+     * Get supported language codes
+     */
+    public String[] getSupportedLanguages() {
+        return languageTokenMap.keySet().stream()
+            .map(s -> s.replace("__", ""))
+            .toArray(String[]::new);
+    }
+    
+    public File getModelsDir() {
+        return modelsDir;
+    }
+    
+    public ModelVariant getVariant() {
+        return variant;
+    }
+    
+    public BeamSearchDecoder getDecoder() {
+        return decoder;
+    }
+    
+    public TranslationMemory getMemory() {
+        return memory;
+    }
+    
+    /**
+     * Use another translator's memory, e.g. across replicas of one model;
+     * entries loaded by this translator are dropped
+     */
+    public void setMemory(TranslationMemory memory) {
+        this.memory = memory;
+    }
+    
+    // For debug
+    public TranslationEngine getEngine() {
+        return engine;
+    }
+    
+    // Private helpers
+    
+    private void runWarmUp() throws Exception {
+        Platform.get().setBackgroundPriority();
+        awaitDecoder();
+        
+        Integer langId = languageTokenMap.get("__en__");
+        if (langId == null) langId = languageTokenMap.values().iterator().next();
+        int[] sample = tokenizer.encode(WARM_UP_TEXT);
+        int[] startTokens = {tokenizer.getEosTokenId()};
+        
+        long start = System.currentTimeMillis();
+        for (int bucket : WARM_UP_BUCKETS) {
+            synchronized (inferenceLock) {
+                if (warmUpCancelled.get()) {
+                    EngineLog.d(TAG, "Warm-up cancelled before bucket " + bucket);
+                    return;
+                }
+                
+                // [lang_token, ...sample tokens repeated, eos_token]
+                long[] inputIds = new long[bucket];
+                inputIds[0] = langId;
+                for (int i = 1; i < bucket - 1; i++) {
+                    inputIds[i] = sample[(i - 1) % sample.length];
+                }
+                inputIds[bucket - 1] = tokenizer.getEosTokenId();
+                long[] attentionMask = new long[bucket];
+                Arrays.fill(attentionMask, 1L);
+                
+                long bucketStart = System.currentTimeMillis();
+                // Synthetic passes stay out of the latency metrics
+                decoder.setMetrics(null);
+                try {
+                    engine.runEncoder(inputIds, attentionMask);
+                    int[] outputIds;
+                    if (engine.hasTopKOutput()) {
+                        outputIds = decoder.decodeTopK(startTokens, WARM_UP_DECODE_STEPS, ids -> {
+                            if (warmUpCancelled.get()) throw new CancellationException();
+                            return engine.runDecoderStepTopK(ids);
+                        }, null);
+                    } else {
+                        outputIds = decoder.decode(startTokens, WARM_UP_DECODE_STEPS, ids -> {
+                            if (warmUpCancelled.get()) throw new CancellationException();
+                            return engine.runDecoderStep(ids);
+                        });
+                    }
+                    detokenize(outputIds);
+                } catch (CancellationException e) {
+                    EngineLog.d(TAG, "Warm-up cancelled in bucket " + bucket);
+                    return;
+                } finally {
+                    engine.clearCache();
+                    decoder.setMetrics(metrics);
+                }
+                EngineLog.d(TAG, "Warm-up bucket " + bucket + ": " + (System.currentTimeMillis() - bucketStart) + "ms");
+            }
+        }
+        
+        warmedUp = true;
+        EngineLog.d(TAG, "Warm-up done: " + (System.currentTimeMillis() - start) + "ms");
+    }
+    
+    /**
+     * Count finished translations against a running profiling window
+     */
+    private void countProfiledLocked(int translations) {
+        if (profileRemaining <= 0) return;
+        profileTranslations += translations;
+        profileRemaining = Math.max(0, profileRemaining - translations);
+        if (profileRemaining == 0) finishProfilingLocked();
+    }
+    
+    /**
+     * End ORT profiling, restore shared metrics and parse traces off the inference thread
+     */
+    private void finishProfilingLocked() {
+        Map<String, List<File>> traces;
+        try {
+            traces = engine.stopProfiling();
+        } catch (Exception e) {
+            EngineLog.e(TAG, "Stopping profiling failed", e);
+            traces = null;
+        }
+        Metrics window = metrics;
+        int translations = profileTranslations;
+        profileRemaining = 0;
+        metrics = Metrics.shared();
+        decoder.setMetrics(metrics);
+        if (traces == null) {
+            profiling = false;
+            return;
+        }
+        
+        Map<String, List<File>> files = traces;
+        Thread parser = new Thread(() -> {
+            try {
+                lastProfile = new Profile(translations, OrtProfile.parse(files.get("encoder")),
+                    OrtProfile.parse(files.get("decoder")), window);
+                EngineLog.d(TAG, "Profile ready: " + translations + " translations");
+            } catch (Exception e) {
+                EngineLog.e(TAG, "Parsing profile failed", e);
+            } finally {
+                for (List<File> list : files.values()) {
+                    for (File file : list) file.delete();
+                }
+                profiling = false;
+            }
+        }, "Small100-Profile");
+        parser.setPriority(Thread.MIN_PRIORITY);
+        parser.start();
+    }
+    
+    private void awaitDecoder() throws Exception {
+        try {
+            decoderLoad.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+    
+    /**
+     * Wait until every stage has ended, whatever its outcome
+     */
+    private static void awaitQuietly(Future<?>... stages) {
+        boolean interrupted = false;
+        for (Future<?> stage : stages) {
+            while (true) {
+                try {
+                    stage.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (Exception ignored) {
+                    // Ended; the pipeline reports the first failure
+                    break;
+                }
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+    
+    private static Exception unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        return cause instanceof Exception ? (Exception) cause : e;
+    }
+    
+    private String detokenize(int[] ids) {
+        // Skip first token (EOS start) and last EOS
+        if (ids.length <= 1) return "";
+        
+        int end = ids.length;
+        if (ids[end - 1] == tokenizer.getEosTokenId()) end--;
+        
+        // Filter special and language tokens
+        int[] filtered = Arrays.stream(ids, 1, end)
+            .filter(id -> id != tokenizer.getEosTokenId() 
+                       && id != tokenizer.getBosTokenId()
+                       && id != tokenizer.getPadTokenId()
+                       && id < 128000)
+            .toArray();
+        
+        return tokenizer.decode(filtered, true);
+    }
+    
+    private static SimpleBPETokenizer loadTokenizer(File modelsDir) throws Exception {
+        File vocabFile = new File(modelsDir, "vocab.json");
+        String json = readFile(vocabFile);
+        JSONObject vocabObj = new JSONObject(json);
+        
+        Map<String, Integer> vocab = new HashMap<>();
+        Iterator<String> keys = vocabObj.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            vocab.put(key, vocabObj.getInt(key));
+        }
+        
+        return new SimpleBPETokenizer(vocab);
+    }
+    
+    private static TranslationMemory loadMemory(File modelsDir) {
+        try {
+            TranslationMemory memory = TranslationMemory.load(modelsDir);
+            EngineLog.d(TAG, "Translation memory loaded: " + memory.size() + " entries");
+            return memory;
+        } catch (IOException e) {
+            // A bad memory file only costs speed; it is rewritten on close
+            EngineLog.w(TAG, "Translation memory not loaded", e);
+            return new TranslationMemory();
+        }
+    }
+    
+    private static Map<String, Integer> loadLanguageTokens(File modelsDir) throws Exception {
+        File file = new File(modelsDir, "added_tokens.json");
+        String json = readFile(file);
+        JSONObject obj = new JSONObject(json);
+        
+        Map<String, Integer> result = new HashMap<>();
+        Iterator<String> keys = obj.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            result.put(key, obj.getInt(key));
+        }
+        
+        return result;
+    }
+    
+    private static String readFile(File file) throws Exception {
+        try (FileInputStream fis = new FileInputStream(file)) {
+            byte[] data = new byte[(int) file.length()];
+            fis.read(data);
+            return new String(data, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.small100onnx;
+
+import org.json.JSONObject;
+
+import java.util.Properties;
+
+/**
+ * Translator Config - tuning applied to a loaded Translator
+ * Read from the plugin's initialize options (fromJson) or from a properties
+ * file on servers (fromProperties); absent keys keep the defaults:
+ *
+ *   beam.minBeams=1           beam { minBeams, narrowGap, pruneMargin }
+ *   beam.narrowGap=0
+ *   beam.pruneMargin=0
+ *   memory.enabled=true       translationMemory { enabled, threshold, maxEntries }
+ *   memory.threshold=0.8
+ *   memory.maxEntries=20000
+ *   engine.maxBatchRows=8     maxBatchRows
+ */
+public class TranslatorConfig {
+    private int minBeams = 1;
+    private float narrowGap;
+    private float pruneMargin;
+    private boolean memoryEnabled = true;
+    private float memoryThreshold = TranslationMemory.DEFAULT_THRESHOLD;
+    private int memoryMaxEntries = TranslationMemory.DEFAULT_MAX_ENTRIES;
+    private int maxBatchRows = TranslationEngine.DEFAULT_MAX_BATCH_ROWS;
+
+    public static TranslatorConfig fromProperties(Properties props) {
+        TranslatorConfig config = new TranslatorConfig();
+        config.minBeams = Integer.parseInt(props.getProperty("beam.minBeams", "1"));
+        config.narrowGap = Float.parseFloat(props.getProperty("beam.narrowGap", "0"));
+        config.pruneMargin = Float.parseFloat(props.getProperty("beam.pruneMargin", "0"));
+        config.memoryEnabled = Boolean.parseBoolean(props.getProperty("memory.enabled", "true"));
+        config.memoryThreshold = Float.parseFloat(
+            props.getProperty("memory.threshold", String.valueOf(TranslationMemory.DEFAULT_THRESHOLD)));
+        config.memoryMaxEntries = Integer.parseInt(
+            props.getProperty("memory.maxEntries", String.valueOf(TranslationMemory.DEFAULT_MAX_ENTRIES)));
+        config.maxBatchRows = Integer.parseInt(
+            props.getProperty("engine.maxBatchRows", String.valueOf(TranslationEngine.DEFAULT_MAX_BATCH_ROWS)));
+        return config;
+    }
+
+    public static TranslatorConfig fromJson(JSONObject options) {
+        TranslatorConfig config = new TranslatorConfig();
+        JSONObject beam = options.optJSONObject("beam");
+        if (beam != null) {
+            config.minBeams = beam.optInt("minBeams", 1);
+            config.narrowGap = (float) beam.optDouble("narrowGap", 0);
+            config.pruneMargin = (float) beam.optDouble("pruneMargin", 0);
+        }
+        JSONObject memory = options.optJSONObject("translationMemory");
+        if (memory != null) {
+            config.memoryEnabled = memory.optBoolean("enabled", true);
+            config.memoryThreshold = (float) memory.optDouble("threshold", TranslationMemory.DEFAULT_THRESHOLD);
+            config.memoryMaxEntries = memory.optInt("maxEntries", TranslationMemory.DEFAULT_MAX_ENTRIES);
+        }
+        config.maxBatchRows = options.optInt("maxBatchRows", TranslationEngine.DEFAULT_MAX_BATCH_ROWS);
+        return config;
+    }
+
+    /**
+     * Apply to a translator; safe while it serves requests (the settings are
+     * volatile, a decode in flight picks them up from its next step or batch)
+     */
+    public void applyTo(Translator translator) {
+        translator.getDecoder().setAdaptiveBeam(minBeams, narrowGap);
+        translator.getDecoder().setPruneMargin(pruneMargin);
+        translator.getMemory().setEnabled(memoryEnabled);
+        translator.getMemory().setThreshold(memoryThreshold);
+        translator.getMemory().setMaxEntries(memoryMaxEntries);
+        translator.getEngine().setMaxBatchRows(maxBatchRows);
+    }
+}
@@ -0,0 +1,234 @@
+package com.small100onnx;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Translator Pool - replicas of one model behind a least-loaded dispatcher
+ *
+ * A Translator runs one inference at a time, and one session with a large
+ * intra-op pool scales poorly on small batch-1 work. A pool splits the cores
+ * into replicas x intra-op threads (see PoolBenchmark for picking the split),
+ * so independent requests run side by side. Each call goes to the replica
+ * with the fewest rows in flight. Replicas share the translation memory and,
+ * through SharedWeights, one copy of the large initializers.
+ */
+public class TranslatorPool implements AutoCloseable {
+    private static final String TAG = "TranslatorPool";
+
+    /**
+     * Replicas x intra-op threads per session
+     */
+    public static class Split {
+        public final int replicas;
+        public final int intraOpThreads;
+
+        public Split(int replicas, int intraOpThreads) {
+            this.replicas = Math.max(1, replicas);
+            this.intraOpThreads = Math.max(0, intraOpThreads);
+        }
+
+        /**
+         * Splits that keep every core busy: replicas dividing the core count
+         * (up to maxReplicas), each with cores / replicas threads
+         */
+        public static List<Split> candidates(int cores, int maxReplicas) {
+            List<Split> splits = new ArrayList<>();
+            for (int replicas = 1; replicas <= Math.min(cores, maxReplicas); replicas++) {
+                if (cores % replicas == 0) splits.add(new Split(replicas, cores / replicas));
+            }
+            return splits;
+        }
+
+        /**
+         * Derive whichever of replicas / intraOpThreads is 0 so the split
+         * uses every core
+         */
+        public static Split forCores(int replicas, int intraOpThreads, int cores) {
+            if (replicas <= 0) replicas = Math.max(1, cores / Math.max(1, intraOpThreads));
+            if (intraOpThreads <= 0) intraOpThreads = Math.max(1, cores / replicas);
+            return new Split(replicas, intraOpThreads);
+        }
+
+        @Override
+        public String toString() {
+            return replicas + "x" + intraOpThreads;
+        }
+    }
+
+    private final List<Translator> replicas;
+    private final Split split;
+    private final SharedWeights weights;
+    // Rows in flight per replica
+    private final AtomicIntegerArray load;
+    // Start of the next least-loaded scan, so ties rotate
+    private final AtomicInteger nextScan = new AtomicInteger();
+
+    private TranslatorPool(List<Translator> replicas, Split split, SharedWeights weights) {
+        this.replicas = Collections.unmodifiableList(replicas);
+        this.split = split;
+        this.weights = weights;
+        this.load = new AtomicIntegerArray(replicas.size());
+    }
+
+    /**
+     * Load the split measured for this device (benchmarking it first if needed)
+     */
+    public static TranslatorPool create(File modelsDir) throws Exception {
+        return create(modelsDir, PoolBenchmark.selectOrBenchmark(modelsDir, PoolBenchmark.DEFAULT_MAX_REPLICAS));
+    }
+
+    /**
+     * Load split.replicas replicas concurrently with shared weights and memory
+     */
+    public static TranslatorPool create(File modelsDir, Split split) throws Exception {
+        ModelVariant variant = ModelVariant.resolve(modelsDir, VariantBenchmark.deviceKey());
+        SharedWeights weights = split.replicas > 1 ? new SharedWeights() : null;
+        List<Future<Translator>> loads = new ArrayList<>(split.replicas);
+        for (int r = 0; r < split.replicas; r++) {
+            loads.add(Translator.createAsync(modelsDir, variant, split.intraOpThreads, weights, null));
+        }
+
+        // Wait for every load, even after a failure: replicas still loading
+        // create sessions from the shared weights and must be closed first
+        List<Translator> replicas = new ArrayList<>(split.replicas);
+        Exception failure = null;
+        boolean interrupted = false;
+        for (Future<Translator> load : loads) {
+            while (true) {
+                try {
+                    replicas.add(load.get());
+                    break;
+                } catch (InterruptedException e) {
+                    // Still wait for this load; the caller sees the interrupt afterwards
+                    interrupted = true;
+                    if (failure == null) failure = e;
+                } catch (Exception e) {
+                    if (failure == null) failure = e;
+                    break;
+                }
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        if (failure != null) {
+            for (Translator translator : replicas) translator.close();
+            if (weights != null) weights.close();
+            throw failure;
+        }
+        for (int r = 1; r < replicas.size(); r++) replicas.get(r).setMemory(replicas.get(0).getMemory());
+        EngineLog.d(TAG, "Pool " + split + ", shared weights "
+            + (weights != null ? weights.getSharedBytes() : 0) + " bytes");
+        return new TranslatorPool(replicas, split, weights);
+    }
+
+    public String translate(String text, String targetLanguage) throws Exception {
+        int replica = acquire(1);
+        try {
+            return replicas.get(replica).translate(text, targetLanguage);
+        } finally {
+            load.addAndGet(replica, -1);
+        }
+    }
+
+    public List<String> translateToMany(String text, List<String> targetLanguages) throws Exception {
+        int replica = acquire(targetLanguages.size());
+        try {
+            return replicas.get(replica).translateToMany(text, targetLanguages);
+        } finally {
+            load.addAndGet(replica, -targetLanguages.size());
+        }
+    }
+
+    public List<String> translateBatch(List<String> texts, List<String> targetLanguages) throws Exception {
+        return translateBatch(texts, null, targetLanguages);
+    }
+
+    /**
+     * One batch on one replica; see Translator.translateBatch
+     */
+    public List<String> translateBatch(List<String> texts, List<int[]> tokens,
+                                       List<String> targetLanguages) throws Exception {
+        int replica = acquire(texts.size());
+        try {
+            return replicas.get(replica).translateBatch(texts, tokens, targetLanguages);
+        } finally {
+            load.addAndGet(replica, -texts.size());
+        }
+    }
+
+    public int[] tokenize(String text) {
+        return replicas.get(0).tokenize(text);
+    }
+
+    public String[] getSupportedLanguages() {
+        return replicas.get(0).getSupportedLanguages();
+    }
+
+    public TranslationMemory getMemory() {
+        return replicas.get(0).getMemory();
+    }
+
+    public List<Translator> getReplicas() {
+        return replicas;
+    }
+
+    public int size() {
+        return replicas.size();
+    }
+
+    public Split getSplit() {
+        return split;
+    }
+
+    /**
+     * Rows in flight on a replica
+     */
+    public int getLoad(int replica) {
+        return load.get(replica);
+    }
+
+    /**
+     * Apply a config to every replica
+     */
+    public void apply(TranslatorConfig config) {
+        for (Translator translator : replicas) config.applyTo(translator);
+    }
+
+    /**
+     * Close the replicas, then the shared weights their sessions used
+     */
+    @Override
+    public void close() {
+        for (Translator translator : replicas) translator.close();
+        if (weights != null) weights.close();
+    }
+
+    // Private helpers
+
+    /**
+     * Claim the least-loaded replica for rows
+     */
+    private int acquire(int rows) {
+        int count = replicas.size();
+        while (true) {
+            int start = Math.floorMod(nextScan.getAndIncrement(), count);
+            int best = start;
+            int bestLoad = load.get(start);
+            for (int i = 1; i < count && bestLoad > 0; i++) {
+                int replica = (start + i) % count;
+                int replicaLoad = load.get(replica);
+                if (replicaLoad < bestLoad) {
+                    best = replica;
+                    bestLoad = replicaLoad;
+                }
+            }
+            // Lost a race for this replica: rescan
+            if (load.compareAndSet(best, bestLoad, bestLoad + rows)) return best;
+        }
+    }
+}
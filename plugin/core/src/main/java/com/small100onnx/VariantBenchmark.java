@@ -0,0 +1,155 @@
+package com.small100onnx;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Variant Benchmark - picks the fastest model variant on this device
+ * Runs a short synthetic encoder + decoder pass per downloaded variant
+ * that fits the memory budget and persists the winner.
+ */
+public class VariantBenchmark {
+    private static final String TAG = "VariantBenchmark";
+
+    private static final int SOURCE_LENGTH = 24;
+    private static final int DECODER_STEPS = 8;
+    private static final int TIMED_RUNS = 3;
+
+    /**
+     * Result of one benchmark run
+     */
+    public static class Result {
+        // Fastest measured variant within budget, null if none could run
+        public final ModelVariant best;
+        // Median ms per variant (encoder + decoder steps); skipped variants are absent
+        public final Map<String, Long> latenciesMs;
+
+        Result(ModelVariant best, Map<String, Long> latenciesMs) {
+            this.best = best;
+            this.latenciesMs = latenciesMs;
+        }
+    }
+
+    /**
+     * Identifies the hardware the selection was measured on
+     */
+    public static String deviceKey() {
+        return Platform.get().deviceKey();
+    }
+
+    /**
+     * Persisted selection, or benchmark now and persist
+     * A single-variant manifest is returned as is, and when no variant could
+     * be measured a manifest variant is picked without persisting it.
+     */
+    public static ModelVariant selectOrBenchmark(File modelsDir, long memoryBudgetBytes) {
+        String device = deviceKey();
+        ModelVariant selected = ModelVariant.loadSelected(modelsDir, device);
+        if (selected != null) return selected;
+
+        List<ModelVariant> variants = ModelVariant.loadManifest(modelsDir);
+        if (variants.isEmpty()) return ModelVariant.DEFAULT;
+        if (variants.size() == 1) return variants.get(0);
+
+        Result result = run(modelsDir, variants, memoryBudgetBytes);
+        if (result.best == null) {
+            ModelVariant fallback = unmeasuredChoice(modelsDir, variants, memoryBudgetBytes);
+            EngineLog.w(TAG, "No variant measured, using " + fallback + " (selection not saved)");
+            return fallback;
+        }
+        try {
+            ModelVariant.saveSelected(modelsDir, device, result.best, result.latenciesMs);
+        } catch (Exception e) {
+            EngineLog.w(TAG, "Selection not saved", e);
+        }
+        return result.best;
+    }
+
+    /**
+     * Benchmark candidates; best is null if none could run
+     */
+    public static Result run(File modelsDir, List<ModelVariant> candidates, long memoryBudgetBytes) {
+        Map<String, Long> latencies = new LinkedHashMap<>();
+        ModelVariant best = null;
+        long bestMs = Long.MAX_VALUE;
+
+        for (ModelVariant variant : candidates) {
+            if (!variant.isDownloaded(modelsDir)) continue;
+            long bytes = variant.estimateResidentBytes(modelsDir);
+            if (memoryBudgetBytes > 0 && bytes > memoryBudgetBytes) {
+                EngineLog.d(TAG, variant + ": over memory budget (" + bytes + " bytes)");
+                continue;
+            }
+
+            try {
+                long ms = measure(modelsDir, variant);
+                latencies.put(variant.name, ms);
+                EngineLog.d(TAG, variant + ": " + ms + "ms");
+                if (ms < bestMs) {
+                    bestMs = ms;
+                    best = variant;
+                }
+            } catch (Exception e) {
+                EngineLog.w(TAG, variant + ": skipped", e);
+            }
+        }
+
+        EngineLog.d(TAG, "Selected " + best + " " + latencies);
+        return new Result(best, latencies);
+    }
+
+    /**
+     * First downloaded variant within budget, else the first downloaded one,
+     * else the manifest's first entry
+     */
+    private static ModelVariant unmeasuredChoice(File modelsDir, List<ModelVariant> variants, long memoryBudgetBytes) {
+        ModelVariant downloaded = null;
+        for (ModelVariant variant : variants) {
+            if (!variant.isDownloaded(modelsDir)) continue;
+            if (memoryBudgetBytes <= 0 || variant.estimateResidentBytes(modelsDir) <= memoryBudgetBytes) {
+                return variant;
+            }
+            if (downloaded == null) downloaded = variant;
+        }
+        return downloaded != null ? downloaded : variants.get(0);
+    }
+
+    private static long measure(File modelsDir, ModelVariant variant) throws Exception {
+        TranslationEngine engine = new TranslationEngine();
+        try {
+            engine.loadModels(modelsDir, variant);
+            if (!engine.hasSupportedDecoderInputs()) {
+                throw new UnsupportedOperationException("Decoder inputs "
+                    + Arrays.toString(engine.getDecoderInputNames()));
+            }
+
+            long[] inputIds = new long[SOURCE_LENGTH];
+            for (int i = 0; i < SOURCE_LENGTH; i++) inputIds[i] = 1000 + i;
+            inputIds[SOURCE_LENGTH - 1] = 2;
+            long[] attentionMask = new long[SOURCE_LENGTH];
+            Arrays.fill(attentionMask, 1L);
+
+            // First run warms up; median of the timed runs
+            long[] runs = new long[TIMED_RUNS];
+            for (int r = -1; r < TIMED_RUNS; r++) {
+                long start = System.nanoTime();
+                engine.runEncoder(inputIds, attentionMask);
+                int[] decoderIds = {2};
+                for (int step = 0; step < DECODER_STEPS; step++) {
+                    engine.runDecoderStep(decoderIds);
+                    decoderIds = Arrays.copyOf(decoderIds, decoderIds.length + 1);
+                    decoderIds[decoderIds.length - 1] = 1000 + step;
+                }
+                engine.clearCache();
+                if (r >= 0) runs[r] = (System.nanoTime() - start) / 1_000_000;
+            }
+            Arrays.sort(runs);
+            return runs[TIMED_RUNS / 2];
+        } finally {
+            engine.close();
+        }
+    }
+}
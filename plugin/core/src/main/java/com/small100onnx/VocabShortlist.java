@@ -0,0 +1,202 @@
+package com.small100onnx;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Vocab Shortlist - per target language set of output token ids
+ * Beam search normalises and ranks only over these ids.
+ *
+ * Sources, merged per language:
+ *   - shortlist.json stored with the model, built offline ({"en": [ids...], ...})
+ *   - shortlist_learned.json, ids observed in past outputs (used alone once
+ *     MIN_LEARNED_TRANSLATIONS outputs were seen for a language)
+ */
+public class VocabShortlist {
+    private static final String TAG = "VocabShortlist";
+
+    public static final String FILE_NAME = "shortlist.json";
+    public static final String LEARNED_FILE_NAME = "shortlist_learned.json";
+    private static final int MIN_LEARNED_TRANSLATIONS = 100;
+    private static final String KEY_COUNTS = "_counts";
+
+    private final Map<String, BitSet> offline;
+    private final Map<String, BitSet> learned;
+    private final Map<String, Integer> learnedCounts;
+    private final Map<String, BitSet> merged = new HashMap<>();
+    private final BitSet alwaysIncluded;
+    private boolean dirty;
+
+    private VocabShortlist(Map<String, BitSet> offline, Map<String, BitSet> learned,
+                           Map<String, Integer> learnedCounts, BitSet alwaysIncluded) {
+        this.offline = offline;
+        this.learned = learned;
+        this.learnedCounts = learnedCounts;
+        this.alwaysIncluded = alwaysIncluded;
+    }
+
+    /**
+     * Load shortlists from model directory; missing files mean no shortlist
+     * @param alwaysIncluded Ids kept in every list (special and language tokens)
+     */
+    public static VocabShortlist load(File modelsDir, int[] alwaysIncluded) {
+        BitSet always = new BitSet();
+        for (int id : alwaysIncluded) always.set(id);
+
+        Map<String, BitSet> offline = new HashMap<>();
+        Map<String, BitSet> learned = new HashMap<>();
+        Map<String, Integer> counts = new HashMap<>();
+        try {
+            File file = new File(modelsDir, FILE_NAME);
+            if (file.exists()) readLists(readFile(file), offline);
+
+            File learnedFile = new File(modelsDir, LEARNED_FILE_NAME);
+            if (learnedFile.exists()) {
+                JSONObject obj = readLists(readFile(learnedFile), learned);
+                JSONObject countsObj = obj.optJSONObject(KEY_COUNTS);
+                if (countsObj != null) {
+                    Iterator<String> keys = countsObj.keys();
+                    while (keys.hasNext()) {
+                        String key = keys.next();
+                        counts.put(key, countsObj.getInt(key));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            // A bad shortlist only costs speed, never correctness
+            EngineLog.w(TAG, "Shortlist not loaded", e);
+            offline.clear();
+            learned.clear();
+            counts.clear();
+        }
+        EngineLog.d(TAG, "Shortlists: " + offline.size() + " offline, " + learned.size() + " learned");
+        return new VocabShortlist(offline, learned, counts, always);
+    }
+
+    /**
+     * Collect output ids for one language from a target-side corpus (offline build)
+     */
+    public static BitSet collect(SimpleBPETokenizer tokenizer, Iterable<String> sentences) {
+        BitSet ids = new BitSet();
+        for (String sentence : sentences) {
+            for (int id : tokenizer.encode(sentence)) ids.set(id);
+        }
+        return ids;
+    }
+
+    /**
+     * Write offline shortlists in the format read by load
+     */
+    public static void save(File file, Map<String, BitSet> lists) throws Exception {
+        writeFile(file, toJson(lists));
+    }
+
+    /**
+     * Allowed ids for a language, or null if it has no usable shortlist
+     */
+    public synchronized BitSet get(String language) {
+        BitSet cached = merged.get(language);
+        if (cached != null) return cached;
+
+        BitSet base = offline.get(language);
+        BitSet seen = learned.get(language);
+        boolean learnedUsable = seen != null
+            && learnedCounts.getOrDefault(language, 0) >= MIN_LEARNED_TRANSLATIONS;
+        if (base == null && !learnedUsable) return null;
+
+        BitSet result = new BitSet();
+        if (base != null) result.or(base);
+        if (seen != null && (base != null || learnedUsable)) result.or(seen);
+        result.or(alwaysIncluded);
+        merged.put(language, result);
+        return result;
+    }
+
+    /**
+     * Learn from a finished translation's output ids
+     */
+    public synchronized void record(String language, int[] outputIds) {
+        BitSet seen = learned.computeIfAbsent(language, k -> new BitSet());
+        int before = seen.cardinality();
+        for (int id : outputIds) seen.set(id);
+        learnedCounts.merge(language, 1, Integer::sum);
+
+        if (seen.cardinality() != before || learnedCounts.get(language) == MIN_LEARNED_TRANSLATIONS) {
+            merged.remove(language);
+        }
+        dirty = true;
+    }
+
+    /**
+     * Persist learned ids next to the model (no-op if nothing changed)
+     */
+    public synchronized void saveLearned(File modelsDir) {
+        if (!dirty) return;
+        try {
+            JSONObject obj = toJson(learned);
+            JSONObject counts = new JSONObject();
+            for (Map.Entry<String, Integer> entry : learnedCounts.entrySet()) {
+                counts.put(entry.getKey(), entry.getValue().intValue());
+            }
+            obj.put(KEY_COUNTS, counts);
+            writeFile(new File(modelsDir, LEARNED_FILE_NAME), obj);
+            dirty = false;
+        } catch (Exception e) {
+            EngineLog.w(TAG, "Learned shortlist not saved", e);
+        }
+    }
+
+    // Private helpers
+
+    private static JSONObject readLists(String json, Map<String, BitSet> into) throws Exception {
+        JSONObject obj = new JSONObject(json);
+        Iterator<String> keys = obj.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            JSONArray arr = obj.optJSONArray(key);
+            if (arr == null) continue;
+            BitSet ids = new BitSet();
+            for (int i = 0; i < arr.length(); i++) ids.set(arr.getInt(i));
+            into.put(key, ids);
+        }
+        return obj;
+    }
+
+    private static JSONObject toJson(Map<String, BitSet> lists) throws Exception {
+        JSONObject obj = new JSONObject();
+        for (Map.Entry<String, BitSet> entry : lists.entrySet()) {
+            JSONArray arr = new JSONArray();
+            BitSet ids = entry.getValue();
+            for (int i = ids.nextSetBit(0); i >= 0; i = ids.nextSetBit(i + 1)) arr.put(i);
+            obj.put(entry.getKey(), arr);
+        }
+        return obj;
+    }
+
+    private static String readFile(File file) throws Exception {
+        try (FileInputStream fis = new FileInputStream(file)) {
+            byte[] data = new byte[(int) file.length()];
+            fis.read(data);
+            return new String(data, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void writeFile(File file, JSONObject obj) throws Exception {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            fos.write(obj.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        if (!tmp.renameTo(file)) {
+            throw new Exception("Failed to write " + file);
+        }
+    }
+}
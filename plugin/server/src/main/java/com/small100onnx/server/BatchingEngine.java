@@ -0,0 +1,212 @@
+package com.small100onnx.server;
+
+import com.small100onnx.EngineLog;
+import com.small100onnx.Translator;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Batching Engine - one bounded queue of translation jobs shared by all
+ * replicas, served by one worker thread per replica
+ *
+ * A worker takes the oldest job plus whatever else is queued (up to
+ * maxBatch, waiting at most maxWaitMs for more) and translates them with one
+ * Translator.translateBatch call. Under load, requests pile up while the
+ * workers are busy, so batches grow with traffic; an idle worker picks up
+ * the next job first, which spreads the load over replicas. A batch that
+ * fails is retried row by row so one bad request doesn't fail the others.
+ */
+final class BatchingEngine {
+    private static final String TAG = "BatchingEngine";
+
+    static final class Job {
+        final String text;
+        final String targetLanguage;
+        final CompletableFuture<String> result = new CompletableFuture<>();
+
+        Job(String text, String targetLanguage) {
+            this.text = text;
+            this.targetLanguage = targetLanguage;
+        }
+    }
+
+    private final List<Translator> replicas;
+    private final BlockingQueue<Job> queue;
+    private final int maxBatch;
+    private final long maxWaitNanos;
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong batchedRows = new AtomicLong();
+    private final AtomicLongArray replicaBatches;
+    private final AtomicLongArray replicaBusy;
+
+    BatchingEngine(List<Translator> replicas, int queueCapacity, int maxBatch, long maxWaitMs) {
+        this.replicas = replicas;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatch = Math.max(1, maxBatch);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        this.replicaBatches = new AtomicLongArray(replicas.size());
+        this.replicaBusy = new AtomicLongArray(replicas.size());
+    }
+
+    void start() {
+        running = true;
+        for (int r = 0; r < replicas.size(); r++) {
+            int replica = r;
+            Thread worker = new Thread(() -> work(replica), "small100-replica-" + r);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    /**
+     * Stop the workers after their current batch; queued jobs fail
+     */
+    void stop() throws InterruptedException {
+        running = false;
+        for (Thread worker : workers) worker.interrupt();
+        for (Thread worker : workers) worker.join();
+        Job job;
+        while ((job = queue.poll()) != null) {
+            job.result.completeExceptionally(new IllegalStateException("Server stopping"));
+        }
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Queue one translation
+     * @return The pending result, or null if the queue is full
+     */
+    CompletableFuture<String> submit(String text, String targetLanguage) {
+        Job job = new Job(text, targetLanguage);
+        if (!running || !queue.offer(job)) {
+            rejected.incrementAndGet();
+            return null;
+        }
+        submitted.incrementAndGet();
+        return job.result;
+    }
+
+    int queueDepth() {
+        return queue.size();
+    }
+
+    long submitted() {
+        return submitted.get();
+    }
+
+    long rejected() {
+        return rejected.get();
+    }
+
+    long failed() {
+        return failed.get();
+    }
+
+    long batches() {
+        return batches.get();
+    }
+
+    double averageBatchSize() {
+        long count = batches.get();
+        return count > 0 ? (double) batchedRows.get() / count : 0;
+    }
+
+    long replicaBatches(int replica) {
+        return replicaBatches.get(replica);
+    }
+
+    boolean replicaBusy(int replica) {
+        return replicaBusy.get(replica) != 0;
+    }
+
+    // Private helpers
+
+    private void work(int replica) {
+        Translator translator = replicas.get(replica);
+        List<Job> batch = new ArrayList<>(maxBatch);
+        while (running) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, maxBatch - batch.size());
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatch) {
+                    long wait = deadline - System.nanoTime();
+                    if (wait <= 0) break;
+                    Job next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                for (Job job : batch) job.result.completeExceptionally(new IllegalStateException("Server stopping"));
+                return;
+            }
+
+            // Timed-out requests were cancelled by their handler
+            batch.removeIf(job -> job.result.isDone());
+            if (!batch.isEmpty()) {
+                replicaBusy.set(replica, 1);
+                try {
+                    translate(translator, batch);
+                } finally {
+                    replicaBusy.set(replica, 0);
+                }
+                batches.incrementAndGet();
+                batchedRows.addAndGet(batch.size());
+                replicaBatches.incrementAndGet(replica);
+            }
+            batch.clear();
+        }
+    }
+
+    private void translate(Translator translator, List<Job> batch) {
+        // Similar lengths side by side keep padding low
+        batch.sort(Comparator.comparingInt(job -> job.text.length()));
+        List<String> texts = new ArrayList<>(batch.size());
+        List<String> targets = new ArrayList<>(batch.size());
+        for (Job job : batch) {
+            texts.add(job.text);
+            targets.add(job.targetLanguage);
+        }
+        try {
+            List<String> results = translator.translateBatch(texts, targets);
+            for (int i = 0; i < batch.size(); i++) batch.get(i).result.complete(results.get(i));
+            return;
+        } catch (Exception e) {
+            if (batch.size() == 1) {
+                fail(batch.get(0), e);
+                return;
+            }
+            EngineLog.w(TAG, "Batch of " + batch.size() + " failed, retrying rows alone", e);
+        }
+        for (Job job : batch) {
+            try {
+                job.result.complete(translator.translate(job.text, job.targetLanguage));
+            } catch (Exception e) {
+                fail(job, e);
+            }
+        }
+    }
+
+    private void fail(Job job, Exception e) {
+        failed.incrementAndGet();
+        job.result.completeExceptionally(e);
+    }
+}
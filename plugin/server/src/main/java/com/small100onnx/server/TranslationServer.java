@@ -0,0 +1,343 @@
+package com.small100onnx.server;
+
+import com.small100onnx.Metrics;
+import com.small100onnx.TranslationMemory;
+import com.small100onnx.TranslatorConfig;
+import com.small100onnx.TranslatorPool;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * HTTP/JSON translation service around Translator
+ *
+ *   POST /translate  {"text", "targetLanguage"} -> {"translatedText", "targetLanguage"}
+ *                    {"text", "targetLanguages": [...]} -> {"translations": [...]}
+ *   GET  /languages  supported target language codes
+ *   GET  /health     200 while serving, 503 while stopping
+ *   GET  /metrics    queue and batch counters plus the engine's Metrics
+ *
+ * Each request runs on its own virtual thread (Java 21+; a cached thread
+ * pool on older JVMs) and only waits for its result; inference happens on
+ * the BatchingEngine's worker per model replica. Replicas come from a
+ * TranslatorPool: by default the replicas x intra-op threads split measured
+ * fastest on this host, sharing one copy of the model weights.
+ *
+ *   gradle run --args="--models /srv/models/small100 --replicas 2 --threads 4"
+ */
+public final class TranslationServer {
+    private static final String USAGE = String.join("\n",
+        "Options:",
+        "  --models DIR        model directory (required)",
+        "  --bind ADDRESS      listen address (default: 127.0.0.1)",
+        "  --port N            listen port (default: 8080)",
+        "  --replicas N|auto   model replicas, one inference worker each (default: auto)",
+        "  --threads N         intra-op threads per replica (default: cores / replicas)",
+        "  --max-batch N       requests per batched inference call (default: 8)",
+        "  --max-wait-ms N     wait for more requests before a batch runs (default: 0)",
+        "  --queue N           queued requests before 503 (default: 1024)",
+        "  --timeout-ms N      per-request timeout, 504 after it (default: 60000)",
+        "  --config FILE       TranslatorConfig properties (beam, memory, batch rows)");
+
+    private static final int MAX_BODY_BYTES = 1 << 20;
+
+    private final TranslatorPool pool;
+    private final BatchingEngine engine;
+    private final Set<String> languages;
+    private final long timeoutMs;
+    private final long startedAt = System.currentTimeMillis();
+    private HttpServer http;
+    private ExecutorService requestExecutor;
+
+    TranslationServer(TranslatorPool pool, BatchingEngine engine, long timeoutMs) {
+        this.pool = pool;
+        this.engine = engine;
+        this.languages = new HashSet<>(Arrays.asList(pool.getSupportedLanguages()));
+        this.timeoutMs = timeoutMs;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        if (options == null || !options.containsKey("models")) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        File modelsDir = new File(options.get("models"));
+        TranslatorConfig config = loadConfig(options.get("config"));
+
+        long loadStart = System.nanoTime();
+        TranslatorPool pool = loadPool(modelsDir, options.getOrDefault("replicas", "auto"), options.get("threads"));
+        pool.apply(config);
+        System.out.printf("Loaded %s replicas x intra-op threads of %s in %.0fms%n",
+            pool.getSplit(), modelsDir.getPath(), (System.nanoTime() - loadStart) / 1e6);
+
+        BatchingEngine engine = new BatchingEngine(pool.getReplicas(),
+            Integer.parseInt(options.getOrDefault("queue", "1024")),
+            Integer.parseInt(options.getOrDefault("max-batch", "8")),
+            Long.parseLong(options.getOrDefault("max-wait-ms", "0")));
+        TranslationServer server = new TranslationServer(pool, engine,
+            Long.parseLong(options.getOrDefault("timeout-ms", "60000")));
+        server.start(options.getOrDefault("bind", "127.0.0.1"), Integer.parseInt(options.getOrDefault("port", "8080")));
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+    }
+
+    void start(String bind, int port) throws IOException {
+        engine.start();
+        requestExecutor = requestExecutor();
+        http = HttpServer.create(new InetSocketAddress(bind, port), 0);
+        http.createContext("/translate", handler("POST", this::translate));
+        http.createContext("/languages", handler("GET", exchange -> languages()));
+        http.createContext("/health", this::health);
+        http.createContext("/metrics", handler("GET", exchange -> metrics()));
+        http.setExecutor(requestExecutor);
+        http.start();
+        System.out.println("Listening on http://" + bind + ":" + http.getAddress().getPort());
+    }
+
+    /**
+     * Stop accepting requests, finish running batches, save translation memory
+     */
+    void stop() {
+        try {
+            engine.stop();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        http.stop(1);
+        requestExecutor.shutdown();
+        pool.close();
+    }
+
+    // Handlers
+
+    private interface JsonHandler {
+        JSONObject handle(HttpExchange exchange) throws Exception;
+    }
+
+    /**
+     * Status code carried to the response
+     */
+    private static final class HttpError extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private HttpHandler handler(String method, JsonHandler handler) {
+        return exchange -> {
+            try {
+                if (!exchange.getRequestMethod().equals(method)) throw new HttpError(405, "Use " + method);
+                respond(exchange, 200, handler.handle(exchange));
+            } catch (HttpError e) {
+                respond(exchange, e.status, new JSONObject().put("error", e.getMessage()));
+            } catch (JSONException e) {
+                respond(exchange, 400, new JSONObject().put("error", "Invalid JSON: " + e.getMessage()));
+            } catch (Exception e) {
+                respond(exchange, 500, new JSONObject().put("error", String.valueOf(e.getMessage())));
+            }
+        };
+    }
+
+    private JSONObject translate(HttpExchange exchange) throws Exception {
+        JSONObject request = new JSONObject(readBody(exchange));
+        String text = request.optString("text", null);
+        if (text == null) throw new HttpError(400, "Missing text");
+
+        JSONArray targetArray = request.optJSONArray("targetLanguages");
+        List<String> targets = new ArrayList<>();
+        if (targetArray != null) {
+            for (int i = 0; i < targetArray.length(); i++) targets.add(targetArray.getString(i));
+        } else {
+            targets.add(request.optString("targetLanguage", "en"));
+        }
+        for (String target : targets) {
+            if (!languages.contains(target)) throw new HttpError(400, "Unknown target language: " + target);
+        }
+
+        // One job per target; they usually land in the same batch
+        List<CompletableFuture<String>> pending = new ArrayList<>(targets.size());
+        for (String target : targets) {
+            CompletableFuture<String> result = engine.submit(text, target);
+            if (result == null) {
+                for (CompletableFuture<String> queued : pending) queued.cancel(false);
+                throw new HttpError(503, "Queue full");
+            }
+            pending.add(result);
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        JSONArray translations = new JSONArray();
+        try {
+            for (int i = 0; i < targets.size(); i++) {
+                String translated = pending.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                translations.put(new JSONObject()
+                    .put("translatedText", translated)
+                    .put("sourceLanguage", request.optString("sourceLanguage", "auto"))
+                    .put("targetLanguage", targets.get(i)));
+            }
+        } catch (TimeoutException e) {
+            for (CompletableFuture<String> queued : pending) queued.cancel(false);
+            throw new HttpError(504, "Translation timed out");
+        } catch (ExecutionException e) {
+            throw new HttpError(500, "Translation failed: " + e.getCause().getMessage());
+        }
+        return targetArray != null ? new JSONObject().put("translations", translations) : translations.getJSONObject(0);
+    }
+
+    private JSONObject languages() {
+        return new JSONObject().put("languages", new JSONArray(languages));
+    }
+
+    private void health(HttpExchange exchange) throws IOException {
+        boolean serving = engine.isRunning();
+        respond(exchange, serving ? 200 : 503, new JSONObject()
+            .put("status", serving ? "ok" : "stopping")
+            .put("replicas", pool.size())
+            .put("queueDepth", engine.queueDepth())
+            .put("uptimeMs", System.currentTimeMillis() - startedAt));
+    }
+
+    private JSONObject metrics() {
+        JSONArray replicaStats = new JSONArray();
+        for (int r = 0; r < pool.size(); r++) {
+            replicaStats.put(new JSONObject()
+                .put("busy", engine.replicaBusy(r))
+                .put("batches", engine.replicaBatches(r)));
+        }
+        JSONObject server = new JSONObject()
+            .put("requests", engine.submitted())
+            .put("rejected", engine.rejected())
+            .put("failed", engine.failed())
+            .put("batches", engine.batches())
+            .put("averageBatchSize", engine.averageBatchSize())
+            .put("queueDepth", engine.queueDepth())
+            .put("intraOpThreads", pool.getSplit().intraOpThreads)
+            .put("replicas", replicaStats);
+
+        Metrics metrics = Metrics.shared();
+        JSONObject stages = new JSONObject();
+        for (Metrics.Stage stage : Metrics.Stage.values()) {
+            Metrics.Histogram histogram = metrics.histogram(stage);
+            stages.put(stage.key, new JSONObject()
+                .put("count", histogram.count())
+                .put("meanMs", histogram.meanMs())
+                .put("p50Ms", histogram.percentileMs(0.5))
+                .put("p90Ms", histogram.percentileMs(0.9))
+                .put("p99Ms", histogram.percentileMs(0.99))
+                .put("maxMs", histogram.maxMs()));
+        }
+        TranslationMemory memory = pool.getMemory();
+        return new JSONObject()
+            .put("server", server)
+            .put("stages", stages)
+            .put("counters", new JSONObject(metrics.counters()))
+            .put("translationMemory", new JSONObject(memory.stats()));
+    }
+
+    // Private helpers
+
+    private static void respond(HttpExchange exchange, int status, JSONObject body) throws IOException {
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException, HttpError {
+        try (InputStream in = exchange.getRequestBody()) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                body.write(buffer, 0, n);
+                if (body.size() > MAX_BODY_BYTES) throw new HttpError(413, "Body over " + MAX_BODY_BYTES + " bytes");
+            }
+            return body.toString(StandardCharsets.UTF_8.name());
+        }
+    }
+
+    /**
+     * Virtual thread per request on Java 21+, a cached platform pool before
+     */
+    private static ExecutorService requestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            System.out.println("Virtual threads unavailable on Java " + System.getProperty("java.version")
+                + ", using a cached thread pool");
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "small100-http");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * The split measured for this host unless replicas or threads are given
+     */
+    private static TranslatorPool loadPool(File modelsDir, String replicas, String threads) throws Exception {
+        int replicaCount = replicas.equals("auto") ? 0 : Integer.parseInt(replicas);
+        int threadCount = threads != null ? Integer.parseInt(threads) : 0;
+        if (replicaCount == 0 && threadCount == 0) return TranslatorPool.create(modelsDir);
+        return TranslatorPool.create(modelsDir,
+            TranslatorPool.Split.forCores(replicaCount, threadCount, Runtime.getRuntime().availableProcessors()));
+    }
+
+    private static TranslatorConfig loadConfig(String path) throws IOException {
+        Properties props = new Properties();
+        if (path != null) {
+            try (InputStream in = new FileInputStream(path)) {
+                props.load(in);
+            }
+        }
+        return TranslatorConfig.fromProperties(props);
+    }
+
+    /**
+     * --key value pairs; null on a malformed command line or --help
+     */
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || args[i].equals("--help") || i + 1 >= args.length) return null;
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+}
@@ -4,6 +4,70 @@ export interface ModelInfo {
   version: string;
   downloadedAt?: string;
   modelPath?: string;
+  /** Per-stage init timings in ms (Android) */
+  initTimings?: Record<string, number>;
+  /** Model variant in use, chosen by on-device benchmark (Android) */
+  variant?: string;
+}
+
+export interface InitializeOptions {
+  /**
+   * Synthetic inference run after model load (Android).
+   * 'background' warms up right after ready, 'blocking' before resolving.
+   * A translate() call cancels a running warm-up.
+   */
+  warmUp?: 'none' | 'background' | 'blocking';
+  /** Skip model variants larger than this when downloading and benchmarking (Android) */
+  memoryBudgetMb?: number;
+  /** Minimum ms between onDownloadProgress events, default 250 (Android) */
+  progressIntervalMs?: number;
+  /** Adaptive beam width and pruning; fixed 5 beams when omitted (Android) */
+  beam?: BeamOptions;
+  /** Reuse of past translations for repeated and near-duplicate texts, on by default (Android) */
+  translationMemory?: TranslationMemoryOptions;
+}
+
+export interface BeamOptions {
+  /** Fewest beams kept while narrowed, default 1 */
+  minBeams?: number;
+  /**
+   * Keep only hypotheses whose log-probability is within this gap of the
+   * best; the beam widens back to 5 when the model is uncertain. 0 disables
+   */
+  narrowGap?: number;
+  /**
+   * Drop hypotheses whose length-normalised score is this far below the
+   * best one so far, finished or not. 0 disables
+   */
+  pruneMargin?: number;
+}
+
+export interface TranslationMemoryOptions {
+  /** Serve and record translations, default true */
+  enabled?: boolean;
+  /**
+   * Share of equal tokens (numbers, URLs, e-mails and names count as equal)
+   * a near match needs, default 0.8. 1 serves repeats and placeholder swaps only
+   */
+  threshold?: number;
+  /** Entries kept, least recently used dropped first, default 20000 */
+  maxEntries?: number;
+}
+
+export interface DownloadProgressEvent {
+  /** Files completed */
+  downloaded: number;
+  /** Files in this download */
+  total: number;
+  /** Byte-level fields (Android); bytesTotal may grow when a size was not known up front */
+  bytesDownloaded?: number;
+  bytesTotal?: number;
+  /** Smoothed recent throughput */
+  bytesPerSecond?: number;
+  averageBytesPerSecond?: number;
+  /** -1 until throughput is measured */
+  etaSeconds?: number;
+  file?: string;
 }
 
 export interface TranslateOptions {
@@ -18,11 +82,90 @@ export interface TranslateResult {
   targetLanguage?: string;
 }
 
+export interface TranslateToManyOptions {
+  text: string;
+  sourceLanguage?: string;
+  targetLanguages: string[];
+}
+
+export interface TranslateToManyResult {
+  /** One result per target, in the order of targetLanguages */
+  translations: TranslateResult[];
+}
+
+export interface MemoryUsage {
+  /** Whether encoder/decoder sessions are currently loaded */
+  resident: boolean;
+  /** Number of transparent reloads after a release */
+  reloads: number;
+  /** Approximate resident bytes per component (encoder, decoder, tokenizer, nativeHeap, ...) */
+  bytes: Record<string, number>;
+}
+
+export interface StageMetrics {
+  count: number;
+  meanMs: number;
+  /** Percentiles are histogram bucket bounds (within ~20%) */
+  p50Ms: number;
+  p90Ms: number;
+  p99Ms: number;
+  maxMs: number;
+}
+
+export interface TranslationMetrics {
+  /** queueWait, tokenize, encoder, decoderStep, logits, beam, detokenize, total */
+  stages: Record<string, StageMetrics>;
+  /** translations, tokensGenerated, beamsExpanded, beamSteps, cacheHits (decoder steps reusing cached cross-attention K/V or batched row inputs), shortlistFallbacks, topKFallbacks, memoryHits */
+  counters: Record<string, number>;
+  /** beamsExpanded / beamSteps: beams decoded per step, below 5 when adaptive */
+  averageBeamWidth: number;
+}
+
+export interface OrtProfileEntry {
+  /** Operator type, e.g. MatMul */
+  op: string;
+  /** Kernel invocations */
+  count: number;
+  totalMs: number;
+  maxMs: number;
+}
+
+export interface OrtSessionProfile {
+  /** Session.run calls in the window */
+  runs: number;
+  /** Wall time inside Session.run */
+  runMs: number;
+  /** Sum of kernel times */
+  kernelMs: number;
+  /** Operator types by total time; share is the fraction of kernelMs */
+  operators: (OrtProfileEntry & { share: number })[];
+  /** Slowest nodes by total time */
+  nodes: (OrtProfileEntry & { name: string })[];
+}
+
+export interface TranslationProfile extends TranslationMetrics {
+  /** Translations covered by the profile */
+  translations: number;
+  encoder: OrtSessionProfile;
+  decoder: OrtSessionProfile;
+}
+
+export interface DebugInfo {
+  encoderInputs: string[];
+  encoderOutputs: string[];
+  decoderInputs: string[];
+  decoderOutputs: string[];
+  /** True while a profiling window is open or its traces are being parsed (Android) */
+  profiling?: boolean;
+  /** Last completed profile from startProfiling() (Android) */
+  profile?: TranslationProfile;
+}
+
 export interface Small100OnnxTranslatorPlugin extends Plugin {
   /**
    * Initialize the plugin and download models if needed
    */
-  initialize(): Promise<ModelInfo>;
+  initialize(options?: InitializeOptions): Promise<ModelInfo>;
 
   /**
    * Check if models are downloaded and ready
@@ -32,13 +175,19 @@ export interface Small100OnnxTranslatorPlugin extends Plugin {
   /**
    * Download model files from HuggingFace
    */
-  downloadModels(): Promise<ModelInfo>;
+  downloadModels(options?: { progressIntervalMs?: number }): Promise<ModelInfo>;
 
   /**
    * Translate text using the ONNX model
    */
   translate(options: TranslateOptions): Promise<TranslateResult>;
 
+  /**
+   * Translate one text into several languages. On Android the text is
+   * tokenized once and all targets share batched encoder and decoder passes
+   */
+  translateToMany(options: TranslateToManyOptions): Promise<TranslateToManyResult>;
+
   /**
    * Get current model version information
    */
@@ -50,7 +199,41 @@ export interface Small100OnnxTranslatorPlugin extends Plugin {
   clearModels(): Promise<void>;
 
   /**
-   * Get debug information about encoder/decoder IO names
+   * Get approximate resident memory per model component (Android)
+   */
+  getMemoryUsage(): Promise<MemoryUsage>;
+
+  /**
+   * Release model memory; models reload on the next translate().
+   * With `all`, tokenizer structures are dropped too (Android)
+   */
+  releaseMemory(options?: { all?: boolean }): Promise<void>;
+
+  /**
+   * Per-stage latency histograms and counters since start or the last reset (Android)
+   */
+  getMetrics(): Promise<TranslationMetrics>;
+
+  /**
+   * Clear all latency histograms and counters (Android)
+   */
+  resetMetrics(): Promise<void>;
+
+  /**
+   * Re-hash downloaded model files against their manifest.
+   * Corrupt files are deleted and re-downloaded by the next initialize() (Android)
+   */
+  verifyModels(): Promise<{ valid: boolean; corruptFiles: string[] }>;
+
+  /**
+   * Profile the next translations with ONNX Runtime op-level profiling.
+   * When done, debugInfo().profile holds per-operator and per-node kernel
+   * times plus Java-side stage timings for those translations (Android)
+   */
+  startProfiling(options?: { translations?: number }): Promise<void>;
+
+  /**
+   * Get debug information about encoder/decoder IO names and the last profile
    */
-  debugInfo(): Promise<{ encoderInputs: string[]; encoderOutputs: string[]; decoderInputs: string[]; decoderOutputs: string[]; }>;
+  debugInfo(): Promise<DebugInfo>;
 }
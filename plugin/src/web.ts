@@ -1,9 +1,14 @@
 import { WebPlugin } from '@capacitor/core';
 import type {
   Small100OnnxTranslatorPlugin,
+  DebugInfo,
+  MemoryUsage,
   ModelInfo,
   TranslateOptions,
   TranslateResult,
+  TranslateToManyOptions,
+  TranslateToManyResult,
+  TranslationMetrics,
 } from './definitions';
 import { Translator } from './web/Translator';
 
@@ -115,6 +120,17 @@ export class Small100OnnxTranslatorWeb extends WebPlugin implements Small100Onnx
     };
   }
 
+  async translateToMany(options: TranslateToManyOptions): Promise<TranslateToManyResult> {
+    const { text, sourceLanguage, targetLanguages } = options;
+
+    // No batched path on web: one translation per target
+    const translations: TranslateResult[] = [];
+    for (const targetLanguage of targetLanguages) {
+      translations.push(await this.translate({ text, sourceLanguage, targetLanguage }));
+    }
+    return { translations };
+  }
+
   async getModelInfo(): Promise<ModelInfo> {
     if (this.modelInfo.version) return this.modelInfo;
 
@@ -151,12 +167,7 @@ export class Small100OnnxTranslatorWeb extends WebPlugin implements Small100Onnx
     this.modelInfo = { version: '' };
   }
 
-  async debugInfo(): Promise<{
-    encoderInputs: string[];
-    encoderOutputs: string[];
-    decoderInputs: string[];
-    decoderOutputs: string[];
-  }> {
+  async debugInfo(): Promise<DebugInfo> {
     if (!this.translator) {
       return { encoderInputs: [], encoderOutputs: [], decoderInputs: [], decoderOutputs: [] };
     }
@@ -170,6 +181,30 @@ export class Small100OnnxTranslatorWeb extends WebPlugin implements Small100Onnx
     };
   }
 
+  async getMemoryUsage(): Promise<MemoryUsage> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async releaseMemory(): Promise<void> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async getMetrics(): Promise<TranslationMetrics> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async resetMetrics(): Promise<void> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async verifyModels(): Promise<{ valid: boolean; corruptFiles: string[] }> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async startProfiling(): Promise<void> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
   // Private methods
 
   private async initTranslator(): Promise<void> {
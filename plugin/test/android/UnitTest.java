@@ -1,6 +1,26 @@
 package com.small100onnx.test;
 
+import com.small100onnx.BeamSearchDecoder;
+import com.small100onnx.DownloadProgress;
+import com.small100onnx.Metrics;
+import com.small100onnx.ModelDownloader;
+import com.small100onnx.OrtProfile;
+import com.small100onnx.TranslationMemory;
+import com.small100onnx.TranslatorPool;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Unit Tests for Small100 Android Modules
@@ -90,6 +110,485 @@ public class UnitTest {
         System.out.println("For full tests, instantiate BeamSearchDecoder from main source");
     }
     
+    // Synthetic logits: token 10 + length peaks until length 5, then EOS
+    private static float[] peakedLogits(int[] ids) {
+        float[] logits = new float[1000];
+        Arrays.fill(logits, -10f);
+        logits[ids.length >= 5 ? 2 : 10 + ids.length] = 10f;
+        return logits;
+    }
+    
+    // Tests for vocabulary shortlist in beam search
+    public static void testShortlistDecode() throws Exception {
+        System.out.println("\n=== Shortlist Decode Tests ===\n");
+        
+        int[] start = {2};
+        int[] full = new BeamSearchDecoder(2).decode(start, 10, UnitTest::peakedLogits);
+        
+        BitSet covering = new BitSet();
+        covering.set(2);
+        covering.set(10, 20);
+        BeamSearchDecoder decoder = new BeamSearchDecoder(2);
+        int[] shortlisted = decoder.decode(start, 10, UnitTest::peakedLogits, covering);
+        assertEqual(Arrays.toString(shortlisted), Arrays.toString(full), "shortlist: same output as full vocab");
+        assertTrue(decoder.getShortlistSteps() > 0, "shortlist: steps use shortlist");
+        assertEqual(decoder.getShortlistFallbacks(), 0L, "shortlist: no fallback when covered");
+        
+        BitSet missing = new BitSet();
+        missing.set(2);
+        missing.set(100, 110);
+        decoder = new BeamSearchDecoder(2);
+        int[] fallback = decoder.decode(start, 10, UnitTest::peakedLogits, missing);
+        assertEqual(Arrays.toString(fallback), Arrays.toString(full), "shortlist: fallback keeps output");
+        assertTrue(decoder.getShortlistFallbacks() > 0, "shortlist: low mass falls back");
+        
+        // Real vocabulary size: the long tail outside the shortlist must not force fallbacks
+        // (start from a non-EOS token, so the repetition penalty leaves EOS alone)
+        int[] wideStart = {0};
+        BitSet likely = new BitSet();
+        likely.set(0, 8000);
+        int[] wideFull = new BeamSearchDecoder(2).decode(wideStart, 12, UnitTest::wideLogits);
+        decoder = new BeamSearchDecoder(2);
+        int[] wide = decoder.decode(wideStart, 12, UnitTest::wideLogits, likely);
+        assertEqual(Arrays.toString(wide), Arrays.toString(wideFull), "shortlist: same output on a 128k vocab");
+        assertTrue(decoder.getShortlistSteps() > 0, "shortlist: engages on a 128k vocab");
+        assertEqual(decoder.getShortlistFallbacks(), 0L, "shortlist: no fallback from the vocab tail");
+    }
+    
+    // Synthetic logits over a 128k vocab: noise, a clear next token and a runner-up
+    private static float[] wideLogits(int[] ids) {
+        Random random = new Random(31L * ids.length + ids[ids.length - 1]);
+        float[] logits = new float[128_000];
+        for (int i = 0; i < logits.length; i++) logits[i] = (float) random.nextGaussian() * 2;
+        int next = ids.length >= 8 ? 2 : 1000 + ids.length;
+        logits[next] = 18f;
+        logits[next + 500] = 15f;
+        return logits;
+    }
+    
+    // Synthetic logits: peakedLogits with a close runner-up at length 2
+    private static float[] uncertainLogits(int[] ids) {
+        float[] logits = peakedLogits(ids);
+        if (ids.length == 2) logits[20] = 9f;
+        return logits;
+    }
+    
+    // Tests for adaptive beam width and pruning
+    public static void testAdaptiveBeam() throws Exception {
+        System.out.println("\n=== Adaptive Beam Tests ===\n");
+        
+        int[] start = {2};
+        BeamSearchDecoder fixed = new BeamSearchDecoder(2);
+        int[] full = fixed.decode(start, 10, UnitTest::peakedLogits);
+        assertTrue(fixed.getAverageBeamWidth() > 3, "adaptive: fixed width expands full beam");
+        
+        BeamSearchDecoder adaptive = new BeamSearchDecoder(2);
+        adaptive.setAdaptiveBeam(1, 2f);
+        int[] narrowed = adaptive.decode(start, 10, UnitTest::peakedLogits);
+        assertEqual(Arrays.toString(narrowed), Arrays.toString(full), "adaptive: same output when confident");
+        assertEqual(adaptive.getAverageBeamWidth(), 1.0, "adaptive: confident model runs greedy");
+        
+        adaptive.resetBeamStats();
+        adaptive.decode(start, 10, UnitTest::uncertainLogits);
+        assertTrue(adaptive.getAverageBeamWidth() > 1, "adaptive: widens when uncertain");
+        assertTrue(adaptive.getAverageBeamWidth() < 2, "adaptive: narrows again");
+        
+        BeamSearchDecoder pruned = new BeamSearchDecoder(2);
+        pruned.setPruneMargin(1f);
+        int[] kept = pruned.decode(start, 10, UnitTest::peakedLogits);
+        assertEqual(Arrays.toString(kept), Arrays.toString(full), "adaptive: pruning keeps output");
+        assertTrue(pruned.getAverageBeamWidth() < fixed.getAverageBeamWidth(), "adaptive: pruning drops hopeless beams");
+    }
+    
+    // Top-k of full logits, as a decoder with a TopKTail would output it
+    private static BeamSearchDecoder.TopK topKOf(float[] logits, int k) {
+        Integer[] order = new Integer[logits.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Float.compare(logits[b], logits[a]));
+        int[] ids = new int[k];
+        float[] values = new float[k];
+        for (int i = 0; i < k; i++) {
+            ids[i] = order[i];
+            values[i] = logits[order[i]];
+        }
+        double sum = 0;
+        for (float v : logits) sum += Math.exp(v - values[0]);
+        float logSumExp = values[0] + (float) Math.log(sum);
+        return new BeamSearchDecoder.TopK() {
+            public int[] ids() { return ids; }
+            public float[] logits() { return values; }
+            public float logSumExp() { return logSumExp; }
+            public float[] fullLogits() { return logits.clone(); }
+        };
+    }
+    
+    // Tests for beam search on decoder top-k outputs
+    public static void testTopKDecode() throws Exception {
+        System.out.println("\n=== Top-k Decode Tests ===\n");
+        
+        int[] start = {2};
+        int[] full = new BeamSearchDecoder(2).decode(start, 10, UnitTest::uncertainLogits);
+        
+        BeamSearchDecoder decoder = new BeamSearchDecoder(2);
+        int[] sparse = decoder.decodeTopK(start, 10, ids -> topKOf(uncertainLogits(ids), 32), null);
+        assertEqual(Arrays.toString(sparse), Arrays.toString(full), "topk: same output as full logits");
+        assertTrue(decoder.getTopKSteps() > 0, "topk: steps decided from top-k");
+        assertEqual(decoder.getTopKFallbacks(), 0L, "topk: no fallback with enough candidates");
+        
+        // k below 2 * numBeams cannot fill the candidate list
+        decoder = new BeamSearchDecoder(2);
+        int[] narrow = decoder.decodeTopK(start, 10, ids -> topKOf(uncertainLogits(ids), 4), null);
+        assertEqual(Arrays.toString(narrow), Arrays.toString(full), "topk: fallback keeps output");
+        assertEqual(decoder.getTopKSteps(), 0L, "topk: small k always falls back");
+        
+        BitSet covering = new BitSet();
+        covering.set(2);
+        covering.set(10, 40);
+        decoder = new BeamSearchDecoder(2);
+        int[] shortlisted = decoder.decodeTopK(start, 10, ids -> topKOf(uncertainLogits(ids), 32), covering);
+        assertEqual(Arrays.toString(shortlisted), Arrays.toString(full), "topk: shortlist applied to top-k");
+    }
+    
+    // Synthetic logits: token 50 + length peaks until length 3, then EOS
+    private static float[] shortLogits(int[] ids) {
+        float[] logits = new float[1000];
+        Arrays.fill(logits, -10f);
+        logits[ids.length >= 3 ? 2 : 50 + ids.length] = 10f;
+        return logits;
+    }
+    
+    // Tests for several beam searches decoded in lockstep
+    public static void testBatchDecode() throws Exception {
+        System.out.println("\n=== Batch Decode Tests ===\n");
+        
+        BeamSearchDecoder.DecoderCallback[] rows = {
+            UnitTest::peakedLogits, UnitTest::uncertainLogits, UnitTest::shortLogits
+        };
+        int[][] starts = {{2}, {2}, {2}};
+        int[] calls = new int[1];
+        int[][] batched = new BeamSearchDecoder(2).decodeBatch(starts, 10, (ids, sourceRows) -> {
+            calls[0]++;
+            float[][] logits = new float[ids.length][];
+            for (int i = 0; i < ids.length; i++) logits[i] = rows[sourceRows[i]].getNextLogits(ids[i]);
+            return logits;
+        }, null);
+        
+        int singleCalls = 0;
+        for (int r = 0; r < rows.length; r++) {
+            BeamSearchDecoder.DecoderCallback row = rows[r];
+            int[] counter = new int[1];
+            int[] single = new BeamSearchDecoder(2).decode(starts[r], 10, ids -> {
+                counter[0]++;
+                return row.getNextLogits(ids);
+            });
+            singleCalls += counter[0];
+            assertEqual(Arrays.toString(batched[r]), Arrays.toString(single), "batch: row " + r + " same as single decode");
+        }
+        assertTrue(calls[0] * 5 < singleCalls, "batch: one callback per step for all rows");
+        
+        try {
+            new BeamSearchDecoder(2).decodeBatch(new int[][]{{2}, {2, 5}}, 10, (ids, sourceRows) -> null, null);
+            assertTrue(false, "batch: unequal start lengths rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(true, "batch: unequal start lengths rejected");
+        }
+    }
+    
+    // Tests for serving past translations without inference
+    public static void testTranslationMemory() throws Exception {
+        System.out.println("\n=== Translation Memory Tests ===\n");
+        
+        TranslationMemory memory = new TranslationMemory();
+        memory.add("Your order 1234 ships to Berlin on Monday.", "fr", "Votre commande 1234 part pour Berlin lundi.");
+        assertEqual(memory.lookup("Your order 1234 ships to Berlin on Monday.", "fr"),
+            "Votre commande 1234 part pour Berlin lundi.", "memory: exact repeat");
+        assertEqual(memory.lookup("Your order 1234 ships to Berlin on Monday.", "de"), null, "memory: other language misses");
+        assertEqual(memory.lookup("Your order 5674 ships to Paris on Monday.", "fr"),
+            "Votre commande 5674 part pour Paris lundi.", "memory: number and name swapped");
+        assertEqual(memory.lookup("Your order 1234 ships to Berlin on Tuesday.", "fr"), null,
+            "memory: value the model translated is not swapped");
+        
+        memory.add("You have 1 new message", "fr", "Vous avez 1 nouveau message");
+        memory.add("You have 25 new messages", "fr", "Vous avez 25 nouveaux messages");
+        assertEqual(memory.lookup("You have 2 new message", "fr"), null, "memory: 1 does not serve other counts");
+        assertEqual(memory.lookup("You have 35 new messages", "fr"), "Vous avez 35 nouveaux messages",
+            "memory: count of the same plural class swapped");
+        
+        memory.add("Visit https://a.example/help for details.", "fr", "Consultez https://a.example/help pour en savoir plus.");
+        assertEqual(memory.lookup("Visit https://b.example/faq?id=7 for details.", "fr"),
+            "Consultez https://b.example/faq?id=7 pour en savoir plus.", "memory: URL swapped");
+        
+        memory.add("Anna sent you a new photo", "fr", "Anna vous a envoyé une nouvelle photo");
+        assertEqual(memory.lookup("Peter sent you a new photo", "fr"), "Peter vous a envoyé une nouvelle photo",
+            "memory: near match swaps the leading name");
+        assertEqual(memory.lookup("Anna sent you a new video", "fr"), null, "memory: changed word is not a near match");
+        memory.setThreshold(1f);
+        assertEqual(memory.lookup("Peter sent you a new photo", "fr"), null, "memory: threshold 1 disables near matches");
+        
+        Map<String, Long> stats = memory.stats();
+        assertEqual(stats.get("exactHits"), 1L, "memory: exact hits counted");
+        assertEqual(stats.get("swapHits"), 3L, "memory: swap hits counted");
+        assertEqual(stats.get("fuzzyHits"), 1L, "memory: fuzzy hits counted");
+        
+        File dir = Files.createTempDirectory("tm").toFile();
+        try {
+            memory.save(dir);
+            TranslationMemory loaded = TranslationMemory.load(dir);
+            assertEqual(loaded.size(), memory.size(), "memory: entries survive save and load");
+            assertEqual(loaded.lookup("Anna sent you a new photo", "fr"), "Anna vous a envoyé une nouvelle photo",
+                "memory: loaded entries are served");
+            loaded.setMaxEntries(2);
+            assertEqual(loaded.size(), 2, "memory: maxEntries evicts");
+            assertEqual(loaded.lookup("Anna sent you a new photo", "fr"), "Anna vous a envoyé une nouvelle photo",
+                "memory: recently used entry kept");
+        } finally {
+            for (File file : dir.listFiles()) file.delete();
+            dir.delete();
+        }
+    }
+    
+    // Local stand-in for the model host: HEAD, Range GETs, optional failing request
+    private static HttpServer startModelServer(byte[] data, AtomicInteger gets, int failAt) throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/model.bin", exchange -> {
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+            exchange.getResponseHeaders().set("ETag", "\"v1\"");
+            if (exchange.getRequestMethod().equals("HEAD")) {
+                exchange.getResponseHeaders().set("Content-Length", String.valueOf(data.length));
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+                return;
+            }
+            if (gets.incrementAndGet() == failAt) {
+                exchange.sendResponseHeaders(500, -1);
+                exchange.close();
+                return;
+            }
+            int start = 0;
+            int end = data.length - 1;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if (range != null) {
+                String[] bounds = range.substring("bytes=".length()).split("-", -1);
+                start = Integer.parseInt(bounds[0]);
+                if (!bounds[1].isEmpty()) end = Integer.parseInt(bounds[1]);
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + data.length);
+            }
+            exchange.sendResponseHeaders(range != null ? 206 : 200, end - start + 1);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(data, start, end - start + 1);
+            }
+        });
+        server.start();
+        return server;
+    }
+    
+    // Tests for ModelDownloader against a local HTTP server
+    public static void testRangedDownload() throws Exception {
+        System.out.println("\n=== Ranged Download Tests ===\n");
+        
+        byte[] data = new byte[300_000];
+        new Random(42).nextBytes(data);
+        File dir = Files.createTempDirectory("small100-dl").toFile();
+        File target = new File(dir, "model.bin");
+        AtomicInteger gets = new AtomicInteger();
+        
+        // 64 KB chunks -> 5 ranges; the third GET fails
+        HttpServer server = startModelServer(data, gets, 3);
+        ModelDownloader downloader = new ModelDownloader(1, 64 * 1024);
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/model.bin";
+        try {
+            boolean failed = false;
+            try {
+                downloader.download(url, target);
+            } catch (Exception e) {
+                failed = true;
+            }
+            assertTrue(failed, "download: interrupted download fails");
+            assertTrue(!target.exists(), "download: no target file while incomplete");
+            assertTrue(new File(dir, "model.bin" + ModelDownloader.PART_SUFFIX).exists(), "download: .part kept");
+            
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(data)) hex.append(String.format("%02x", b));
+            String expectedSha = hex.toString();
+            int before = gets.get();
+            String sha = downloader.download(url, target, expectedSha);
+            assertEqual(gets.get() - before, 3, "download: resume fetches only missing chunks");
+            assertTrue(Arrays.equals(Files.readAllBytes(target.toPath()), data), "download: content matches");
+            assertTrue(!new File(dir, "model.bin" + ModelDownloader.STATE_SUFFIX).exists(), "download: state removed");
+            assertEqual(sha, expectedSha, "download: hash computed across resumed chunks");
+            
+            File other = new File(dir, "other.bin");
+            boolean mismatch = false;
+            try {
+                downloader.download(url, other, "00" + expectedSha.substring(2));
+            } catch (IOException e) {
+                mismatch = true;
+            }
+            assertTrue(mismatch, "download: wrong expected hash fails");
+            assertTrue(!other.exists(), "download: no target after hash mismatch");
+        } finally {
+            downloader.shutdown();
+            server.stop(0);
+        }
+    }
+    
+    // Compressed copy: decompressed to disk while hashing, 404 lets callers fall back
+    public static void testCompressedDownload() throws Exception {
+        System.out.println("\n=== Compressed Download Tests ===\n");
+        
+        byte[] data = new byte[200_000];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) ("{\"token\": " + (i % 97) + "}").charAt(i % 12);
+        ByteArrayOutputStream packed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gz = new GZIPOutputStream(packed)) {
+            gz.write(data);
+        }
+        byte[] gzipped = packed.toByteArray();
+        File dir = Files.createTempDirectory("small100-gz").toFile();
+        File target = new File(dir, "vocab.json");
+        
+        HttpServer server = startModelServer(gzipped, new AtomicInteger(), -1);
+        ModelDownloader downloader = new ModelDownloader(1, 64 * 1024);
+        String base = "http://127.0.0.1:" + server.getAddress().getPort();
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(data)) hex.append(String.format("%02x", b));
+            
+            String sha = downloader.downloadCompressed(base + "/model.bin", "gzip", gzipped.length, target, hex.toString());
+            assertTrue(gzipped.length * 5 < data.length, "gzip: transfer smaller than file");
+            assertTrue(Arrays.equals(Files.readAllBytes(target.toPath()), data), "gzip: decompressed content matches");
+            assertEqual(sha, hex.toString(), "gzip: hash of decompressed bytes");
+            assertTrue(!new File(dir, "vocab.json.gzip").exists(), "gzip: compressed copy removed");
+            
+            boolean notFound = false;
+            try {
+                downloader.downloadCompressed(base + "/missing.gz", "gzip", -1, new File(dir, "other.json"), null);
+            } catch (FileNotFoundException e) {
+                notFound = true;
+            }
+            assertTrue(notFound, "gzip: missing compressed copy reported for fallback");
+        } finally {
+            downloader.shutdown();
+            server.stop(0);
+        }
+    }
+    
+    // Progress events are coalesced; totals and resumed bytes add up
+    public static void testDownloadProgress() {
+        System.out.println("\n=== Download Progress Tests ===\n");
+        
+        List<DownloadProgress.Snapshot> events = new ArrayList<>();
+        DownloadProgress progress = new DownloadProgress(2, 60_000, events::add);
+        progress.expect("encoder.onnx", 1000);
+        progress.expect("vocab.json", 200);
+        
+        ModelDownloader.ProgressListener encoder = progress.forFile("encoder.onnx");
+        encoder.onStart(1000, 400);
+        for (int i = 0; i < 60; i++) encoder.onBytes(10);
+        assertEqual(events.size(), 1, "progress: byte updates coalesced to one event per interval");
+        
+        progress.skipped("vocab.json", 200);
+        progress.fileDone("vocab.json");
+        progress.fileDone("encoder.onnx");
+        assertEqual(events.size(), 3, "progress: file completion always reported");
+        
+        DownloadProgress.Snapshot last = events.get(events.size() - 1);
+        assertEqual(last.bytesDone, 1200L, "progress: resumed + transferred + skipped bytes");
+        assertEqual(last.bytesTotal, 1200L, "progress: total from expected sizes");
+        assertEqual(last.filesDone, 2, "progress: files done");
+    }
+    
+    // Candidate splits use every core; explicit sizes fill in the rest
+    public static void testPoolSplit() {
+        System.out.println("\n=== Pool Split Tests ===\n");
+        
+        assertEqual(TranslatorPool.Split.candidates(16, 8).toString(), "[1x16, 2x8, 4x4, 8x2]",
+            "pool: divisors of the core count up to max replicas");
+        assertEqual(TranslatorPool.Split.candidates(6, 8).toString(), "[1x6, 2x3, 3x2, 6x1]", "pool: non-power-of-two cores");
+        assertEqual(TranslatorPool.Split.candidates(1, 8).toString(), "[1x1]", "pool: one core has one split");
+        
+        assertEqual(TranslatorPool.Split.forCores(4, 0, 16).toString(), "4x4", "pool: threads from replicas");
+        assertEqual(TranslatorPool.Split.forCores(0, 2, 16).toString(), "8x2", "pool: replicas from threads");
+        assertEqual(TranslatorPool.Split.forCores(32, 0, 16).toString(), "32x1", "pool: at least one thread per replica");
+        assertEqual(TranslatorPool.Split.forCores(3, 3, 16).toString(), "3x3", "pool: explicit split kept");
+    }
+    
+    // Histogram percentiles land in the right bucket; counters and reset
+    public static void testMetrics() {
+        System.out.println("\n=== Metrics Tests ===\n");
+        
+        Metrics metrics = new Metrics();
+        for (int i = 1; i <= 100; i++) metrics.record(Metrics.Stage.ENCODER, i * 1_000_000L);
+        Metrics.Histogram histogram = metrics.histogram(Metrics.Stage.ENCODER);
+        assertEqual(histogram.count(), 100L, "metrics: count");
+        assertTrue(Math.abs(histogram.meanMs() - 50.5) < 1e-9, "metrics: mean");
+        double p50 = histogram.percentileMs(0.5);
+        assertTrue(p50 >= 50 && p50 <= 50 * 1.25, "metrics: p50 within bucket error");
+        double p99 = histogram.percentileMs(0.99);
+        assertTrue(p99 >= 99 && p99 <= 100, "metrics: p99 capped at max");
+        
+        metrics.increment(Metrics.Counter.TOKENS_GENERATED, 7);
+        assertEqual(metrics.counters().get("tokensGenerated"), 7L, "metrics: counter");
+        
+        BeamSearchDecoder decoder = new BeamSearchDecoder(2);
+        decoder.setMetrics(metrics);
+        try {
+            decoder.decode(new int[]{2}, 10, UnitTest::peakedLogits);
+        } catch (Exception e) {
+            assertTrue(false, "metrics: decode threw " + e);
+        }
+        assertTrue(metrics.histogram(Metrics.Stage.DECODER_STEP).count() > 0, "metrics: decoder steps timed");
+        assertEqual(metrics.count(Metrics.Counter.TOKENS_GENERATED), 7L + 5, "metrics: tokens generated by decode");
+        
+        metrics.reset();
+        assertEqual(histogram.count(), 0L, "metrics: reset histogram");
+        assertEqual(metrics.count(Metrics.Counter.TOKENS_GENERATED), 0L, "metrics: reset counter");
+        
+        Metrics window = new Metrics(metrics);
+        window.record(Metrics.Stage.ENCODER, 1_000_000L);
+        window.increment(Metrics.Counter.TRANSLATIONS, 1);
+        assertEqual(window.histogram(Metrics.Stage.ENCODER).count(), 1L, "metrics: child records");
+        assertEqual(histogram.count(), 1L, "metrics: child forwards samples to parent");
+        assertEqual(metrics.count(Metrics.Counter.TRANSLATIONS), 1L, "metrics: child forwards counters");
+    }
+    
+    // Test ORT trace aggregation
+    public static void testOrtProfile() {
+        System.out.println("\n=== ORT Profile Tests ===\n");
+        
+        String trace = "[\n"
+            + "{\"cat\" : \"Session\",\"dur\" :5000,\"name\" :\"session_initialization\",\"args\" : {}},\n"
+            + "{\"cat\" : \"Node\",\"dur\" :0,\"name\" :\"mm1_fence_before\",\"args\" : {\"op_name\" : \"MatMul\"}},\n"
+            + "{\"cat\" : \"Node\",\"dur\" :300,\"name\" :\"mm1_kernel_time\",\"args\" : {\"op_name\" : \"MatMul\"}},\n"
+            + "{\"cat\" : \"Node\",\"dur\" :100,\"name\" :\"mm2_kernel_time\",\"args\" : {\"op_name\" : \"MatMul\"}},\n"
+            + "{\"cat\" : \"Node\",\"dur\" :50,\"name\" :\"softmax_kernel_time\",\"args\" : {\"op_name\" : \"Softmax\"}},\n"
+            + "{\"cat\" : \"Session\",\"dur\" :500,\"name\" :\"model_run\",\"args\" : {}},\n"
+            + "{\"cat\" : \"Node\",\"dur\" :500,\"name\" :\"mm1_kernel_time\",\"args\" : {\"op_name\" : \"MatMul\"}},\n"
+            + "{\"cat\" : \"Session\",\"dur\" :600,\"name\" :\"model_run\",\"args\" : {}}\n"
+            + "]\n";
+        try {
+            File file = File.createTempFile("small100-trace", ".json");
+            Files.write(file.toPath(), trace.getBytes(StandardCharsets.UTF_8));
+            OrtProfile profile = OrtProfile.parse(Collections.singletonList(file));
+            file.delete();
+            
+            assertEqual(profile.getRuns(), 2L, "ortProfile: model runs");
+            assertTrue(Math.abs(profile.getRunMs() - 1.1) < 1e-9, "ortProfile: run time");
+            assertTrue(Math.abs(profile.getKernelMs() - 0.95) < 1e-9, "ortProfile: kernel time");
+            
+            List<OrtProfile.Entry> operators = profile.getOperators();
+            assertEqual(operators.get(0).name, "MatMul", "ortProfile: slowest operator first");
+            assertEqual(operators.get(0).count, 3L, "ortProfile: operator count");
+            assertEqual(operators.get(0).totalUs, 900L, "ortProfile: operator total");
+            
+            List<OrtProfile.Entry> nodes = profile.getTopNodes(2);
+            assertEqual(nodes.size(), 2, "ortProfile: top nodes limited");
+            assertEqual(nodes.get(0).name, "mm1", "ortProfile: node name without suffix");
+            assertEqual(nodes.get(0).maxUs, 500L, "ortProfile: node max");
+        } catch (IOException e) {
+            assertTrue(false, "ortProfile: parse threw " + e);
+        }
+    }
+    
     // Test language token extraction
     public static void testLanguageTokenExtraction() {
         System.out.println("\n=== Language Token Extraction Tests ===\n");
@@ -149,13 +648,24 @@ public class UnitTest {
     }
     
     // Run all tests
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
         System.out.println("╔════════════════════════════════════════╗");
         System.out.println("║  Small100 Android Modules - Unit Tests ║");
         System.out.println("╚════════════════════════════════════════╝");
         
         testTokenizer();
         testBeamSearchDecoder();
+        testShortlistDecode();
+        testAdaptiveBeam();
+        testTopKDecode();
+        testBatchDecode();
+        testTranslationMemory();
+        testRangedDownload();
+        testCompressedDownload();
+        testDownloadProgress();
+        testPoolSplit();
+        testMetrics();
+        testOrtProfile();
         testLanguageTokenExtraction();
         testSoftmax();
         